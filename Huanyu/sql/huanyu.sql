@@ -24,11 +24,13 @@ DROP TABLE IF EXISTS `chat_messages`;
 CREATE TABLE `chat_messages`  (
   `id` bigint NOT NULL AUTO_INCREMENT COMMENT '主键ID',
   `session_id` varchar(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '会话ID',
+  `seq` bigint NOT NULL DEFAULT 0 COMMENT '会话内消息序号',
   `message_type` varchar(20) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '消息类型：USER/ASSISTANT/SYSTEM',
   `content` text CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '消息内容',
   `created_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   PRIMARY KEY (`id`) USING BTREE,
-  INDEX `idx_session_id`(`session_id` ASC) USING BTREE,
+  UNIQUE INDEX `uk_session_seq`(`session_id` ASC, `seq` ASC) USING BTREE,
+  INDEX `idx_session_id_id`(`session_id` ASC, `id` ASC) USING BTREE,
   INDEX `idx_created_at`(`created_at` ASC) USING BTREE
 ) ENGINE = InnoDB AUTO_INCREMENT = 1221 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '聊天消息表' ROW_FORMAT = Dynamic;
 
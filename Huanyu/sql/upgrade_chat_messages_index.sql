@@ -0,0 +1,9 @@
+-- ----------------------------
+-- 升级脚本：将 chat_messages 的会话索引替换为 (session_id, id) 联合索引
+-- 适用于已有数据库（新库直接执行 huanyu.sql 即可）。回源时按 session_id 过滤并 ORDER BY id DESC LIMIT，
+-- 只有联合索引能直接按顺序读取最新的窗口；原 idx_session_id 是其前缀，替换后不再需要
+-- ----------------------------
+
+ALTER TABLE `chat_messages`
+  ADD INDEX `idx_session_id_id`(`session_id` ASC, `id` ASC) USING BTREE,
+  DROP INDEX `idx_session_id`;
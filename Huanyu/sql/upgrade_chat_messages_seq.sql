@@ -0,0 +1,25 @@
+-- ----------------------------
+-- 升级脚本：为已有的 chat_messages 增加会话内消息序号 seq
+-- 适用于在引入 seq 之前创建的数据库（新库直接执行 huanyu.sql 即可），需 MySQL 8.0 及以上（窗口函数）
+-- 执行前请先停止应用，避免回填期间有新消息写入
+-- ----------------------------
+
+-- 1. 增加序号列（已有行暂时均为 0）
+ALTER TABLE `chat_messages`
+  ADD COLUMN `seq` bigint NOT NULL DEFAULT 0 COMMENT '会话内消息序号' AFTER `session_id`;
+
+-- 2. 按会话内的写入顺序回填 1, 2, 3...，保证 (session_id, seq) 不重复
+UPDATE `chat_messages` m
+  JOIN (
+    SELECT `id`, ROW_NUMBER() OVER (PARTITION BY `session_id` ORDER BY `created_at`, `id`) AS `rn`
+    FROM `chat_messages`
+  ) t ON m.`id` = t.`id`
+SET m.`seq` = t.`rn`;
+
+-- 3. 回填完成后再加唯一索引，重放写入日志时按 (session_id, seq) 幂等
+ALTER TABLE `chat_messages`
+  ADD UNIQUE INDEX `uk_session_seq`(`session_id` ASC, `seq` ASC) USING BTREE;
+
+-- 4. 应用使用 Redis 计数器 chat:seq:<sessionId> 分配序号，计数器缺失时从 MAX(seq) 初始化；
+--    若升级前 Redis 中已存在旧计数器，需要删除后再启动应用：
+--    redis-cli --scan --pattern 'chat:seq:*' | xargs -r redis-cli del
@@ -0,0 +1,163 @@
+package com.tanxian.asr;
+
+import com.alibaba.nls.client.AccessToken;
+import com.alibaba.nls.client.protocol.InputFormatEnum;
+import com.alibaba.nls.client.protocol.NlsClient;
+import com.alibaba.nls.client.protocol.SampleRateEnum;
+import com.alibaba.nls.client.protocol.asr.SpeechTranscriber;
+import com.alibaba.nls.client.protocol.asr.SpeechTranscriberListener;
+import com.tanxian.config.AliyunNlsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 阿里云语音识别客户端管理
+ *
+ * 全局只持有一个 NlsClient（内部是一个 Netty 事件循环，可承载多路识别连接），
+ * 各会话的 SpeechTranscriber 都从这里创建，建立识别连接时不再需要获取 token 和创建客户端。
+ * 访问令牌在过期前 tokenRefreshAhead 主动刷新，新建的识别连接使用新令牌，已建立的连接不受影响；
+ * 刷新失败时按 tokenRetryInterval 重试，期间继续使用旧令牌。
+ */
+@Component
+@Slf4j
+public class NlsClientManager {
+
+    private static final String DEFAULT_GATEWAY_URL = "wss://nls-gateway-cn-shanghai.aliyuncs.com/ws/v1";
+
+    @Autowired
+    private AliyunNlsProperties properties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "nls-token-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private NlsClient client;
+    private volatile String token;
+    // 令牌过期时间（秒级时间戳）
+    private volatile long expireTime;
+
+    private String customizationId;
+    private String vocabularyId;
+    private Counter refreshFailures;
+
+    @PostConstruct
+    public void init() {
+        String url = StringUtils.hasText(properties.getGatewayUrl()) ? properties.getGatewayUrl() : DEFAULT_GATEWAY_URL;
+        customizationId = properties.getCustomizationId() == null ? "" : properties.getCustomizationId().trim();
+        vocabularyId = properties.getVocabularyId() == null ? "" : properties.getVocabularyId().trim();
+        refreshFailures = Counter.builder("asr.token.refresh.failures")
+                .description("语音识别访问令牌刷新失败次数").register(meterRegistry);
+        Gauge.builder("asr.token.ttl", this, NlsClientManager::tokenTtlSeconds)
+                .baseUnit("seconds").description("语音识别访问令牌剩余有效期").register(meterRegistry);
+
+        // 客户端在创建时不会建立连接，token 可以之后再设置
+        client = new NlsClient(url, "");
+        if (!StringUtils.hasText(properties.getAccessKeyId()) || !StringUtils.hasText(properties.getAccessKeySecret())) {
+            log.warn("未配置阿里云语音识别 AccessKey，语音识别不可用");
+            return;
+        }
+        refreshToken();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refresher.shutdownNow();
+        if (client != null) {
+            client.shutdown();
+        }
+    }
+
+    /**
+     * 创建一个使用共享客户端和当前令牌的识别器（16k PCM，带标点，并应用定制模型与热词词表）
+     *
+     * 常用的可选参数：
+     * max_sentence_silence（vad断句，默认800ms，有效值200ms～6000ms）、enable_semantic_sentence_detection（语义断句）、
+     * disfluency（过滤语气词）、enable_words（词模式）、speech_noise_threshold（vad噪音阈值，-1～+1，越趋于-1越容易把噪声当成语音，需慎重调整），
+     * 可通过 addCustomedParam 设置。
+     */
+    public SpeechTranscriber newTranscriber(SpeechTranscriberListener listener) throws Exception {
+        String current = token;
+        if (current == null) {
+            throw new IllegalStateException("语音识别访问令牌尚未获取");
+        }
+        SpeechTranscriber transcriber = new SpeechTranscriber(client, current, listener);
+        transcriber.setAppKey(properties.getAppKey());
+        //输入音频编码方式。
+        transcriber.setFormat(InputFormatEnum.PCM);
+        //输入音频采样率。
+        transcriber.setSampleRate(SampleRateEnum.SAMPLE_RATE_16K);
+        //是否返回中间识别结果。
+        transcriber.setEnableIntermediateResult(false);
+        //是否生成并返回标点符号。
+        transcriber.setEnablePunctuation(true);
+        //是否将返回结果规整化，比如将一百返回为100。
+        transcriber.setEnableITN(false);
+        applyHotwordAndCustomization(transcriber);
+        return transcriber;
+    }
+
+    /**
+     * 当前令牌剩余有效期（秒），尚未获取时为 0
+     */
+    public long tokenTtlSeconds() {
+        return token == null ? 0 : Math.max(0, expireTime - System.currentTimeMillis() / 1000);
+    }
+
+    private void refreshToken() {
+        long delayMillis;
+        try {
+            AccessToken accessToken = new AccessToken(properties.getAccessKeyId(), properties.getAccessKeySecret());
+            accessToken.apply();
+            if (!StringUtils.hasText(accessToken.getToken())) {
+                throw new IllegalStateException("返回的令牌为空");
+            }
+            token = accessToken.getToken();
+            expireTime = accessToken.getExpireTime();
+            client.setToken(token);
+            long refreshAt = expireTime * 1000 - properties.getTokenRefreshAhead().toMillis();
+            delayMillis = Math.max(properties.getTokenRetryInterval().toMillis(), refreshAt - System.currentTimeMillis());
+            log.info("阿里云语音识别令牌已更新，过期时间: {}，{} 秒后刷新", expireTime, delayMillis / 1000);
+        } catch (Exception e) {
+            refreshFailures.increment();
+            delayMillis = properties.getTokenRetryInterval().toMillis();
+            log.error("获取阿里云语音识别令牌失败，{} 秒后重试", delayMillis / 1000, e);
+        }
+        try {
+            refresher.schedule(this::refreshToken, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (java.util.concurrent.RejectedExecutionException ignored) {
+            // 应用关闭中
+        }
+    }
+
+    /**
+     * 应用定制模型与热词词表，以提高特定领域或术语的识别准确率
+     */
+    private void applyHotwordAndCustomization(SpeechTranscriber transcriber) {
+        try {
+            if (!customizationId.isBlank()) {
+                transcriber.addCustomedParam("customization_id", customizationId);
+            }
+            if (!vocabularyId.isBlank()) {
+                transcriber.addCustomedParam("vocabulary_id", vocabularyId);
+            }
+        } catch (Exception ex) {
+            log.warn("Apply hotword/customization failed: {}", ex.toString());
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.tanxian.asr;
+
+import com.alibaba.nls.client.protocol.SpeechReqProtocol;
+import com.alibaba.nls.client.protocol.asr.SpeechTranscriber;
+import com.alibaba.nls.client.protocol.asr.SpeechTranscriberListener;
+import com.alibaba.nls.client.protocol.asr.SpeechTranscriberResponse;
+import com.tanxian.config.AliyunNlsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 预热的实时识别会话池
+ *
+ * 建立识别连接并 start() 需要一次 WebSocket 握手和参数确认，原先在通话的第一帧音频到达时才做，
+ * 这段等待直接叠加在用户第一句话的识别延迟上。这里在后台预先建立若干已 start 的会话，
+ * 通话开始时直接取用，池空时退回为现场创建。
+ *
+ * 识别回调在会话创建时就要传入，而通话的回调要到取用时才确定，所以池中会话使用一个转发监听器，
+ * 取用时再绑定真正的回调；绑定前收到的事件直接丢弃。
+ *
+ * 池大小按近期通话到达率估算：保持足以覆盖 poolArrivalWindow 内到达的通话数，并限制在
+ * [poolMinIdle, poolMaxIdle] 之间。服务端对长时间未收到音频的会话会超时断开，
+ * 空闲超过 poolIdleTimeout 的会话会被关闭并重新创建，取用时也只交出仍处于确认状态的会话。
+ */
+@Component
+@Slf4j
+public class SpeechTranscriberPool {
+
+    private static final long TICK_MILLIS = 1000;
+    // 到达率的平滑时间常数
+    private static final double RATE_TIME_CONSTANT_MILLIS = 60_000;
+
+    @Autowired
+    private AliyunNlsProperties properties;
+
+    @Autowired
+    private NlsClientManager nlsClientManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "asr-transcriber-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 尾部为最新创建的会话：从尾部取用，从头部回收
+    private final ConcurrentLinkedDeque<WarmTranscriber> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger arrivals = new AtomicInteger();
+    // 平滑后的通话到达率（次/秒），只在调度线程中更新
+    private volatile double arrivalRate;
+    private volatile int target;
+
+    private Counter hitCounter;
+    private Counter missCounter;
+    private Counter expiredCounter;
+    private Counter failedCounter;
+    private Timer createTimer;
+
+    @PostConstruct
+    public void init() {
+        hitCounter = Counter.builder("asr.pool.acquire").tag("result", "hit")
+                .description("直接取到预热识别会话的次数").register(meterRegistry);
+        missCounter = Counter.builder("asr.pool.acquire").tag("result", "miss")
+                .description("池中无可用会话、现场创建识别会话的次数").register(meterRegistry);
+        expiredCounter = Counter.builder("asr.pool.recycled").tag("reason", "idle")
+                .description("因空闲超时被回收的预热识别会话数").register(meterRegistry);
+        failedCounter = Counter.builder("asr.pool.recycled").tag("reason", "failed")
+                .description("因连接失败或断开被丢弃的预热识别会话数").register(meterRegistry);
+        createTimer = Timer.builder("asr.pool.create")
+                .description("预热识别会话的建立耗时（连接与 start 确认）").register(meterRegistry);
+        Gauge.builder("asr.pool.idle", idle, ConcurrentLinkedDeque::size)
+                .description("池中空闲的预热识别会话数").register(meterRegistry);
+        Gauge.builder("asr.pool.target", this, pool -> pool.target)
+                .description("按通话到达率估算的目标池大小").register(meterRegistry);
+        Gauge.builder("asr.pool.arrival.rate", this, pool -> pool.arrivalRate)
+                .description("平滑后的通话到达率（次/秒）").register(meterRegistry);
+
+        if (!properties.isPoolEnabled()) {
+            log.info("识别会话预热池未启用");
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        WarmTranscriber warm;
+        while ((warm = idle.pollFirst()) != null) {
+            warm.close();
+        }
+    }
+
+    /**
+     * 取一个已 start 的识别会话并绑定回调；池中没有可用会话时现场创建
+     */
+    public SpeechTranscriber acquire(SpeechTranscriberListener listener) throws Exception {
+        if (properties.isPoolEnabled()) {
+            arrivals.incrementAndGet();
+            long now = System.currentTimeMillis();
+            WarmTranscriber warm;
+            while ((warm = idle.pollLast()) != null) {
+                if (warm.isUsable(now, properties.getPoolIdleTimeout().toMillis())) {
+                    warm.listener.bind(listener);
+                    hitCounter.increment();
+                    replenish();
+                    return warm.transcriber;
+                }
+                discard(warm);
+            }
+            missCounter.increment();
+            replenish();
+        }
+        SpeechTranscriber transcriber = nlsClientManager.newTranscriber(listener);
+        transcriber.start();
+        return transcriber;
+    }
+
+    private void replenish() {
+        try {
+            scheduler.execute(this::fill);
+        } catch (RejectedExecutionException ignored) {
+            // 应用关闭中
+        }
+    }
+
+    private void tick() {
+        try {
+            double alpha = 1 - Math.exp(-TICK_MILLIS / RATE_TIME_CONSTANT_MILLIS);
+            double observed = arrivals.getAndSet(0) * 1000.0 / TICK_MILLIS;
+            arrivalRate = arrivalRate + alpha * (observed - arrivalRate);
+            long wanted = Math.round(arrivalRate * properties.getPoolArrivalWindow().toMillis() / 1000.0);
+            target = (int) Math.max(properties.getPoolMinIdle(), Math.min(properties.getPoolMaxIdle(), wanted));
+
+            long now = System.currentTimeMillis();
+            for (Iterator<WarmTranscriber> it = idle.iterator(); it.hasNext(); ) {
+                WarmTranscriber warm = it.next();
+                if (!warm.isUsable(now, properties.getPoolIdleTimeout().toMillis()) && idle.remove(warm)) {
+                    discard(warm);
+                }
+            }
+            // 超出目标的会话从最旧的开始关闭
+            while (idle.size() > target) {
+                WarmTranscriber warm = idle.pollFirst();
+                if (warm == null) {
+                    break;
+                }
+                expiredCounter.increment();
+                warm.close();
+            }
+            fill();
+        } catch (Exception e) {
+            log.warn("识别会话预热池维护失败: {}", e.toString());
+        }
+    }
+
+    /**
+     * 补足到目标大小，只在调度线程中执行
+     */
+    private void fill() {
+        // 令牌尚未获取（未配置或获取失败）时不预热
+        if (nlsClientManager.tokenTtlSeconds() <= 0) {
+            return;
+        }
+        while (idle.size() < target && !Thread.currentThread().isInterrupted()) {
+            WarmTranscriber warm = create();
+            if (warm == null) {
+                return;
+            }
+            idle.offerLast(warm);
+        }
+    }
+
+    private WarmTranscriber create() {
+        WarmListener listener = new WarmListener();
+        long start = System.nanoTime();
+        SpeechTranscriber transcriber = null;
+        try {
+            transcriber = nlsClientManager.newTranscriber(listener);
+            transcriber.start();
+            createTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return new WarmTranscriber(transcriber, listener, System.currentTimeMillis());
+        } catch (Exception e) {
+            log.warn("预热识别会话建立失败: {}", e.toString());
+            if (transcriber != null) {
+                transcriber.close();
+            }
+            return null;
+        }
+    }
+
+    private void discard(WarmTranscriber warm) {
+        if (warm.listener.failed || warm.transcriber.getState() != SpeechReqProtocol.State.STATE_REQUEST_CONFIRMED) {
+            failedCounter.increment();
+        } else {
+            expiredCounter.increment();
+        }
+        warm.close();
+    }
+
+    private static class WarmTranscriber {
+        private final SpeechTranscriber transcriber;
+        private final WarmListener listener;
+        private final long createdAt;
+
+        private WarmTranscriber(SpeechTranscriber transcriber, WarmListener listener, long createdAt) {
+            this.transcriber = transcriber;
+            this.listener = listener;
+            this.createdAt = createdAt;
+        }
+
+        private boolean isUsable(long now, long idleTimeoutMillis) {
+            return !listener.failed
+                    && transcriber.getState() == SpeechReqProtocol.State.STATE_REQUEST_CONFIRMED
+                    && now - createdAt < idleTimeoutMillis;
+        }
+
+        private void close() {
+            try {
+                transcriber.close();
+            } catch (Exception e) {
+                log.debug("关闭预热识别会话失败: {}", e.toString());
+            }
+        }
+    }
+
+    /**
+     * 转发识别事件的监听器：取用前的事件丢弃，只记录连接是否已失败
+     */
+    private static class WarmListener extends SpeechTranscriberListener {
+        private volatile SpeechTranscriberListener target;
+        private volatile boolean failed;
+
+        private void bind(SpeechTranscriberListener target) {
+            target.setSpeechTranscriber(getSpeechTranscriber());
+            this.target = target;
+        }
+
+        @Override
+        public void onTranscriberStart(SpeechTranscriberResponse response) {
+            SpeechTranscriberListener current = target;
+            if (current != null) {
+                current.onTranscriberStart(response);
+            }
+        }
+
+        @Override
+        public void onSentenceBegin(SpeechTranscriberResponse response) {
+            SpeechTranscriberListener current = target;
+            if (current != null) {
+                current.onSentenceBegin(response);
+            }
+        }
+
+        @Override
+        public void onSentenceEnd(SpeechTranscriberResponse response) {
+            SpeechTranscriberListener current = target;
+            if (current != null) {
+                current.onSentenceEnd(response);
+            }
+        }
+
+        @Override
+        public void onTranscriptionResultChange(SpeechTranscriberResponse response) {
+            SpeechTranscriberListener current = target;
+            if (current != null) {
+                current.onTranscriptionResultChange(response);
+            }
+        }
+
+        @Override
+        public void onTranscriptionComplete(SpeechTranscriberResponse response) {
+            SpeechTranscriberListener current = target;
+            if (current != null) {
+                current.onTranscriptionComplete(response);
+            }
+        }
+
+        @Override
+        public void onSentenceSemantics(SpeechTranscriberResponse response) {
+            SpeechTranscriberListener current = target;
+            if (current != null) {
+                current.onSentenceSemantics(response);
+            }
+        }
+
+        @Override
+        public void onFail(SpeechTranscriberResponse response) {
+            failed = true;
+            SpeechTranscriberListener current = target;
+            if (current != null) {
+                current.onFail(response);
+            }
+        }
+
+        @Override
+        public void onClose(int closeCode, String reason) {
+            failed = true;
+            super.onClose(closeCode, reason);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.tanxian.audio;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次 TTS 调用的取消句柄
+ *
+ * 调用方（例如被打断的语音分段）随时可以取消：正在进行的 HTTP 请求被取消，重试前的退避等待立即结束，
+ * 之后不再发起新的请求。取消只生效一次且不可撤销。
+ */
+public class TtsCancellation {
+
+    private final CountDownLatch cancelled = new CountDownLatch(1);
+    private volatile CompletableFuture<?> pending;
+
+    public boolean isCancelled() {
+        return cancelled.getCount() == 0;
+    }
+
+    public void cancel() {
+        cancelled.countDown();
+        CompletableFuture<?> current = pending;
+        if (current != null) {
+            current.cancel(true);
+        }
+    }
+
+    /**
+     * 登记正在进行的请求，已取消时立即取消它
+     */
+    public void track(CompletableFuture<?> future) {
+        pending = future;
+        if (isCancelled()) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * 退避等待，被取消时提前返回
+     *
+     * @return 等待期间是否被取消
+     */
+    public boolean sleep(long millis) throws InterruptedException {
+        return cancelled.await(millis, TimeUnit.MILLISECONDS);
+    }
+}
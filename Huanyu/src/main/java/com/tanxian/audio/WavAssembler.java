@@ -0,0 +1,237 @@
+package com.tanxian.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 把一轮回复中逐段合成的 WAV 音频拼接为一个完整的 WAV 文件
+ *
+ * 每段 TTS 流都带有自己的 WAV 头（流式输出时头里的长度字段往往是占位值），这里边接收边解析：
+ * 丢弃各段的头部，只保留 data 块中的 PCM，最后按第一段的格式重新生成长度正确的 44 字节文件头。
+ * 某段没有 WAV 头时按前一段的格式视为裸 PCM。格式不一致、某段被中断或超出大小上限时标记为不完整，
+ * 调用方应放弃拼接结果。非线程安全，同一轮的音频需按顺序写入。
+ */
+public class WavAssembler {
+
+    private static final int RIFF_HEADER_BYTES = 12;
+    private static final int CHUNK_HEADER_BYTES = 8;
+    private static final int WAV_HEADER_BYTES = 44;
+    // 段头部（含 LIST 等附加块）的解析上限，超过视为格式异常
+    private static final int MAX_SEGMENT_HEADER_BYTES = 64 * 1024;
+
+    private final int maxBytes;
+    private final ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+
+    private Format format;
+    private boolean complete = true;
+    private int segments;
+
+    // 当前段的解析状态
+    private ByteArrayOutputStream segmentHeader;
+    private boolean inData;
+    // 当前段末尾尚未凑满一帧的字节，凑满后才写入 pcm，段结束时直接丢弃
+    private byte[] partialFrame;
+    private int partialBytes;
+
+    /**
+     * @param maxBytes 拼接后 PCM 数据的最大字节数，超出时标记为不完整
+     */
+    public WavAssembler(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 开始新的一段音频
+     */
+    public void beginSegment() {
+        segmentHeader = new ByteArrayOutputStream();
+        inData = false;
+        partialBytes = 0;
+    }
+
+    /**
+     * 写入当前段的一块音频数据
+     */
+    public void append(byte[] data, int offset, int length) {
+        if (!complete || segmentHeader == null) {
+            return;
+        }
+        if (inData) {
+            appendPcm(data, offset, length);
+            return;
+        }
+        segmentHeader.write(data, offset, length);
+        parseHeader();
+    }
+
+    /**
+     * 当前段正常结束
+     */
+    public void endSegment() {
+        if (!complete || segmentHeader == null) {
+            return;
+        }
+        if (!inData) {
+            // 数据太短，连头部都没有解析完成
+            markIncomplete();
+            return;
+        }
+        // 按帧对齐，丢弃末尾不完整的采样
+        partialBytes = 0;
+        segments++;
+        segmentHeader = null;
+    }
+
+    /**
+     * 有音频段被中断或合成失败，整轮拼接作废
+     */
+    public void markIncomplete() {
+        complete = false;
+        segmentHeader = null;
+    }
+
+    public boolean isComplete() {
+        return complete && segments > 0 && segmentHeader == null;
+    }
+
+    /**
+     * @return 完整的 WAV 文件；不完整时返回 null
+     */
+    public byte[] toWav() {
+        if (!isComplete()) {
+            return null;
+        }
+        int dataBytes = pcm.size();
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(WAV_HEADER_BYTES - CHUNK_HEADER_BYTES + dataBytes);
+        header.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        header.put("fmt ".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(16);
+        header.putShort((short) format.audioFormat());
+        header.putShort((short) format.channels());
+        header.putInt(format.sampleRate());
+        header.putInt(format.sampleRate() * format.blockAlign());
+        header.putShort((short) format.blockAlign());
+        header.putShort((short) format.bitsPerSample());
+        header.put("data".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(dataBytes);
+        byte[] wav = new byte[WAV_HEADER_BYTES + dataBytes];
+        System.arraycopy(header.array(), 0, wav, 0, WAV_HEADER_BYTES);
+        System.arraycopy(pcm.toByteArray(), 0, wav, WAV_HEADER_BYTES, dataBytes);
+        return wav;
+    }
+
+    private void parseHeader() {
+        byte[] buffered = segmentHeader.toByteArray();
+        if (buffered.length < RIFF_HEADER_BYTES) {
+            return;
+        }
+        if (!"RIFF".equals(ascii(buffered, 0)) || !"WAVE".equals(ascii(buffered, 8))) {
+            // 没有 WAV 头：沿用前一段的格式按裸 PCM 处理
+            if (format == null) {
+                markIncomplete();
+                return;
+            }
+            startData(buffered, 0);
+            return;
+        }
+        int pos = RIFF_HEADER_BYTES;
+        Format segmentFormat = null;
+        while (pos + CHUNK_HEADER_BYTES <= buffered.length) {
+            String id = ascii(buffered, pos);
+            long size = Integer.toUnsignedLong(readInt(buffered, pos + 4));
+            int body = pos + CHUNK_HEADER_BYTES;
+            if ("data".equals(id)) {
+                if (segmentFormat == null && format == null) {
+                    markIncomplete();
+                    return;
+                }
+                if (segmentFormat != null) {
+                    if (format == null) {
+                        format = segmentFormat;
+                    } else if (!format.equals(segmentFormat)) {
+                        markIncomplete();
+                        return;
+                    }
+                }
+                // 流式输出的 data 长度不可信，之后的字节全部视为 PCM
+                startData(buffered, body);
+                return;
+            }
+            // 块长度为奇数时有一个填充字节
+            long next = body + size + (size & 1);
+            if (next > buffered.length) {
+                break;
+            }
+            if ("fmt ".equals(id)) {
+                if (size < 16) {
+                    markIncomplete();
+                    return;
+                }
+                segmentFormat = new Format(readShort(buffered, body), readShort(buffered, body + 2),
+                        readInt(buffered, body + 4), readShort(buffered, body + 12), readShort(buffered, body + 14));
+                if (segmentFormat.blockAlign() <= 0) {
+                    markIncomplete();
+                    return;
+                }
+            }
+            pos = (int) next;
+        }
+        if (buffered.length > MAX_SEGMENT_HEADER_BYTES) {
+            markIncomplete();
+        }
+    }
+
+    private void startData(byte[] buffered, int offset) {
+        inData = true;
+        appendPcm(buffered, offset, buffered.length - offset);
+    }
+
+    /**
+     * 只把完整的帧写入 pcm，不足一帧的部分暂存，与下一块数据拼接
+     */
+    private void appendPcm(byte[] data, int offset, int length) {
+        if (pcm.size() + partialBytes + (long) length > maxBytes) {
+            markIncomplete();
+            return;
+        }
+        int blockAlign = format.blockAlign();
+        if (partialFrame == null || partialFrame.length != blockAlign) {
+            partialFrame = new byte[blockAlign];
+        }
+        if (partialBytes > 0) {
+            int fill = Math.min(blockAlign - partialBytes, length);
+            System.arraycopy(data, offset, partialFrame, partialBytes, fill);
+            partialBytes += fill;
+            offset += fill;
+            length -= fill;
+            if (partialBytes < blockAlign) {
+                return;
+            }
+            pcm.write(partialFrame, 0, blockAlign);
+            partialBytes = 0;
+        }
+        int whole = length - length % blockAlign;
+        pcm.write(data, offset, whole);
+        partialBytes = length - whole;
+        System.arraycopy(data, offset + whole, partialFrame, 0, partialBytes);
+    }
+
+    private static String ascii(byte[] bytes, int offset) {
+        return new String(bytes, offset, 4, StandardCharsets.US_ASCII);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ByteBuffer.wrap(bytes, offset, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    }
+
+    private static int readShort(byte[] bytes, int offset) {
+        return Short.toUnsignedInt(ByteBuffer.wrap(bytes, offset, 2).order(ByteOrder.LITTLE_ENDIAN).getShort());
+    }
+
+    private record Format(int audioFormat, int channels, int sampleRate, int blockAlign, int bitsPerSample) {
+    }
+}
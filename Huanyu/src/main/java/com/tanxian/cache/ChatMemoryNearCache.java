@@ -0,0 +1,323 @@
+package com.tanxian.cache;
+
+import cn.hutool.core.util.IdUtil;
+import com.tanxian.config.ChatMemoryNearCacheProperties;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 聊天记忆近端缓存（L1）
+ *
+ * LangChain4j 每轮对话会多次读取同一会话的记忆窗口，每次都要 LRANGE 并逐条解析 JSON。
+ * 这里在进程内缓存已解析的窗口（不含系统消息）及滚动摘要，按条目数与估算字节数双重限制，LRU 淘汰。
+ * 本节点写入 Redis 后直接用最新窗口覆盖本地条目，并通过 Redis 发布订阅通知其他节点失效。
+ *
+ * 读路径回填前要确认读取期间该会话没有被写入或失效，为此每个会话记录最近一次写入的版本号。
+ * 版本只按会话比较，其他会话的写入不影响回填。版本表超过上限时整体清空并抬高默认版本，
+ * 此时正在进行的读取最多放弃一次回填。
+ */
+@Component
+@Slf4j
+public class ChatMemoryNearCache {
+
+    private static final String INVALIDATE_CHANNEL = "chat:memory:invalidate";
+    // 消息格式：节点ID|sessionId，节点忽略自己发出的失效通知
+    private static final String SEPARATOR = "|";
+    // 单条消息的对象头、字段等固定开销估算
+    private static final int MESSAGE_OVERHEAD_BYTES = 64;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ChatMemoryNearCacheProperties properties;
+
+    private final String nodeId = IdUtil.fastSimpleUUID();
+    // 访问顺序的 LinkedHashMap，所有访问都在 this 上同步
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    // 会话最近一次写入或失效的版本号，读路径据此判断回填的数据是否可能已过时；同样在 this 上同步
+    private final Map<String, Long> versions = new HashMap<>();
+    // 全局递增的版本来源
+    private long versionSequence;
+    // 不在版本表中的会话的版本号，清空版本表时抬高
+    private long versionFloor;
+    // 正在压缩（替换摘要）的会话，期间不缓存其窗口
+    private final Set<String> compacting = new HashSet<>();
+    private long totalBytes;
+
+    private Counter hitCounter;
+    private Counter missCounter;
+    private Counter sizeEvictionCounter;
+    private Counter expiredEvictionCounter;
+    private Counter invalidationCounter;
+
+    @PostConstruct
+    public void init() {
+        hitCounter = Counter.builder("chat.memory.near.cache").tag("result", "hit")
+                .description("记忆近端缓存命中次数").register(meterRegistry);
+        missCounter = Counter.builder("chat.memory.near.cache").tag("result", "miss")
+                .description("记忆近端缓存未命中次数").register(meterRegistry);
+        sizeEvictionCounter = Counter.builder("chat.memory.near.cache.evictions").tag("cause", "size")
+                .description("超出容量被淘汰的条目数").register(meterRegistry);
+        expiredEvictionCounter = Counter.builder("chat.memory.near.cache.evictions").tag("cause", "expired")
+                .description("过期被淘汰的条目数").register(meterRegistry);
+        invalidationCounter = Counter.builder("chat.memory.near.cache.evictions").tag("cause", "invalidated")
+                .description("因写入或其他节点通知失效的条目数").register(meterRegistry);
+        Gauge.builder("chat.memory.near.cache.size", this, ChatMemoryNearCache::size)
+                .description("记忆近端缓存条目数").register(meterRegistry);
+        Gauge.builder("chat.memory.near.cache.bytes", this, ChatMemoryNearCache::bytes)
+                .description("记忆近端缓存估算占用字节数").register(meterRegistry);
+
+        if (!properties.isEnabled()) {
+            log.info("记忆近端缓存未启用");
+            return;
+        }
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int idx = body.indexOf(SEPARATOR);
+            if (idx < 0 || nodeId.equals(body.substring(0, idx))) {
+                return;
+            }
+            String sessionId = body.substring(idx + 1);
+            if (remove(sessionId)) {
+                invalidationCounter.increment();
+            }
+            log.debug("收到记忆缓存失效通知: {}", sessionId);
+        }, new ChannelTopic(INVALIDATE_CHANNEL));
+        log.info("记忆近端缓存已启动，最大条目: {}，最大字节: {}，过期时间: {}", properties.getMaxEntries(), properties.getMaxBytes(), properties.getExpire());
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 读取 Redis 之前获取会话当前的版本号，回填时用于判断期间该会话是否发生过写入
+     */
+    public synchronized long version(String sessionId) {
+        return versions.getOrDefault(sessionId, versionFloor);
+    }
+
+    /**
+     * 获取缓存的窗口（消息列表不可修改），不存在或已过期时返回 null
+     */
+    public ChatMemoryWindow get(String sessionId) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(sessionId);
+            if (entry != null && entry.expireAt < System.currentTimeMillis()) {
+                entries.remove(sessionId);
+                totalBytes -= entry.bytes;
+                expiredEvictionCounter.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                missCounter.increment();
+                return null;
+            }
+            hitCounter.increment();
+            return entry.window;
+        }
+    }
+
+    /**
+     * 读路径回填：仅当读取期间该会话没有发生写入或失效时才缓存，避免覆盖更新的数据
+     */
+    public void putIfUnchanged(String sessionId, ChatMemoryWindow window, long version) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            if (version(sessionId) != version || compacting.contains(sessionId)) {
+                return;
+            }
+            store(sessionId, window);
+        }
+    }
+
+    /**
+     * 写路径：本节点已将窗口写入 Redis，用最新消息覆盖本地条目并通知其他节点失效
+     * 写入不会改变滚动摘要，沿用本地条目中的摘要；本地没有条目时无法确定摘要，交给下次读取回填。
+     * 压缩会替换摘要并在开始和结束时失效条目，压缩期间的写入只失效、不沿用旧摘要。
+     */
+    public void putAfterWrite(String sessionId, List<ChatMessage> messages) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            bumpVersion(sessionId);
+            Entry current = entries.get(sessionId);
+            if (current != null && compacting.contains(sessionId)) {
+                remove(sessionId);
+            } else if (current != null) {
+                store(sessionId, new ChatMemoryWindow(messages, current.window.summary()));
+            }
+        }
+        publishInvalidation(sessionId);
+    }
+
+    /**
+     * 失效本地条目并通知其他节点
+     */
+    public void invalidate(String sessionId) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        if (remove(sessionId)) {
+            invalidationCounter.increment();
+        }
+        publishInvalidation(sessionId);
+    }
+
+    /**
+     * 开始压缩会话记忆：失效本地条目，压缩结束前不再缓存该会话
+     */
+    public void beginCompaction(String sessionId) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            compacting.add(sessionId);
+        }
+        invalidate(sessionId);
+    }
+
+    /**
+     * 压缩结束（无论是否写入了新摘要）：恢复缓存并再次失效，本节点和其他节点都从 Redis 读取新摘要
+     */
+    public void endCompaction(String sessionId) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            compacting.remove(sessionId);
+        }
+        invalidate(sessionId);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return totalBytes;
+    }
+
+    private void publishInvalidation(String sessionId) {
+        try {
+            redisTemplate.convertAndSend(INVALIDATE_CHANNEL, nodeId + SEPARATOR + sessionId);
+        } catch (Exception e) {
+            log.warn("发布记忆缓存失效通知失败: {}", sessionId, e);
+        }
+    }
+
+    /**
+     * 删除本地条目并推进会话版本（本地写入、失效或其他节点通知）
+     */
+    private synchronized boolean remove(String sessionId) {
+        bumpVersion(sessionId);
+        Entry removed = entries.remove(sessionId);
+        if (removed == null) {
+            return false;
+        }
+        totalBytes -= removed.bytes;
+        return true;
+    }
+
+    /**
+     * 推进会话版本，调用方需持有 this 锁
+     */
+    private void bumpVersion(String sessionId) {
+        if (versions.size() >= Math.max(1024, properties.getMaxEntries() * 2) && !versions.containsKey(sessionId)) {
+            versionFloor = ++versionSequence;
+            versions.clear();
+        }
+        versions.put(sessionId, ++versionSequence);
+    }
+
+    /**
+     * 写入条目并按条目数、字节数从最久未访问的条目开始淘汰，调用方需持有 this 锁
+     */
+    private void store(String sessionId, ChatMemoryWindow window) {
+        long size = estimateBytes(window);
+        if (size > properties.getMaxBytes()) {
+            Entry stale = entries.remove(sessionId);
+            if (stale != null) {
+                totalBytes -= stale.bytes;
+            }
+            return;
+        }
+        Entry previous = entries.put(sessionId, new Entry(window, size, System.currentTimeMillis() + properties.getExpire().toMillis()));
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+        }
+        totalBytes += size;
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > properties.getMaxEntries() || totalBytes > properties.getMaxBytes()) && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getKey().equals(sessionId)) {
+                continue;
+            }
+            it.remove();
+            totalBytes -= eldest.getValue().bytes;
+            sizeEvictionCounter.increment();
+        }
+    }
+
+    /**
+     * 按文本长度估算窗口占用的堆内存（Java 字符串按每字符两字节计）
+     */
+    private static long estimateBytes(ChatMemoryWindow window) {
+        long bytes = window.summary() == null ? 0 : MESSAGE_OVERHEAD_BYTES + 2L * window.summary().length();
+        for (ChatMessage message : window.messages()) {
+            bytes += MESSAGE_OVERHEAD_BYTES + 2L * textLength(message);
+        }
+        return bytes;
+    }
+
+    private static int textLength(ChatMessage message) {
+        if (message instanceof UserMessage userMessage) {
+            return userMessage.hasSingleText() ? userMessage.singleText().length() : userMessage.toString().length();
+        }
+        if (message instanceof AiMessage aiMessage) {
+            return aiMessage.text() == null ? aiMessage.toString().length() : aiMessage.text().length();
+        }
+        if (message instanceof SystemMessage systemMessage) {
+            return systemMessage.text().length();
+        }
+        return message.toString().length();
+    }
+
+    private record Entry(ChatMemoryWindow window, long bytes, long expireAt) {
+    }
+}
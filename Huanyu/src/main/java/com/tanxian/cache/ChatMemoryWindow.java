@@ -0,0 +1,58 @@
+package com.tanxian.cache;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+
+/**
+ * 会话记忆窗口：Redis 列表中的非系统消息，以及已折叠进滚动摘要的更早对话
+ *
+ * 窗口创建后不可修改。合入摘要的系统消息在首次读取时生成并随窗口缓存，
+ * 同一窗口（近端缓存命中时）的后续读取不再重复拼接。
+ */
+public final class ChatMemoryWindow {
+
+    private static final String SUMMARY_HEADER = "\n\n【此前对话摘要】\n";
+
+    private final List<ChatMessage> messages;
+    private final String summary;
+    // 上次合入摘要时使用的系统提示词及结果，系统提示词变化（模板版本、昵称）时重新生成
+    private volatile SummarizedPrompt summarized;
+
+    /**
+     * @param messages 窗口内的消息（按时间顺序，不含系统消息）
+     * @param summary  滚动摘要，没有时为 null
+     */
+    public ChatMemoryWindow(List<ChatMessage> messages, String summary) {
+        this.messages = List.copyOf(messages);
+        this.summary = summary;
+    }
+
+    public List<ChatMessage> messages() {
+        return messages;
+    }
+
+    public String summary() {
+        return summary;
+    }
+
+    /**
+     * 将滚动摘要合入系统消息，没有摘要时原样返回
+     */
+    public SystemMessage systemMessage(SystemMessage prompt) {
+        if (!StringUtils.hasText(summary)) {
+            return prompt;
+        }
+        SummarizedPrompt current = summarized;
+        if (current == null || current.prompt != prompt) {
+            current = new SummarizedPrompt(prompt, SystemMessage.from(prompt.text() + SUMMARY_HEADER + summary));
+            summarized = current;
+        }
+        return current.message;
+    }
+
+    private record SummarizedPrompt(SystemMessage prompt, SystemMessage message) {
+    }
+}
@@ -0,0 +1,292 @@
+package com.tanxian.cache;
+
+import com.tanxian.config.ChatResponseCacheProperties;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 角色回复缓存
+ *
+ * 大量用户会对同一角色发送几乎相同的开场白（“你好”“你是谁”），每次都要完整调用一次模型。
+ * 这里按（角色, 上下文指纹, 归一化后的用户消息）缓存完整回复的分片，命中时按原分片回放。
+ * 上下文指纹是窗口内全部对话（不含系统提示词）的哈希，只有此前的对话完全相同时才会复用，
+ * 典型的是新会话的开场白；不同用户、不同会话的后续对话不会互相命中。
+ *
+ * 精确匹配未命中时，在同一（角色, 上下文指纹）分组内做近似匹配：文本按字符一元、二元组
+ * 哈希成定长向量（本地计算，不依赖外部向量模型），余弦相似度达到阈值即视为命中。
+ * 条目按 TTL 过期，超出条目上限时淘汰最久未使用的。
+ */
+@Component
+@Slf4j
+public class ChatResponseCache {
+
+    private static final int EMBEDDING_DIM = 512;
+    private static final float UNIGRAM_WEIGHT = 0.5f;
+    private static final float BIGRAM_WEIGHT = 1.0f;
+    private static final String NO_CONTEXT = "-";
+    private static final char KEY_SEPARATOR = '|';
+    // 指纹取摘要的前 16 字节
+    private static final int FINGERPRINT_BYTES = 16;
+
+    @Autowired
+    private ChatResponseCacheProperties properties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 访问顺序的 LinkedHashMap，与分组索引一起在 this 上同步
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    // 分组（角色 + 上下文指纹）-> 该组条目，近似匹配只扫描同组
+    private final Map<String, Map<String, Entry>> buckets = new HashMap<>();
+
+    private Counter hitCounter;
+    private Counter similarHitCounter;
+    private Counter missCounter;
+    private Counter evictionCounter;
+
+    @PostConstruct
+    public void init() {
+        hitCounter = Counter.builder("chat.response.cache").tag("result", "hit")
+                .description("回复缓存精确命中次数").register(meterRegistry);
+        similarHitCounter = Counter.builder("chat.response.cache").tag("result", "similar")
+                .description("回复缓存近似命中次数").register(meterRegistry);
+        missCounter = Counter.builder("chat.response.cache").tag("result", "miss")
+                .description("回复缓存未命中次数").register(meterRegistry);
+        evictionCounter = Counter.builder("chat.response.cache.evictions")
+                .description("回复缓存因过期或容量淘汰的条目数").register(meterRegistry);
+        Gauge.builder("chat.response.cache.size", this, ChatResponseCache::size)
+                .description("回复缓存条目数").register(meterRegistry);
+        if (properties.isEnabled()) {
+            log.info("回复缓存已启用，最大条目: {}，有效期: {}，相似度阈值: {}",
+                    properties.getMaxEntries(), properties.getTtl(), properties.getSimilarityThreshold());
+        }
+    }
+
+    /**
+     * 该消息是否参与缓存（功能开启且归一化后为短句）
+     */
+    public boolean isCacheable(String message) {
+        if (!properties.isEnabled() || message == null) {
+            return false;
+        }
+        String normalized = normalize(message);
+        return !normalized.isEmpty() && normalized.length() <= properties.getMaxPromptChars();
+    }
+
+    /**
+     * 根据会话记忆计算上下文指纹：窗口内按顺序的用户与 AI 消息（归一化后）的 SHA-256，还没有对话时为固定值
+     * 系统提示词中含用户昵称，不参与计算，新会话的开场白仍可跨用户复用
+     */
+    public String fingerprint(List<ChatMessage> history) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        boolean empty = true;
+        for (ChatMessage message : history) {
+            char role;
+            String text;
+            if (message instanceof UserMessage userMessage) {
+                role = 'U';
+                text = userMessage.hasSingleText() ? userMessage.singleText() : userMessage.toString();
+            } else if (message instanceof AiMessage aiMessage && aiMessage.text() != null) {
+                role = 'A';
+                text = aiMessage.text();
+            } else {
+                continue;
+            }
+            digest.update((byte) role);
+            digest.update(normalize(text).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) KEY_SEPARATOR);
+            empty = false;
+        }
+        return empty ? NO_CONTEXT : HexFormat.of().formatHex(digest.digest(), 0, FINGERPRINT_BYTES);
+    }
+
+    /**
+     * 查询缓存的回复分片，未命中返回 null
+     */
+    public List<String> get(String character, String fingerprint, String message) {
+        String normalized = normalize(message);
+        String bucket = character + KEY_SEPARATOR + fingerprint;
+        String key = bucket + KEY_SEPARATOR + normalized;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry exact = entries.get(key);
+            if (exact != null) {
+                if (exact.expireAt >= now) {
+                    hitCounter.increment();
+                    return exact.chunks;
+                }
+                remove(key);
+                evictionCounter.increment();
+            }
+
+            double threshold = properties.getSimilarityThreshold();
+            Map<String, Entry> group = buckets.get(bucket);
+            if (threshold > 0 && group != null) {
+                float[] vector = embed(normalized);
+                String bestKey = null;
+                double bestScore = threshold;
+                // 扫描分组索引而非 LRU 链表，不会打乱访问顺序
+                for (Map.Entry<String, Entry> candidate : group.entrySet()) {
+                    Entry entry = candidate.getValue();
+                    if (entry.expireAt < now) {
+                        continue;
+                    }
+                    double score = dot(vector, entry.vector);
+                    if (score >= bestScore) {
+                        bestScore = score;
+                        bestKey = candidate.getKey();
+                    }
+                }
+                if (bestKey != null) {
+                    similarHitCounter.increment();
+                    log.debug("回复缓存近似命中: {} -> {}，相似度 {}", normalized, bestKey, bestScore);
+                    return entries.get(bestKey).chunks;
+                }
+            }
+        }
+        missCounter.increment();
+        return null;
+    }
+
+    /**
+     * 缓存一次完整回复
+     */
+    public void put(String character, String fingerprint, String message, List<String> chunks) {
+        int replyChars = chunks.stream().mapToInt(String::length).sum();
+        if (replyChars == 0 || replyChars > properties.getMaxReplyChars()) {
+            return;
+        }
+        String normalized = normalize(message);
+        String bucket = character + KEY_SEPARATOR + fingerprint;
+        String key = bucket + KEY_SEPARATOR + normalized;
+        Entry entry = new Entry(bucket, embed(normalized), List.copyOf(chunks),
+                System.currentTimeMillis() + properties.getTtl().toMillis());
+        synchronized (this) {
+            entries.put(key, entry);
+            buckets.computeIfAbsent(bucket, b -> new HashMap<>()).put(key, entry);
+            evictIfNecessary();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 归一化：全角转半角、转小写，去掉空白与标点
+     */
+    static String normalize(String text) {
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase();
+        StringBuilder sb = new StringBuilder(folded.length());
+        folded.codePoints()
+                .filter(Character::isLetterOrDigit)
+                .forEach(sb::appendCodePoint);
+        return sb.toString();
+    }
+
+    /**
+     * 字符一元、二元组哈希向量，L2 归一化后点积即余弦相似度
+     */
+    static float[] embed(String normalized) {
+        float[] vector = new float[EMBEDDING_DIM];
+        int[] codePoints = normalized.codePoints().toArray();
+        for (int i = 0; i < codePoints.length; i++) {
+            vector[bucketOf(codePoints[i])] += UNIGRAM_WEIGHT;
+            if (i + 1 < codePoints.length) {
+                vector[bucketOf((long) codePoints[i] * 0x110000 + codePoints[i + 1])] += BIGRAM_WEIGHT;
+            }
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private static int bucketOf(long gram) {
+        long h = gram * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 32) & (EMBEDDING_DIM - 1));
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 先清理过期条目，再按最久未使用淘汰至上限，调用方需持有 this 锁
+     */
+    private void evictIfNecessary() {
+        if (entries.size() <= properties.getMaxEntries()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        entries.entrySet().removeIf(e -> {
+            if (e.getValue().expireAt < now) {
+                unindex(e.getKey(), e.getValue());
+                evictionCounter.increment();
+                return true;
+            }
+            return false;
+        });
+        var it = entries.entrySet().iterator();
+        while (entries.size() > properties.getMaxEntries() && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            it.remove();
+            unindex(eldest.getKey(), eldest.getValue());
+            evictionCounter.increment();
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            unindex(key, removed);
+        }
+    }
+
+    private void unindex(String key, Entry entry) {
+        Map<String, Entry> group = buckets.get(entry.bucket);
+        if (group != null) {
+            group.remove(key);
+            if (group.isEmpty()) {
+                buckets.remove(entry.bucket);
+            }
+        }
+    }
+
+    private record Entry(String bucket, float[] vector, List<String> chunks, long expireAt) {
+    }
+}
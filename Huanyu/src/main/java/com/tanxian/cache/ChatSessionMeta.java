@@ -0,0 +1,20 @@
+package com.tanxian.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 会话元数据（chat_sessions 中热路径需要的字段）
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ChatSessionMeta {
+
+    private final Short characterType;
+
+    private final Long userId;
+
+    private final String characterName;
+}
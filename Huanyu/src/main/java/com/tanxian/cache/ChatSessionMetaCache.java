@@ -0,0 +1,98 @@
+package com.tanxian.cache;
+
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.core.util.IdUtil;
+import com.tanxian.config.ChatSessionCacheProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * 会话元数据本地缓存
+ *
+ * 每轮对话读取记忆时都需要知道会话的角色类型，原先每次都查询 chat_sessions。
+ * 这里用有界 LRU + 过期时间缓存在进程内，首次访问或记录会话时填充；
+ * 会话角色变更时通过 Redis 发布订阅通知其他节点失效本地缓存。
+ */
+@Component
+@Slf4j
+public class ChatSessionMetaCache {
+
+    private static final String INVALIDATE_CHANNEL = "chat:session:meta:invalidate";
+    // 消息格式：节点ID|sessionId，节点忽略自己发出的失效通知
+    private static final String SEPARATOR = "|";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private ChatSessionCacheProperties properties;
+
+    private final String nodeId = IdUtil.fastSimpleUUID();
+    private Cache<String, ChatSessionMeta> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = CacheUtil.newLRUCache(properties.getMaxSize(), properties.getExpire().toMillis());
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int idx = body.indexOf(SEPARATOR);
+            if (idx < 0 || nodeId.equals(body.substring(0, idx))) {
+                return;
+            }
+            String sessionId = body.substring(idx + 1);
+            cache.remove(sessionId);
+            log.debug("收到会话元数据失效通知: {}", sessionId);
+        }, new ChannelTopic(INVALIDATE_CHANNEL));
+        log.info("会话元数据缓存已启动，容量: {}，过期时间: {}", properties.getMaxSize(), properties.getExpire());
+    }
+
+    /**
+     * 获取缓存的会话元数据，不存在或已过期时返回 null
+     */
+    public ChatSessionMeta get(String sessionId) {
+        return cache.get(sessionId);
+    }
+
+    /**
+     * 获取会话元数据，未命中时调用 loader 加载并缓存（loader 返回 null 时不缓存）
+     */
+    public ChatSessionMeta getOrLoad(String sessionId, Function<String, ChatSessionMeta> loader) {
+        ChatSessionMeta meta = cache.get(sessionId);
+        if (meta != null) {
+            return meta;
+        }
+        meta = loader.apply(sessionId);
+        if (meta != null) {
+            cache.put(sessionId, meta);
+        }
+        return meta;
+    }
+
+    public void put(String sessionId, ChatSessionMeta meta) {
+        cache.put(sessionId, meta);
+    }
+
+    /**
+     * 失效本地缓存并通知其他节点
+     */
+    public void invalidate(String sessionId) {
+        cache.remove(sessionId);
+        try {
+            redisTemplate.convertAndSend(INVALIDATE_CHANNEL, nodeId + SEPARATOR + sessionId);
+        } catch (Exception e) {
+            log.warn("发布会话元数据失效通知失败: {}", sessionId, e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.tanxian.cache;
+
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import com.tanxian.config.SystemPromptCacheProperties;
+import dev.langchain4j.data.message.SystemMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * 已编译的系统提示词缓存
+ *
+ * 系统消息 = 角色模板（4~6KB）+ 昵称相关的动态后缀，LangChain4j 每轮会读取两次记忆，
+ * 原先每次都重新拼接字符串并创建 SystemMessage。这里按（模板key, 模板版本, 昵称）缓存
+ * 共享的不可变 SystemMessage，模板更新后版本号变化，旧条目自然淘汰。
+ */
+@Component
+@Slf4j
+public class SystemPromptCache {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private SystemPromptCacheProperties properties;
+
+    private Cache<PromptKey, SystemMessage> cache;
+    private Counter hitCounter;
+    private Counter missCounter;
+
+    @PostConstruct
+    public void init() {
+        cache = CacheUtil.newLRUCache(properties.getMaxSize());
+        hitCounter = Counter.builder("chat.prompt.cache").tag("result", "hit")
+                .description("系统提示词缓存命中次数").register(meterRegistry);
+        missCounter = Counter.builder("chat.prompt.cache").tag("result", "miss")
+                .description("系统提示词缓存未命中次数").register(meterRegistry);
+        Gauge.builder("chat.prompt.cache.size", cache, Cache::size)
+                .description("系统提示词缓存条目数").register(meterRegistry);
+    }
+
+    /**
+     * 获取编译后的系统消息，未命中时通过 compiler 生成并缓存
+     *
+     * @param templateKey 模板key
+     * @param version     模板版本号
+     * @param nickname    用户昵称
+     * @param compiler    生成完整系统提示词文本
+     */
+    public SystemMessage get(String templateKey, long version, String nickname, Supplier<String> compiler) {
+        PromptKey key = new PromptKey(templateKey, version, nickname);
+        SystemMessage message = cache.get(key, false);
+        if (message != null) {
+            hitCounter.increment();
+            return message;
+        }
+        missCounter.increment();
+        message = SystemMessage.from(compiler.get());
+        cache.put(key, message);
+        return message;
+    }
+
+    public long getHitCount() {
+        return (long) hitCounter.count();
+    }
+
+    public long getMissCount() {
+        return (long) missCounter.count();
+    }
+
+    private record PromptKey(String templateKey, long version, String nickname) {
+    }
+}
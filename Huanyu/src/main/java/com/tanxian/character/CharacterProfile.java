@@ -0,0 +1,132 @@
+package com.tanxian.character;
+
+import io.micrometer.core.instrument.Counter;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 运行时的角色信息及其独占的资源池
+ *
+ * 每个角色有独立的对话并发许可、后台音频线程池和 TTS 地址轮询游标，
+ * 某个角色流量激增时只会耗尽自己的配额，不影响其他角色。
+ */
+public class CharacterProfile {
+
+    private final short type;
+    private final String key;
+    private final String name;
+    private final String clientId;
+    private final String promptFile;
+    private final List<String> ttsEndpoints;
+    private final int tokenBudget;
+    private final int maxConcurrentChats;
+    private final Semaphore chatPermits;
+    private final Scheduler ttsScheduler;
+    private final Counter rejectedChats;
+    private final Counter rejectedTts;
+    private final AtomicInteger ttsCursor = new AtomicInteger();
+
+    CharacterProfile(short type, String key, String name, String clientId, String promptFile,
+                     List<String> ttsEndpoints, int tokenBudget, int maxConcurrentChats, Scheduler ttsScheduler,
+                     Counter rejectedChats, Counter rejectedTts) {
+        this.type = type;
+        this.key = key;
+        this.name = name;
+        this.clientId = clientId;
+        this.promptFile = promptFile;
+        this.ttsEndpoints = List.copyOf(ttsEndpoints);
+        this.tokenBudget = tokenBudget;
+        this.maxConcurrentChats = maxConcurrentChats;
+        this.chatPermits = new Semaphore(maxConcurrentChats);
+        this.ttsScheduler = ttsScheduler;
+        this.rejectedChats = rejectedChats;
+        this.rejectedTts = rejectedTts;
+    }
+
+    public short getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getPromptFile() {
+        return promptFile;
+    }
+
+    public List<String> getTtsEndpoints() {
+        return ttsEndpoints;
+    }
+
+    public int getTokenBudget() {
+        return tokenBudget;
+    }
+
+    /**
+     * 后台生成音频使用的线程池
+     */
+    public Scheduler getTtsScheduler() {
+        return ttsScheduler;
+    }
+
+    /**
+     * 提交后台音频任务，线程与排队均已满时不等待，返回 false
+     */
+    public boolean trySubmitTts(Runnable task) {
+        try {
+            ttsScheduler.schedule(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedTts.increment();
+            return false;
+        }
+    }
+
+    /**
+     * 轮询选择下一个 TTS 服务地址
+     */
+    public String nextTtsEndpoint() {
+        int index = Math.floorMod(ttsCursor.getAndIncrement(), ttsEndpoints.size());
+        return ttsEndpoints.get(index);
+    }
+
+    /**
+     * 尝试占用一个对话许可，不等待
+     */
+    public boolean tryAcquireChat() {
+        if (chatPermits.tryAcquire()) {
+            return true;
+        }
+        rejectedChats.increment();
+        return false;
+    }
+
+    public void releaseChat() {
+        chatPermits.release();
+    }
+
+    /**
+     * 当前进行中的对话数
+     */
+    public int activeChats() {
+        return maxConcurrentChats - chatPermits.availablePermits();
+    }
+
+    @Override
+    public String toString() {
+        return key + "(" + type + ", " + name + ")";
+    }
+}
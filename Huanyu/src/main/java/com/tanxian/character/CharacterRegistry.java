@@ -0,0 +1,196 @@
+package com.tanxian.character;
+
+import com.tanxian.config.CharacterProperties;
+import com.tanxian.config.ChatMemoryProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 角色注册表
+ *
+ * 启动时根据 chat.characters 配置构建角色信息，按类型、key、前端标识建立索引，查询均为 O(1)。
+ * 会话ID由用户ID加角色类型组成：类型为个位数时直接拼接（兼容已有数据），否则以 '-' 分隔。
+ */
+@Component
+@Slf4j
+public class CharacterRegistry {
+
+    private static final char SESSION_TYPE_SEPARATOR = '-';
+    private static final int TTS_THREAD_TTL_SECONDS = 60;
+
+    @Autowired
+    private CharacterProperties characterProperties;
+
+    @Autowired
+    private ChatMemoryProperties chatMemoryProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Map<Short, CharacterProfile> byType = Map.of();
+    private Map<String, CharacterProfile> byKey = Map.of();
+    private Map<String, CharacterProfile> byClientId = Map.of();
+    private List<CharacterProfile> characters = List.of();
+
+    @PostConstruct
+    public void init() {
+        List<CharacterProperties.Definition> definitions = characterProperties.getCharacters();
+        if (definitions.isEmpty()) {
+            throw new IllegalStateException("未配置任何角色（chat.characters）");
+        }
+        Map<Short, CharacterProfile> types = new HashMap<>();
+        Map<String, CharacterProfile> keys = new HashMap<>();
+        Map<String, CharacterProfile> clientIds = new HashMap<>();
+        List<CharacterProfile> all = new ArrayList<>();
+        for (CharacterProperties.Definition definition : definitions) {
+            validate(definition);
+            CharacterProfile profile = build(definition);
+            if (types.putIfAbsent(profile.getType(), profile) != null) {
+                throw new IllegalStateException("角色类型重复: " + profile.getType());
+            }
+            if (keys.putIfAbsent(profile.getKey(), profile) != null) {
+                throw new IllegalStateException("角色key重复: " + profile.getKey());
+            }
+            if (profile.getClientId() != null && clientIds.putIfAbsent(profile.getClientId(), profile) != null) {
+                throw new IllegalStateException("角色前端标识重复: " + profile.getClientId());
+            }
+            all.add(profile);
+            log.info("已注册角色: {}，TTS地址: {}，token预算: {}，最大并发对话: {}",
+                    profile, profile.getTtsEndpoints(), profile.getTokenBudget(), definition.getMaxConcurrentChats());
+        }
+        byType = Map.copyOf(types);
+        byKey = Map.copyOf(keys);
+        byClientId = Map.copyOf(clientIds);
+        characters = List.copyOf(all);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        characters.forEach(character -> character.getTtsScheduler().dispose());
+    }
+
+    /**
+     * 按角色类型查询，未配置时返回 null
+     */
+    public CharacterProfile getByType(short type) {
+        return byType.get(type);
+    }
+
+    public CharacterProfile getByKey(String key) {
+        return key == null ? null : byKey.get(key);
+    }
+
+    /**
+     * 按语音通话前端传入的角色标识查询
+     */
+    public CharacterProfile getByClientId(String clientId) {
+        return clientId == null ? null : byClientId.get(clientId);
+    }
+
+    /**
+     * 从会话ID解析角色，无法解析或角色未配置时返回 null
+     */
+    public CharacterProfile getBySessionId(String sessionId) {
+        if (!StringUtils.hasLength(sessionId)) {
+            return null;
+        }
+        int idx = sessionId.lastIndexOf(SESSION_TYPE_SEPARATOR);
+        try {
+            short type = idx >= 0
+                    ? Short.parseShort(sessionId.substring(idx + 1))
+                    : (short) Character.digit(sessionId.charAt(sessionId.length() - 1), 10);
+            return type < 0 ? null : byType.get(type);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 从会话ID中取出用户部分（去掉角色类型），用于按用户限流
+     */
+    public String userKeyOf(String sessionId) {
+        if (!StringUtils.hasLength(sessionId)) {
+            return "";
+        }
+        int idx = sessionId.lastIndexOf(SESSION_TYPE_SEPARATOR);
+        return idx >= 0 ? sessionId.substring(0, idx) : sessionId.substring(0, sessionId.length() - 1);
+    }
+
+    /**
+     * 生成会话ID
+     */
+    public String sessionId(long userId, short type) {
+        return type >= 0 && type < 10 ? userId + "" + type : userId + "" + SESSION_TYPE_SEPARATOR + type;
+    }
+
+    /**
+     * 默认角色（配置中的第一个）
+     */
+    public CharacterProfile getDefault() {
+        return characters.get(0);
+    }
+
+    public List<CharacterProfile> all() {
+        return characters;
+    }
+
+    private void validate(CharacterProperties.Definition definition) {
+        if (definition.getType() == null || definition.getType() < 0) {
+            throw new IllegalStateException("角色类型必须为非负整数: " + definition.getKey());
+        }
+        if (!StringUtils.hasText(definition.getKey()) || !StringUtils.hasText(definition.getPrompt())) {
+            throw new IllegalStateException("角色key与提示词文件不能为空，类型: " + definition.getType());
+        }
+        if (definition.getTtsEndpoints() == null || definition.getTtsEndpoints().isEmpty()) {
+            throw new IllegalStateException("角色未配置TTS服务地址: " + definition.getKey());
+        }
+        if (definition.getMaxConcurrentChats() <= 0 || definition.getMaxConcurrentTts() <= 0
+                || definition.getTtsQueueSize() <= 0) {
+            throw new IllegalStateException("角色并发与排队上限必须大于0: " + definition.getKey());
+        }
+    }
+
+    private CharacterProfile build(CharacterProperties.Definition definition) {
+        String key = definition.getKey();
+        List<String> endpoints = definition.getTtsEndpoints().stream()
+                .map(String::trim)
+                .map(url -> url.endsWith("/") ? url.substring(0, url.length() - 1) : url)
+                .toList();
+        int tokenBudget = definition.getTokenBudget() != null
+                ? definition.getTokenBudget() : chatMemoryProperties.getTokenBudget();
+        Scheduler ttsScheduler = Schedulers.newBoundedElastic(definition.getMaxConcurrentTts(),
+                definition.getTtsQueueSize(), "tts-" + key, TTS_THREAD_TTL_SECONDS, true);
+        Counter rejected = Counter.builder("chat.character.rejected")
+                .tag("character", key)
+                .description("超出角色并发上限被拒绝的对话数")
+                .register(meterRegistry);
+        Counter rejectedTts = Counter.builder("chat.character.tts.rejected")
+                .tag("character", key)
+                .description("音频生成排队已满被跳过的任务数")
+                .register(meterRegistry);
+        CharacterProfile profile = new CharacterProfile(definition.getType(), key,
+                StringUtils.hasText(definition.getName()) ? definition.getName() : key,
+                StringUtils.hasText(definition.getClientId()) ? definition.getClientId() : null,
+                definition.getPrompt(), endpoints, tokenBudget, definition.getMaxConcurrentChats(),
+                ttsScheduler, rejected, rejectedTts);
+        Gauge.builder("chat.character.active", profile, CharacterProfile::activeChats)
+                .tag("character", key)
+                .description("角色进行中的对话数")
+                .register(meterRegistry);
+        return profile;
+    }
+}
@@ -0,0 +1,270 @@
+package com.tanxian.chat;
+
+import com.tanxian.config.ChatAdmissionProperties;
+import com.tanxian.exception.BusinessException;
+import com.tanxian.exception.BusinessExceptionEnum;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 模型流式调用的准入控制
+ *
+ * 全局并发达到上限后，请求进入有界等待队列，按加权公平排队（自计时公平排队 SCFQ）分配许可：
+ * 每个用户是一个流，请求的虚拟完成时间 = max(当前虚拟时间, 该用户上一个请求的完成时间) + 1/权重，
+ * 始终先放行完成时间最小的请求。这样一个用户连续发起的请求不会挤占其他用户，
+ * 语音通话请求权重更高，排队时比文字聊天更早获得许可。
+ *
+ * 过载时快速失败：单用户超限、队列已满立即拒绝，排队超过 max-queue-wait 也会拒绝，
+ * 而不是让请求挂起直到客户端超时。
+ */
+@Component
+@Slf4j
+public class ChatAdmissionController {
+
+    @Autowired
+    private ChatAdmissionProperties properties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+            Comparator.comparingDouble((Waiter w) -> w.finishTag).thenComparingLong(w -> w.seq));
+    // 用户 -> 进行中 + 排队中的请求数
+    private final Map<String, Integer> userRequests = new HashMap<>();
+    // 用户 -> 最近一个请求的虚拟完成时间，用户没有请求时移除
+    private final Map<String, Double> userFinishTags = new HashMap<>();
+    private double virtualTime;
+    private long seq;
+    private int active;
+
+    private final Map<ChatPriority, Timer> waitTimers = new EnumMap<>(ChatPriority.class);
+    private Counter userLimitRejections;
+    private Counter queueFullRejections;
+    private Counter queueTimeoutRejections;
+
+    @PostConstruct
+    public void init() {
+        for (ChatPriority priority : ChatPriority.values()) {
+            waitTimers.put(priority, Timer.builder("chat.admission.wait")
+                    .tag("priority", priority.tag())
+                    .description("模型调用获得许可前的排队时间")
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry));
+        }
+        userLimitRejections = Counter.builder("chat.admission.rejected").tag("reason", "user_limit")
+                .description("超出单用户并发被拒绝的请求数").register(meterRegistry);
+        queueFullRejections = Counter.builder("chat.admission.rejected").tag("reason", "queue_full")
+                .description("排队已满被拒绝的请求数").register(meterRegistry);
+        queueTimeoutRejections = Counter.builder("chat.admission.rejected").tag("reason", "queue_timeout")
+                .description("排队超时被拒绝的请求数").register(meterRegistry);
+        Gauge.builder("chat.admission.active", this, ChatAdmissionController::activeCount)
+                .description("进行中的模型调用数").register(meterRegistry);
+        Gauge.builder("chat.admission.queued", this, ChatAdmissionController::queuedCount)
+                .description("排队等待的模型调用数").register(meterRegistry);
+        if (properties.isEnabled()) {
+            log.info("模型调用准入控制已启用，全局并发: {}，单用户并发: {}，队列: {}，最长排队: {}",
+                    properties.getMaxConcurrent(), properties.getMaxPerUser(),
+                    properties.getMaxQueueSize(), properties.getMaxQueueWait());
+        }
+    }
+
+    /**
+     * 申请一次模型调用许可，调用结束后必须释放（重复释放无副作用）
+     *
+     * @param userKey  公平排队的流标识（用户ID）
+     * @param priority 请求类别
+     * @return 获得许可时发出 Permit；被拒绝时以 BusinessException 结束
+     */
+    public Mono<Permit> acquire(String userKey, ChatPriority priority) {
+        if (!properties.isEnabled()) {
+            return Mono.just(Permit.NOOP);
+        }
+        return Mono.create(sink -> {
+            long start = System.nanoTime();
+            Waiter waiter = null;
+            Permit granted = null;
+            BusinessExceptionEnum rejection = null;
+            synchronized (this) {
+                int userCount = userRequests.getOrDefault(userKey, 0);
+                if (userCount >= properties.getMaxPerUser()) {
+                    userLimitRejections.increment();
+                    rejection = BusinessExceptionEnum.CHAT_USER_LIMIT;
+                } else if (active < properties.getMaxConcurrent() && queue.isEmpty()) {
+                    userRequests.put(userKey, userCount + 1);
+                    active++;
+                    granted = new Permit(this, userKey);
+                } else if (queue.size() >= properties.getMaxQueueSize()) {
+                    queueFullRejections.increment();
+                    rejection = BusinessExceptionEnum.CHAT_OVERLOADED;
+                } else {
+                    userRequests.put(userKey, userCount + 1);
+                    double startTag = Math.max(virtualTime, userFinishTags.getOrDefault(userKey, 0d));
+                    double finishTag = startTag + 1d / weightOf(priority);
+                    userFinishTags.put(userKey, finishTag);
+                    Waiter queued = new Waiter(userKey, priority, finishTag, seq++, start, sink);
+                    // 在锁内登记超时，保证被放行或超时处理时 timeout 已赋值
+                    queued.timeout = Schedulers.parallel().schedule(() -> expire(queued),
+                            properties.getMaxQueueWait().toMillis(), TimeUnit.MILLISECONDS);
+                    queue.add(queued);
+                    waiter = queued;
+                }
+            }
+            if (rejection != null) {
+                log.warn("模型调用被拒绝: user={}, priority={}, reason={}", userKey, priority, rejection);
+                sink.error(new BusinessException(rejection));
+                return;
+            }
+            if (granted != null) {
+                waitTimers.get(priority).record(0, TimeUnit.NANOSECONDS);
+                sink.success(granted);
+                return;
+            }
+            Waiter queued = waiter;
+            sink.onCancel(() -> cancel(queued));
+        });
+    }
+
+    public synchronized int activeCount() {
+        return active;
+    }
+
+    public synchronized int queuedCount() {
+        return queue.size();
+    }
+
+    private double weightOf(ChatPriority priority) {
+        int weight = priority == ChatPriority.VOICE ? properties.getVoiceWeight() : properties.getTextWeight();
+        return Math.max(1, weight);
+    }
+
+    /**
+     * 释放许可并按公平顺序放行排队的请求
+     */
+    private void release(String userKey) {
+        List<Waiter> dispatched = new ArrayList<>();
+        synchronized (this) {
+            active--;
+            decrementUser(userKey);
+            while (active < properties.getMaxConcurrent() && !queue.isEmpty()) {
+                Waiter next = queue.poll();
+                virtualTime = next.finishTag;
+                next.permit = new Permit(this, next.userKey);
+                active++;
+                dispatched.add(next);
+            }
+        }
+        for (Waiter waiter : dispatched) {
+            waiter.timeout.dispose();
+            waitTimers.get(waiter.priority).record(System.nanoTime() - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+            waiter.sink.success(waiter.permit);
+        }
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (waiter.permit != null || !queue.remove(waiter)) {
+                return;
+            }
+            decrementUser(waiter.userKey);
+        }
+        queueTimeoutRejections.increment();
+        waitTimers.get(waiter.priority).record(System.nanoTime() - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+        log.warn("模型调用排队超时: user={}, priority={}", waiter.userKey, waiter.priority);
+        waiter.sink.error(new BusinessException(BusinessExceptionEnum.CHAT_OVERLOADED));
+    }
+
+    /**
+     * 订阅者在排队期间取消；若许可已分配但可能未被接收，直接释放
+     */
+    private void cancel(Waiter waiter) {
+        Permit permit;
+        synchronized (this) {
+            permit = waiter.permit;
+            if (permit == null) {
+                if (queue.remove(waiter)) {
+                    decrementUser(waiter.userKey);
+                }
+                waiter.timeout.dispose();
+                return;
+            }
+        }
+        permit.release();
+    }
+
+    /**
+     * 调用方需持有 this 锁
+     */
+    private void decrementUser(String userKey) {
+        int remaining = userRequests.getOrDefault(userKey, 1) - 1;
+        if (remaining <= 0) {
+            userRequests.remove(userKey);
+            userFinishTags.remove(userKey);
+        } else {
+            userRequests.put(userKey, remaining);
+        }
+    }
+
+    /**
+     * 模型调用许可
+     */
+    public static class Permit {
+
+        static final Permit NOOP = new Permit(null, null);
+
+        private final ChatAdmissionController controller;
+        private final String userKey;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(ChatAdmissionController controller, String userKey) {
+            this.controller = controller;
+            this.userKey = userKey;
+        }
+
+        public void release() {
+            if (controller != null && released.compareAndSet(false, true)) {
+                controller.release(userKey);
+            }
+        }
+    }
+
+    private static class Waiter {
+        private final String userKey;
+        private final ChatPriority priority;
+        private final double finishTag;
+        private final long seq;
+        private final long enqueuedAt;
+        private final MonoSink<Permit> sink;
+        private Disposable timeout;
+        private Permit permit;
+
+        private Waiter(String userKey, ChatPriority priority, double finishTag, long seq, long enqueuedAt,
+                       MonoSink<Permit> sink) {
+            this.userKey = userKey;
+            this.priority = priority;
+            this.finishTag = finishTag;
+            this.seq = seq;
+            this.enqueuedAt = enqueuedAt;
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.tanxian.chat;
+
+/**
+ * 对话请求的优先级类别
+ */
+public enum ChatPriority {
+    /**
+     * 语音通话中的一轮对话，用户正在等待播放，排队时优先
+     */
+    VOICE("voice"),
+    /**
+     * 文字聊天
+     */
+    TEXT("text");
+
+    private final String tag;
+
+    ChatPriority(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * 指标标签值
+     */
+    public String tag() {
+        return tag;
+    }
+}
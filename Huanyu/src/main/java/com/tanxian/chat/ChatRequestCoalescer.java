@@ -0,0 +1,115 @@
+package com.tanxian.chat;
+
+import com.tanxian.config.ChatCoalesceProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.ConnectableFlux;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 合并相同的进行中对话请求
+ *
+ * 移动端网络抖动时客户端会重试，语音识别也可能把同一句话提交两次，
+ * 这些请求各自调用一次模型，还会往同一会话的记忆里重复写入。这里按 key 只保留一个上游调用，
+ * 其余请求订阅同一个回放流（从第一个分片开始完整接收）。
+ *
+ * 所有订阅者都取消后上游会再保留一小段时间，方便断线重试的客户端重新接上；
+ * 带幂等键的请求完成后继续保留一段时间，期间重试直接回放结果，不会再次调用模型。
+ */
+@Component
+@Slf4j
+public class ChatRequestCoalescer {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ChatCoalesceProperties properties;
+
+    private final Map<String, InFlightCall> inFlight = new ConcurrentHashMap<>();
+
+    private Counter leaderCounter;
+    private Counter joinedCounter;
+
+    @PostConstruct
+    public void init() {
+        leaderCounter = Counter.builder("chat.coalesce").tag("result", "leader")
+                .description("实际发起上游调用的对话请求数").register(meterRegistry);
+        joinedCounter = Counter.builder("chat.coalesce").tag("result", "joined")
+                .description("合并到进行中调用的对话请求数").register(meterRegistry);
+        Gauge.builder("chat.coalesce.inflight", inFlight, Map::size)
+                .description("进行中（含保留期）的合并调用数").register(meterRegistry);
+    }
+
+    /**
+     * 按消息内容合并：上游结束后立即移除，之后再发送同样的内容会正常发起新调用
+     */
+    public Flux<String> coalesce(String key, Supplier<Flux<String>> call) {
+        return coalesce(key, Duration.ZERO, properties.getCancelGrace(), call);
+    }
+
+    /**
+     * 按消息内容合并，但所有订阅者取消后立即取消上游，不保留 cancel-grace。
+     * 用于语音通话：用户打断后不会重连续接，继续生成只会浪费模型调用
+     */
+    public Flux<String> coalesceWithoutGrace(String key, Supplier<Flux<String>> call) {
+        return coalesce(key, Duration.ZERO, Duration.ZERO, call);
+    }
+
+    /**
+     * 按幂等键合并：上游成功完成后在 idempotency-ttl 内仍可回放
+     */
+    public Flux<String> coalesceIdempotent(String key, Supplier<Flux<String>> call) {
+        return coalesce(key, properties.getIdempotencyTtl(), properties.getCancelGrace(), call);
+    }
+
+    private Flux<String> coalesce(String key, Duration retention, Duration grace, Supplier<Flux<String>> call) {
+        if (!properties.isEnabled()) {
+            return Flux.defer(call);
+        }
+        InFlightCall existing = inFlight.get(key);
+        if (existing != null) {
+            joinedCounter.increment();
+            log.debug("合并到进行中的对话调用: {}", key);
+            return existing.shared;
+        }
+        // 上游延迟到首次订阅才执行，竞争失败的候选从未被订阅，不会产生任何调用
+        InFlightCall candidate = new InFlightCall();
+        ConnectableFlux<String> replayed = Flux.defer(call)
+                .doFinally(signal -> release(key, candidate, signal == SignalType.ON_COMPLETE ? retention : Duration.ZERO))
+                .replay();
+        candidate.shared = grace.isZero() ? replayed.refCount(1) : replayed.refCount(1, grace);
+        InFlightCall raced = inFlight.putIfAbsent(key, candidate);
+        if (raced != null) {
+            joinedCounter.increment();
+            return raced.shared;
+        }
+        leaderCounter.increment();
+        return candidate.shared;
+    }
+
+    private void release(String key, InFlightCall call, Duration retention) {
+        if (retention.isZero() || retention.isNegative()) {
+            inFlight.remove(key, call);
+            return;
+        }
+        Schedulers.parallel().schedule(() -> inFlight.remove(key, call), retention.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static class InFlightCall {
+        private Flux<String> shared;
+    }
+}
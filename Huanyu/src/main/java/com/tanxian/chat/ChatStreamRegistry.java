@@ -0,0 +1,167 @@
+package com.tanxian.chat;
+
+import com.tanxian.config.ChatSseProperties;
+import com.tanxian.exception.BusinessException;
+import com.tanxian.exception.BusinessExceptionEnum;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.ConnectableFlux;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE 对话流的服务端回放缓冲
+ *
+ * 每次对话分配一个流ID，事件ID为 "流ID:序号"。模型输出在服务端独立运行，不随客户端断开而取消，
+ * 并把最近的事件保留在回放缓冲中；客户端断线重连时带上 Last-Event-ID，从下一个事件继续接收，
+ * 不会重新调用模型。流结束后缓冲再保留 retention 时间。
+ *
+ * 事件类型：token（回复分片）、done（正常结束）、error（失败，data 为错误码与说明），
+ * 另有定时发送的注释行作为心跳，防止代理和移动网络因空闲断开连接。
+ */
+@Component
+@Slf4j
+public class ChatStreamRegistry {
+
+    public static final String EVENT_TOKEN = "token";
+    public static final String EVENT_DONE = "done";
+    public static final String EVENT_ERROR = "error";
+
+    private static final char ID_SEPARATOR = ':';
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ChatSseProperties properties;
+
+    private final Map<String, ChatStream> streams = new ConcurrentHashMap<>();
+
+    private Counter resumedCounter;
+    private Counter expiredCounter;
+
+    @PostConstruct
+    public void init() {
+        resumedCounter = Counter.builder("chat.sse.resume").tag("result", "resumed")
+                .description("通过 Last-Event-ID 续接的 SSE 连接数").register(meterRegistry);
+        expiredCounter = Counter.builder("chat.sse.resume").tag("result", "expired")
+                .description("续接时对话流已过期的 SSE 连接数").register(meterRegistry);
+        Gauge.builder("chat.sse.streams", streams, Map::size)
+                .description("保留中的 SSE 对话流数").register(meterRegistry);
+    }
+
+    /**
+     * 开启一个新的对话流并立即开始消费模型输出
+     *
+     * @param ownerKey 流的归属（用户会话），续接时校验
+     * @param chunks   模型回复分片
+     * @return 客户端从头订阅的事件流
+     */
+    public Flux<ServerSentEvent<Object>> open(String ownerKey, Flux<String> chunks) {
+        String streamId = UUID.randomUUID().toString().replace("-", "");
+        ChatStream stream = new ChatStream(ownerKey);
+        Flux<Event> events = chunks
+                .index()
+                .map(indexed -> new Event(indexed.getT1() + 1, EVENT_TOKEN, indexed.getT2()))
+                .concatWith(Flux.defer(() -> Flux.just(new Event(Long.MAX_VALUE, EVENT_DONE,
+                        Map.of("streamId", streamId)))))
+                .onErrorResume(e -> Flux.just(new Event(Long.MAX_VALUE, EVENT_ERROR, errorData(e))))
+                .doFinally(signal -> Schedulers.parallel().schedule(() -> streams.remove(streamId, stream),
+                        properties.getRetention().toMillis(), TimeUnit.MILLISECONDS));
+        ConnectableFlux<Event> replay = events.replay(properties.getReplaySize());
+        stream.events = replay;
+        streams.put(streamId, stream);
+        // 立即连接：模型调用在当前请求线程上发起（需要登录上下文），且不受客户端断开影响
+        replay.connect();
+        return toSse(streamId, stream, 0);
+    }
+
+    /**
+     * 按 Last-Event-ID 续接，流不存在或已超出回放缓冲时返回 CHAT_STREAM_EXPIRED 错误事件，客户端应重新发送消息
+     */
+    public Flux<ServerSentEvent<Object>> resume(String ownerKey, String lastEventId) {
+        int idx = lastEventId.lastIndexOf(ID_SEPARATOR);
+        String streamId = idx > 0 ? lastEventId.substring(0, idx) : lastEventId;
+        long lastSeq;
+        try {
+            lastSeq = idx > 0 ? Long.parseLong(lastEventId.substring(idx + 1)) : 0;
+        } catch (NumberFormatException e) {
+            lastSeq = 0;
+        }
+        ChatStream stream = streams.get(streamId);
+        if (stream == null || !stream.ownerKey.equals(ownerKey)) {
+            expiredCounter.increment();
+            return Flux.just(toSse(streamId, expired()));
+        }
+        resumedCounter.increment();
+        log.debug("SSE 对话流续接: {}，从序号 {} 之后开始", streamId, lastSeq);
+        return toSse(streamId, stream, lastSeq);
+    }
+
+    private Flux<ServerSentEvent<Object>> toSse(String streamId, ChatStream stream, long afterSeq) {
+        Flux<ServerSentEvent<Object>> events = stream.events
+                .switchOnFirst((first, replayed) -> {
+                    // 回放缓冲已丢弃客户端缺失的事件时无法无缝续接
+                    if (first.hasValue() && afterSeq > 0 && first.get().seq() > afterSeq + 1) {
+                        expiredCounter.increment();
+                        return Flux.just(expired());
+                    }
+                    return replayed;
+                })
+                .filter(event -> event.seq() > afterSeq)
+                .map(event -> toSse(streamId, event));
+        return events.publish(shared -> Flux.merge(shared,
+                Flux.interval(properties.getHeartbeat())
+                        .map(tick -> ServerSentEvent.builder().comment("heartbeat").build())
+                        .takeUntilOther(shared.then())));
+    }
+
+    private ServerSentEvent<Object> toSse(String streamId, Event event) {
+        ServerSentEvent.Builder<Object> builder = ServerSentEvent.builder()
+                .event(event.type())
+                .data(event.data());
+        // 结束事件不带ID，避免客户端拿着它续接
+        if (EVENT_TOKEN.equals(event.type())) {
+            builder.id(streamId + ID_SEPARATOR + event.seq());
+            if (event.seq() == 1) {
+                builder.retry(properties.getReconnectDelay());
+            }
+        }
+        return builder.build();
+    }
+
+    private static Event expired() {
+        return new Event(Long.MAX_VALUE, EVENT_ERROR, errorData(new BusinessException(BusinessExceptionEnum.CHAT_STREAM_EXPIRED)));
+    }
+
+    private static Map<String, String> errorData(Throwable e) {
+        if (e instanceof BusinessException businessException) {
+            return Map.of("code", businessException.getE().name(), "message", businessException.getE().getDesc());
+        }
+        log.error("SSE 对话流异常", e);
+        return Map.of("code", "CHAT_FAILED", "message", "对话服务暂时不可用，请稍后再试");
+    }
+
+    private static class ChatStream {
+        private final String ownerKey;
+        private Flux<Event> events;
+
+        private ChatStream(String ownerKey) {
+            this.ownerKey = ownerKey;
+        }
+    }
+
+    private record Event(long seq, String type, Object data) {
+    }
+}
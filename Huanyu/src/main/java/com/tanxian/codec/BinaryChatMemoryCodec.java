@@ -0,0 +1,247 @@
+package com.tanxian.codec;
+
+import com.tanxian.config.ChatMemoryProperties;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑二进制格式
+ *
+ * 布局：魔数(0xC1) + 版本(1) + 标志位 + 消息体
+ * 消息体：类型标签 + 各字段（varint 长度 + UTF-8 字节，长度写入 len+1，0 表示 null）
+ * 标志位 bit0 表示消息体经过 Deflate 压缩，此时消息体前额外写入原始长度（varint）。
+ * 压缩默认关闭（编码耗时约为不压缩的十几倍），开启后 Deflater/Inflater 从池中复用，避免每条消息分配本地内存。
+ *
+ * 0xC1 在 UTF-8 中不可能出现，JSON 数据以 '{' 开头，因此两种格式可以共存于同一列表。
+ * 目前只编码纯文本的用户、AI、系统消息，其余消息（图片、工具调用等）由 JSON 编码器处理。
+ */
+@Component
+public class BinaryChatMemoryCodec implements ChatMemoryCodec {
+
+    public static final String NAME = "binary";
+
+    private static final byte MAGIC = (byte) 0xC1;
+    private static final byte VERSION = 1;
+    private static final int FLAG_DEFLATE = 1;
+    private static final int HEADER_LENGTH = 3;
+
+    private static final byte TAG_USER = 1;
+    private static final byte TAG_AI = 2;
+    private static final byte TAG_SYSTEM = 3;
+
+    // 调用方可能是虚拟线程，不使用 ThreadLocal，而是按处理器数量池化；池满时多出的实例直接释放
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    @Autowired
+    private ChatMemoryProperties chatMemoryProperties;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canEncode(ChatMessage message) {
+        if (message instanceof UserMessage userMessage) {
+            return userMessage.hasSingleText();
+        }
+        if (message instanceof AiMessage aiMessage) {
+            return aiMessage.text() != null && !aiMessage.hasToolExecutionRequests();
+        }
+        return message instanceof SystemMessage;
+    }
+
+    @Override
+    public byte[] encode(ChatMessage message) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        if (message instanceof UserMessage userMessage) {
+            body.write(TAG_USER);
+            writeString(body, userMessage.name());
+            writeString(body, userMessage.singleText());
+        } else if (message instanceof AiMessage aiMessage) {
+            body.write(TAG_AI);
+            writeString(body, aiMessage.text());
+        } else if (message instanceof SystemMessage systemMessage) {
+            body.write(TAG_SYSTEM);
+            writeString(body, systemMessage.text());
+        } else {
+            throw new IllegalArgumentException("二进制编码不支持的消息类型: " + message.type());
+        }
+        byte[] raw = body.toByteArray();
+
+        int threshold = chatMemoryProperties.getCompressThreshold();
+        if (threshold > 0 && raw.length >= threshold) {
+            byte[] compressed = deflate(raw);
+            ByteArrayOutputStream framed = new ByteArrayOutputStream(compressed.length + 8);
+            writeHeader(framed, FLAG_DEFLATE);
+            writeVarint(framed, raw.length);
+            framed.writeBytes(compressed);
+            // 压缩收益不足时保留原始消息体
+            if (framed.size() < raw.length + HEADER_LENGTH) {
+                return framed.toByteArray();
+            }
+        }
+        ByteArrayOutputStream plain = new ByteArrayOutputStream(raw.length + HEADER_LENGTH);
+        writeHeader(plain, 0);
+        plain.writeBytes(raw);
+        return plain.toByteArray();
+    }
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return data.length >= HEADER_LENGTH && data[0] == MAGIC;
+    }
+
+    @Override
+    public ChatMessage decode(byte[] data) {
+        if (data[1] != VERSION) {
+            throw new IllegalArgumentException("不支持的记忆编码版本: " + data[1]);
+        }
+        Reader reader = new Reader(data, HEADER_LENGTH);
+        if ((data[2] & FLAG_DEFLATE) != 0) {
+            int rawLength = reader.readVarint();
+            reader = new Reader(inflate(data, reader.position, rawLength), 0);
+        }
+        byte tag = reader.readByte();
+        return switch (tag) {
+            case TAG_USER -> {
+                String name = reader.readString();
+                String text = reader.readString();
+                yield name == null ? UserMessage.from(text) : UserMessage.from(name, text);
+            }
+            case TAG_AI -> AiMessage.from(reader.readString());
+            case TAG_SYSTEM -> SystemMessage.from(reader.readString());
+            default -> throw new IllegalArgumentException("未知的消息类型标签: " + tag);
+        };
+    }
+
+    private static void writeHeader(ByteArrayOutputStream out, int flags) {
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(flags);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.writeBytes(bytes);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED, true);
+        }
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] buffer = new byte[raw.length + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.reset();
+            if (!DEFLATERS.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int offset, int rawLength) {
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflater.setInput(data, offset, data.length - offset);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength) {
+                int n = inflater.inflate(raw, length, rawLength - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != rawLength) {
+                throw new IllegalArgumentException("记忆数据解压长度不一致: " + length + "/" + rawLength);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("记忆数据解压失败", e);
+        } finally {
+            inflater.reset();
+            if (!INFLATERS.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+
+    private static class Reader {
+        private final byte[] data;
+        private int position;
+
+        private Reader(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        private byte readByte() {
+            return data[position++];
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = data[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("varint 格式错误");
+        }
+
+        private String readString() {
+            int length = readVarint();
+            if (length == 0) {
+                return null;
+            }
+            String value = new String(data, position, length - 1, StandardCharsets.UTF_8);
+            position += length - 1;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.tanxian.codec;
+
+import dev.langchain4j.data.message.ChatMessage;
+
+/**
+ * 聊天记忆单条消息编解码器
+ *
+ * Redis 会话窗口列表中每个元素为一条消息的编码结果。写入时使用配置的编码器，
+ * 读取时按数据头识别格式，保证切换编码器后旧数据仍可读取。
+ */
+public interface ChatMemoryCodec {
+
+    /**
+     * 编码器名称，对应配置项 chat.memory.codec
+     */
+    String name();
+
+    /**
+     * 是否能编码该消息，不支持的消息由 JSON 编码器兜底
+     */
+    boolean canEncode(ChatMessage message);
+
+    byte[] encode(ChatMessage message);
+
+    /**
+     * 根据数据头判断该数据是否由本编码器写入
+     */
+    boolean canDecode(byte[] data);
+
+    ChatMessage decode(byte[] data);
+}
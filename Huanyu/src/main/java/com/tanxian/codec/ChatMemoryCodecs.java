@@ -0,0 +1,61 @@
+package com.tanxian.codec;
+
+import com.tanxian.config.ChatMemoryProperties;
+import dev.langchain4j.data.message.ChatMessage;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 聊天记忆编解码入口
+ *
+ * 写入使用 chat.memory.codec 指定的编码器（不支持的消息退回 JSON），
+ * 读取时依次询问各编码器是否识别数据头，新旧格式可以在同一个窗口列表中混存，
+ * 旧数据随窗口滚动或重写自然迁移到新格式。
+ */
+@Component
+@Slf4j
+public class ChatMemoryCodecs {
+
+    @Autowired
+    private List<ChatMemoryCodec> codecs;
+
+    @Autowired
+    private JsonChatMemoryCodec jsonCodec;
+
+    @Autowired
+    private ChatMemoryProperties chatMemoryProperties;
+
+    private ChatMemoryCodec writer;
+
+    @PostConstruct
+    public void init() {
+        String name = chatMemoryProperties.getCodec();
+        writer = codecs.stream()
+                .filter(codec -> codec.name().equalsIgnoreCase(name))
+                .findFirst()
+                .orElseGet(() -> {
+                    log.warn("未知的记忆编码器: {}，使用 JSON", name);
+                    return jsonCodec;
+                });
+        log.info("聊天记忆编码器: {}，可读取格式: {}", writer.name(),
+                codecs.stream().map(ChatMemoryCodec::name).toList());
+    }
+
+    public byte[] encode(ChatMessage message) {
+        ChatMemoryCodec codec = writer.canEncode(message) ? writer : jsonCodec;
+        return codec.encode(message);
+    }
+
+    public ChatMessage decode(byte[] data) {
+        for (ChatMemoryCodec codec : codecs) {
+            if (codec.canDecode(data)) {
+                return codec.decode(data);
+            }
+        }
+        throw new IllegalArgumentException("无法识别的记忆数据格式，长度: " + data.length);
+    }
+}
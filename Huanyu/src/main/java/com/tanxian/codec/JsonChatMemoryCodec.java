@@ -0,0 +1,42 @@
+package com.tanxian.codec;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * LangChain4j 原生 JSON 格式，兼容历史数据，同时作为其他编码器不支持的消息的兜底
+ */
+@Component
+public class JsonChatMemoryCodec implements ChatMemoryCodec {
+
+    public static final String NAME = "json";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canEncode(ChatMessage message) {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(ChatMessage message) {
+        return ChatMessageSerializer.messageToJson(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return data.length > 0 && data[0] == '{';
+    }
+
+    @Override
+    public ChatMessage decode(byte[] data) {
+        return ChatMessageDeserializer.messageFromJson(new String(data, StandardCharsets.UTF_8));
+    }
+}
@@ -3,6 +3,8 @@ package com.tanxian.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 @Component
 @ConfigurationProperties(prefix = "aliyun.nls")
 public class AliyunNlsProperties {
@@ -12,6 +14,19 @@ public class AliyunNlsProperties {
     private String gatewayUrl;
     private String customizationId;
     private String vocabularyId;
+    // 在 token 过期前多久主动刷新
+    private Duration tokenRefreshAhead = Duration.ofMinutes(10);
+    // token 获取失败后的重试间隔
+    private Duration tokenRetryInterval = Duration.ofSeconds(30);
+    // 是否预热识别会话
+    private boolean poolEnabled = true;
+    // 预热池大小下限与上限
+    private int poolMinIdle = 0;
+    private int poolMaxIdle = 4;
+    // 预热会话空闲多久后回收重建，需小于服务端未收到音频的超时时间（约 10 秒）
+    private Duration poolIdleTimeout = Duration.ofSeconds(8);
+    // 按到达率预留足以覆盖该时间段内新通话的会话数
+    private Duration poolArrivalWindow = Duration.ofSeconds(10);
 
     public String getAppKey() { return appKey; }
     public void setAppKey(String appKey) { this.appKey = appKey; }
@@ -30,4 +45,25 @@ public class AliyunNlsProperties {
 
     public String getVocabularyId() { return vocabularyId; }
     public void setVocabularyId(String vocabularyId) { this.vocabularyId = vocabularyId; }
-}
\ No newline at end of file
+
+    public Duration getTokenRefreshAhead() { return tokenRefreshAhead; }
+    public void setTokenRefreshAhead(Duration tokenRefreshAhead) { this.tokenRefreshAhead = tokenRefreshAhead; }
+
+    public Duration getTokenRetryInterval() { return tokenRetryInterval; }
+    public void setTokenRetryInterval(Duration tokenRetryInterval) { this.tokenRetryInterval = tokenRetryInterval; }
+
+    public boolean isPoolEnabled() { return poolEnabled; }
+    public void setPoolEnabled(boolean poolEnabled) { this.poolEnabled = poolEnabled; }
+
+    public int getPoolMinIdle() { return poolMinIdle; }
+    public void setPoolMinIdle(int poolMinIdle) { this.poolMinIdle = poolMinIdle; }
+
+    public int getPoolMaxIdle() { return poolMaxIdle; }
+    public void setPoolMaxIdle(int poolMaxIdle) { this.poolMaxIdle = poolMaxIdle; }
+
+    public Duration getPoolIdleTimeout() { return poolIdleTimeout; }
+    public void setPoolIdleTimeout(Duration poolIdleTimeout) { this.poolIdleTimeout = poolIdleTimeout; }
+
+    public Duration getPoolArrivalWindow() { return poolArrivalWindow; }
+    public void setPoolArrivalWindow(Duration poolArrivalWindow) { this.poolArrivalWindow = poolArrivalWindow; }
+}
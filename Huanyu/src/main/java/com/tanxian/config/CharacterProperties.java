@@ -0,0 +1,161 @@
+package com.tanxian.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 角色配置，新增角色只需在 chat.characters 下追加一项并放入对应的提示词文件
+ */
+@Component
+@ConfigurationProperties(prefix = "chat")
+public class CharacterProperties {
+
+    /**
+     * 角色列表，第一个角色同时作为无法识别会话时的默认角色
+     */
+    private List<Definition> characters = new ArrayList<>();
+
+    public List<Definition> getCharacters() {
+        return characters;
+    }
+
+    public void setCharacters(List<Definition> characters) {
+        this.characters = characters;
+    }
+
+    public static class Definition {
+
+        /**
+         * 角色类型编号，对应接口参数 type 与 chat_sessions.character_type
+         */
+        private Short type;
+
+        /**
+         * 角色key，用于提示词模板、指标标签等
+         */
+        private String key;
+
+        /**
+         * 角色显示名称
+         */
+        private String name;
+
+        /**
+         * 语音通话前端传入的角色标识（characterId）
+         */
+        private String clientId;
+
+        /**
+         * 提示词文件名，位于 chat.prompt.dir 或 classpath:prompt/
+         */
+        private String prompt;
+
+        /**
+         * TTS 服务地址池，多个地址时轮询使用
+         */
+        private List<String> ttsEndpoints = new ArrayList<>();
+
+        /**
+         * 发送给模型的记忆 token 预算，为空时使用 chat.memory.token-budget
+         */
+        private Integer tokenBudget;
+
+        /**
+         * 该角色同时进行中的对话数上限，超出时直接拒绝，避免热门角色占满模型连接
+         */
+        private int maxConcurrentChats = 200;
+
+        /**
+         * 对话结束后后台生成音频的并发数（独立线程池）
+         */
+        private int maxConcurrentTts = 4;
+
+        /**
+         * 后台生成音频的排队上限，超出时跳过本次音频生成
+         */
+        private int ttsQueueSize = 200;
+
+        public Short getType() {
+            return type;
+        }
+
+        public void setType(Short type) {
+            this.type = type;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public void setClientId(String clientId) {
+            this.clientId = clientId;
+        }
+
+        public String getPrompt() {
+            return prompt;
+        }
+
+        public void setPrompt(String prompt) {
+            this.prompt = prompt;
+        }
+
+        public List<String> getTtsEndpoints() {
+            return ttsEndpoints;
+        }
+
+        public void setTtsEndpoints(List<String> ttsEndpoints) {
+            this.ttsEndpoints = ttsEndpoints;
+        }
+
+        public Integer getTokenBudget() {
+            return tokenBudget;
+        }
+
+        public void setTokenBudget(Integer tokenBudget) {
+            this.tokenBudget = tokenBudget;
+        }
+
+        public int getMaxConcurrentChats() {
+            return maxConcurrentChats;
+        }
+
+        public void setMaxConcurrentChats(int maxConcurrentChats) {
+            this.maxConcurrentChats = maxConcurrentChats;
+        }
+
+        public int getMaxConcurrentTts() {
+            return maxConcurrentTts;
+        }
+
+        public void setMaxConcurrentTts(int maxConcurrentTts) {
+            this.maxConcurrentTts = maxConcurrentTts;
+        }
+
+        public int getTtsQueueSize() {
+            return ttsQueueSize;
+        }
+
+        public void setTtsQueueSize(int ttsQueueSize) {
+            this.ttsQueueSize = ttsQueueSize;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.tanxian.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 模型调用准入控制配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.admission")
+public class ChatAdmissionProperties {
+
+    /**
+     * 是否启用准入控制
+     */
+    private boolean enabled = true;
+
+    /**
+     * 全局同时进行的模型流式调用上限，按模型服务商的并发/限流额度设置
+     */
+    private int maxConcurrent = 64;
+
+    /**
+     * 单个用户同时进行（含排队）的调用上限，超出时直接拒绝
+     */
+    private int maxPerUser = 2;
+
+    /**
+     * 排队请求数上限，队列已满时直接拒绝
+     */
+    private int maxQueueSize = 200;
+
+    /**
+     * 最长排队时间，超时后拒绝，避免请求一直挂起直到客户端超时
+     */
+    private Duration maxQueueWait = Duration.ofSeconds(3);
+
+    /**
+     * 语音通话请求的调度权重
+     */
+    private int voiceWeight = 4;
+
+    /**
+     * 文字聊天请求的调度权重
+     */
+    private int textWeight = 1;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    public int getMaxPerUser() {
+        return maxPerUser;
+    }
+
+    public void setMaxPerUser(int maxPerUser) {
+        this.maxPerUser = maxPerUser;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public Duration getMaxQueueWait() {
+        return maxQueueWait;
+    }
+
+    public void setMaxQueueWait(Duration maxQueueWait) {
+        this.maxQueueWait = maxQueueWait;
+    }
+
+    public int getVoiceWeight() {
+        return voiceWeight;
+    }
+
+    public void setVoiceWeight(int voiceWeight) {
+        this.voiceWeight = voiceWeight;
+    }
+
+    public int getTextWeight() {
+        return textWeight;
+    }
+
+    public void setTextWeight(int textWeight) {
+        this.textWeight = textWeight;
+    }
+}
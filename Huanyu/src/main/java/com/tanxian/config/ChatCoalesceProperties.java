@@ -0,0 +1,53 @@
+package com.tanxian.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 相同对话请求合并配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.coalesce")
+public class ChatCoalesceProperties {
+
+    /**
+     * 是否合并同一会话中进行中的相同请求
+     */
+    private boolean enabled = true;
+
+    /**
+     * 所有订阅者都取消后，上游调用继续保留的时间，期间重连的订阅者可接上原调用
+     */
+    private Duration cancelGrace = Duration.ofSeconds(5);
+
+    /**
+     * 带幂等键的请求完成后保留结果的时间，期间的重试直接回放
+     */
+    private Duration idempotencyTtl = Duration.ofSeconds(60);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getCancelGrace() {
+        return cancelGrace;
+    }
+
+    public void setCancelGrace(Duration cancelGrace) {
+        this.cancelGrace = cancelGrace;
+    }
+
+    public Duration getIdempotencyTtl() {
+        return idempotencyTtl;
+    }
+
+    public void setIdempotencyTtl(Duration idempotencyTtl) {
+        this.idempotencyTtl = idempotencyTtl;
+    }
+}
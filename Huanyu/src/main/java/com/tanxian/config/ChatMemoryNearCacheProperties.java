@@ -0,0 +1,66 @@
+package com.tanxian.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 记忆窗口本地近端缓存配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.memory-near-cache")
+public class ChatMemoryNearCacheProperties {
+
+    /**
+     * 是否启用；各节点需保持一致，否则关闭的节点写入后其他节点收不到失效通知
+     */
+    private boolean enabled = true;
+
+    /**
+     * 最多缓存的会话数
+     */
+    private int maxEntries = 10000;
+
+    /**
+     * 缓存窗口的估算内存上限（字节）
+     */
+    private long maxBytes = 64L * 1024 * 1024;
+
+    /**
+     * 条目的过期时间，兜底丢失失效通知的情况
+     */
+    private Duration expire = Duration.ofMinutes(10);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public Duration getExpire() {
+        return expire;
+    }
+
+    public void setExpire(Duration expire) {
+        this.expire = expire;
+    }
+}
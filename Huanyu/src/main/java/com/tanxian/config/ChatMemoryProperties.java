@@ -0,0 +1,166 @@
+package com.tanxian.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 聊天记忆配置
+ * 统一管理记忆窗口大小与Redis缓存过期时间，供 LangChain4jConfig 与 MyChatMemoryStoreImpl 共用
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.memory")
+public class ChatMemoryProperties {
+
+    /**
+     * 记忆窗口最大消息数（包含系统消息）
+     */
+    private int maxMessages = 21;
+
+    /**
+     * Redis中会话窗口列表的过期时间
+     */
+    private Duration ttl = Duration.ofDays(1);
+
+    /**
+     * 缓存未命中时是否使用Redis短租约锁，保证多个节点只有一个回源MySQL
+     */
+    private boolean loadLockEnabled = true;
+
+    /**
+     * 回源锁租约时间，其他节点最多等待这么久
+     */
+    private Duration loadLockLease = Duration.ofSeconds(3);
+
+    /**
+     * 写入Redis窗口列表使用的编码器：json（LangChain4j 原生格式）或 binary（紧凑二进制），读取时两种格式均可识别
+     */
+    private String codec = "json";
+
+    /**
+     * 二进制编码的消息体达到该字节数时尝试 Deflate 压缩，小于等于 0 表示不压缩；
+     * 压缩以 CPU 换 Redis 内存，默认关闭
+     */
+    private int compressThreshold = 0;
+
+    /**
+     * 是否开启滚动摘要压缩：窗口较长时将最早的若干轮对话折叠为摘要，减少每轮发送给模型的消息
+     */
+    private boolean summaryEnabled = false;
+
+    /**
+     * 一轮对话结束后窗口消息数达到该值时触发压缩，应小于窗口大小，否则旧消息会先被窗口淘汰
+     */
+    private int summaryTriggerMessages = 16;
+
+    /**
+     * 压缩后窗口中保留的最近消息数
+     */
+    private int summaryKeepMessages = 6;
+
+    /**
+     * 摘要最大字符数，超出部分截断
+     */
+    private int summaryMaxChars = 400;
+
+    /**
+     * 发送给模型的记忆（系统提示词 + 摘要 + 消息）默认 token 预算，角色可在 chat.characters 中单独覆盖
+     */
+    private int tokenBudget = 3500;
+
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    public void setMaxMessages(int maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public boolean isLoadLockEnabled() {
+        return loadLockEnabled;
+    }
+
+    public void setLoadLockEnabled(boolean loadLockEnabled) {
+        this.loadLockEnabled = loadLockEnabled;
+    }
+
+    public Duration getLoadLockLease() {
+        return loadLockLease;
+    }
+
+    public void setLoadLockLease(Duration loadLockLease) {
+        this.loadLockLease = loadLockLease;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public boolean isSummaryEnabled() {
+        return summaryEnabled;
+    }
+
+    public void setSummaryEnabled(boolean summaryEnabled) {
+        this.summaryEnabled = summaryEnabled;
+    }
+
+    public int getSummaryTriggerMessages() {
+        return summaryTriggerMessages;
+    }
+
+    public void setSummaryTriggerMessages(int summaryTriggerMessages) {
+        this.summaryTriggerMessages = summaryTriggerMessages;
+    }
+
+    public int getSummaryKeepMessages() {
+        return summaryKeepMessages;
+    }
+
+    public void setSummaryKeepMessages(int summaryKeepMessages) {
+        this.summaryKeepMessages = summaryKeepMessages;
+    }
+
+    public int getSummaryMaxChars() {
+        return summaryMaxChars;
+    }
+
+    public void setSummaryMaxChars(int summaryMaxChars) {
+        this.summaryMaxChars = summaryMaxChars;
+    }
+
+    public int getTokenBudget() {
+        return tokenBudget;
+    }
+
+    public void setTokenBudget(int tokenBudget) {
+        this.tokenBudget = tokenBudget;
+    }
+
+    /**
+     * Redis中需要保留的非系统消息条数（系统消息占用窗口中的一个位置）
+     */
+    public int getWindowSize() {
+        return Math.max(1, maxMessages - 1);
+    }
+}
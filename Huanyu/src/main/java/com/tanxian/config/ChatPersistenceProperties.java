@@ -0,0 +1,79 @@
+package com.tanxian.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 聊天消息异步入库（write-behind）配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.persistence")
+public class ChatPersistenceProperties {
+
+    /**
+     * 本地追加日志目录，待入库消息先写入此处，宕机重启后从检查点继续入库
+     */
+    private String journalDir = "./data/chat-journal";
+
+    /**
+     * 后台批量入库的间隔
+     */
+    private Duration flushInterval = Duration.ofMillis(500);
+
+    /**
+     * 单条 INSERT 语句最多包含的行数
+     */
+    private int batchSize = 200;
+
+    /**
+     * 每次追加后是否强制刷盘，关闭后吞吐更高但宕机可能丢失最近几条消息
+     */
+    private boolean fsync = true;
+
+    /**
+     * 队列清空后日志文件超过该大小（字节）即截断复用
+     */
+    private long compactThreshold = 16 * 1024 * 1024;
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    public void setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public boolean isFsync() {
+        return fsync;
+    }
+
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    public long getCompactThreshold() {
+        return compactThreshold;
+    }
+
+    public void setCompactThreshold(long compactThreshold) {
+        this.compactThreshold = compactThreshold;
+    }
+}
@@ -0,0 +1,92 @@
+package com.tanxian.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 角色回复缓存配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.response-cache")
+public class ChatResponseCacheProperties {
+
+    /**
+     * 是否启用，默认关闭
+     */
+    private boolean enabled = false;
+
+    /**
+     * 最多缓存的回复条数，超出时淘汰最久未使用的
+     */
+    private int maxEntries = 5000;
+
+    /**
+     * 回复缓存有效期
+     */
+    private Duration ttl = Duration.ofMinutes(30);
+
+    /**
+     * 只缓存归一化后不超过该字数的用户消息（问候、自我介绍等短句）
+     */
+    private int maxPromptChars = 32;
+
+    /**
+     * 超过该字数的回复不缓存
+     */
+    private int maxReplyChars = 500;
+
+    /**
+     * 近似匹配的相似度阈值（0~1），小于等于0时只做精确匹配
+     */
+    private double similarityThreshold = 0.8;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public int getMaxPromptChars() {
+        return maxPromptChars;
+    }
+
+    public void setMaxPromptChars(int maxPromptChars) {
+        this.maxPromptChars = maxPromptChars;
+    }
+
+    public int getMaxReplyChars() {
+        return maxReplyChars;
+    }
+
+    public void setMaxReplyChars(int maxReplyChars) {
+        this.maxReplyChars = maxReplyChars;
+    }
+
+    public double getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+
+    public void setSimilarityThreshold(double similarityThreshold) {
+        this.similarityThreshold = similarityThreshold;
+    }
+}
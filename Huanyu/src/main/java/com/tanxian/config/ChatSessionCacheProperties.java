@@ -0,0 +1,40 @@
+package com.tanxian.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 会话元数据本地缓存配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.session-cache")
+public class ChatSessionCacheProperties {
+
+    /**
+     * 最多缓存的会话数，超出时淘汰最久未使用的
+     */
+    private int maxSize = 10000;
+
+    /**
+     * 缓存条目的过期时间
+     */
+    private Duration expire = Duration.ofMinutes(30);
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Duration getExpire() {
+        return expire;
+    }
+
+    public void setExpire(Duration expire) {
+        this.expire = expire;
+    }
+}
@@ -0,0 +1,66 @@
+package com.tanxian.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * SSE 对话流配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.sse")
+public class ChatSseProperties {
+
+    /**
+     * 心跳注释行的发送间隔，防止代理和移动网络因空闲断开连接
+     */
+    private Duration heartbeat = Duration.ofSeconds(15);
+
+    /**
+     * 流结束后回放缓冲的保留时间，期间断线的客户端仍可重连续传
+     */
+    private Duration retention = Duration.ofSeconds(60);
+
+    /**
+     * 每个流在回放缓冲中保留的事件数
+     */
+    private int replaySize = 1024;
+
+    /**
+     * 通过 retry 字段建议客户端使用的重连间隔
+     */
+    private Duration reconnectDelay = Duration.ofSeconds(3);
+
+    public Duration getHeartbeat() {
+        return heartbeat;
+    }
+
+    public void setHeartbeat(Duration heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+
+    public Duration getRetention() {
+        return retention;
+    }
+
+    public void setRetention(Duration retention) {
+        this.retention = retention;
+    }
+
+    public int getReplaySize() {
+        return replaySize;
+    }
+
+    public void setReplaySize(int replaySize) {
+        this.replaySize = replaySize;
+    }
+
+    public Duration getReconnectDelay() {
+        return reconnectDelay;
+    }
+
+    public void setReconnectDelay(Duration reconnectDelay) {
+        this.reconnectDelay = reconnectDelay;
+    }
+}
@@ -1,20 +1,98 @@
 package com.tanxian.config;
 
+import com.tanxian.character.CharacterProfile;
+import com.tanxian.character.CharacterRegistry;
+import com.tanxian.llm.RoutingStreamingChatModel;
+import com.tanxian.memory.QwenTokenCountEstimator;
+import com.tanxian.memory.TokenBudgetChatMemory;
 import com.tanxian.service.MyChatMemoryStore;
+import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 @Configuration
 public class LangChain4jConfig {
 
+    // 摘要限制在 300 字左右，预留足够的输出 token
+    private static final int SUMMARY_MAX_TOKENS = 512;
+
+    /**
+     * 记忆窗口：存储层按消息条数滑动（配合滚动摘要），发送给模型时再按角色的 token 预算裁剪
+     */
+    @Bean
+    public ChatMemoryProvider chatMemoryProvider(MyChatMemoryStore myChatMemoryStore,
+                                                 ChatMemoryProperties chatMemoryProperties,
+                                                 CharacterRegistry characterRegistry,
+                                                 MeterRegistry meterRegistry) {
+        TokenCountEstimator estimator = new QwenTokenCountEstimator();
+        return memoryId -> {
+            ChatMemory window = MessageWindowChatMemory.builder()
+                    .id(memoryId)
+                    .maxMessages(chatMemoryProperties.getMaxMessages())
+                    .chatMemoryStore(myChatMemoryStore)
+                    .build();
+            String characterKey = myChatMemoryStore.getCharacterKey(memoryId.toString());
+            CharacterProfile character = characterRegistry.getByKey(characterKey);
+            int tokenBudget = character != null ? character.getTokenBudget() : chatMemoryProperties.getTokenBudget();
+            return new TokenBudgetChatMemory(window, tokenBudget, estimator, characterKey, meterRegistry);
+        };
+    }
+
+    /**
+     * 记忆摘要使用的模型：与对话模型相同的服务，但不受对话回复 max-tokens 的限制
+     */
     @Bean
-    public ChatMemoryProvider chatMemoryProvider(MyChatMemoryStore myChatMemoryStore) {
-        return memoryId -> MessageWindowChatMemory.builder()
-                .id(memoryId)
-                .maxMessages(21)
-                .chatMemoryStore(myChatMemoryStore)
+    public ChatModel memorySummaryChatModel(@Value("${langchain4j.openai.chat-model.base-url}") String baseUrl,
+                                            @Value("${langchain4j.openai.chat-model.api-key}") String apiKey,
+                                            @Value("${langchain4j.openai.chat-model.model-name}") String modelName) {
+        return OpenAiChatModel.builder()
+                .baseUrl(baseUrl)
+                .apiKey(apiKey)
+                .modelName(modelName)
+                .maxTokens(SUMMARY_MAX_TOKENS)
+                .temperature(0.3)
                 .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * 角色对话使用的流式模型：在 chat.llm.endpoints 配置的多个端点间按延迟与错误率路由，未配置时只包装默认端点
+     */
+    @Bean
+    public StreamingChatModel routingStreamingChatModel(LlmRoutingProperties routingProperties,
+                                                        @Qualifier("openAiStreamingChatModel") StreamingChatModel defaultModel,
+                                                        @Value("${langchain4j.openai.streaming-chat-model.max-tokens:64}") int defaultMaxTokens,
+                                                        MeterRegistry meterRegistry) {
+        Map<String, StreamingChatModel> models = new LinkedHashMap<>();
+        for (LlmRoutingProperties.Endpoint endpoint : routingProperties.getEndpoints()) {
+            String name = endpoint.getName() != null ? endpoint.getName() : "endpoint-" + models.size();
+            StreamingChatModel model = OpenAiStreamingChatModel.builder()
+                    .baseUrl(endpoint.getBaseUrl())
+                    .apiKey(endpoint.getApiKey())
+                    .modelName(endpoint.getModelName())
+                    .maxTokens(endpoint.getMaxTokens() != null ? endpoint.getMaxTokens() : defaultMaxTokens)
+                    .build();
+            if (models.putIfAbsent(name, model) != null) {
+                throw new IllegalStateException("模型端点名称重复: " + name);
+            }
+        }
+        if (models.isEmpty()) {
+            models.put("default", defaultModel);
+        }
+        RoutingStreamingChatModel routingModel = new RoutingStreamingChatModel(models, routingProperties, meterRegistry);
+        routingModel.registerGauges(meterRegistry);
+        return routingModel;
+    }
+}
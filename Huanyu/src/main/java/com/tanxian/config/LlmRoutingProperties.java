@@ -0,0 +1,273 @@
+package com.tanxian.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 对话模型多端点路由配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.llm")
+public class LlmRoutingProperties {
+
+    /**
+     * OpenAI 兼容的模型端点列表；为空时只使用 langchain4j.openai.streaming-chat-model 配置的单个端点
+     */
+    private List<Endpoint> endpoints = new ArrayList<>();
+
+    /**
+     * 首 token 延迟与错误率的 EWMA 平滑系数（0~1），越大越看重最近的请求
+     */
+    private double ewmaAlpha = 0.2;
+
+    /**
+     * 尚无观测数据的端点的首 token 延迟估计值
+     */
+    private Duration initialTtft = Duration.ofMillis(1500);
+
+    /**
+     * 空闲端点代价的衰减时间常数：端点空闲越久代价越低，从而被重新探测
+     */
+    private Duration idleDecay = Duration.ofSeconds(10);
+
+    /**
+     * 等待首 token 的最长时间，超时视为失败并切换到其他端点
+     */
+    private Duration firstTokenTimeout = Duration.ofSeconds(8);
+
+    /**
+     * 单次请求最多尝试的端点数（仅在收到首 token 之前切换）
+     */
+    private int maxAttempts = 3;
+
+    /**
+     * 连续失败多少次后熔断端点
+     */
+    private int failureThreshold = 5;
+
+    /**
+     * 熔断持续时间，之后放行一个探测请求，成功则恢复
+     */
+    private Duration openDuration = Duration.ofSeconds(30);
+
+    /**
+     * 对冲请求：首 token 迟迟未到时再发一个相同请求，先出首 token 的胜出
+     */
+    private Hedge hedge = new Hedge();
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public void setEndpoints(List<Endpoint> endpoints) {
+        this.endpoints = endpoints;
+    }
+
+    public double getEwmaAlpha() {
+        return ewmaAlpha;
+    }
+
+    public void setEwmaAlpha(double ewmaAlpha) {
+        this.ewmaAlpha = ewmaAlpha;
+    }
+
+    public Duration getInitialTtft() {
+        return initialTtft;
+    }
+
+    public void setInitialTtft(Duration initialTtft) {
+        this.initialTtft = initialTtft;
+    }
+
+    public Duration getIdleDecay() {
+        return idleDecay;
+    }
+
+    public void setIdleDecay(Duration idleDecay) {
+        this.idleDecay = idleDecay;
+    }
+
+    public Duration getFirstTokenTimeout() {
+        return firstTokenTimeout;
+    }
+
+    public void setFirstTokenTimeout(Duration firstTokenTimeout) {
+        this.firstTokenTimeout = firstTokenTimeout;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public Duration getOpenDuration() {
+        return openDuration;
+    }
+
+    public void setOpenDuration(Duration openDuration) {
+        this.openDuration = openDuration;
+    }
+
+    public Hedge getHedge() {
+        return hedge;
+    }
+
+    public void setHedge(Hedge hedge) {
+        this.hedge = hedge;
+    }
+
+    public static class Hedge {
+
+        /**
+         * 是否启用对冲请求
+         */
+        private boolean enabled = false;
+
+        /**
+         * 对冲延迟取近期首 token 延迟的该分位数，超过这个时间仍未收到首 token 才发出对冲请求
+         */
+        private double percentile = 0.95;
+
+        /**
+         * 对冲延迟下限，避免延迟估计偏低时大量发出对冲请求
+         */
+        private Duration minDelay = Duration.ofMillis(300);
+
+        /**
+         * 计算分位数使用的最近首 token 延迟样本数
+         */
+        private int windowSize = 256;
+
+        /**
+         * 对冲请求数占请求总数的上限（百分比）
+         */
+        private double budgetPercent = 5;
+
+        /**
+         * 对冲预算最多可累积的次数，允许短时间的突发
+         */
+        private int budgetBurst = 10;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+
+        public Duration getMinDelay() {
+            return minDelay;
+        }
+
+        public void setMinDelay(Duration minDelay) {
+            this.minDelay = minDelay;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public double getBudgetPercent() {
+            return budgetPercent;
+        }
+
+        public void setBudgetPercent(double budgetPercent) {
+            this.budgetPercent = budgetPercent;
+        }
+
+        public int getBudgetBurst() {
+            return budgetBurst;
+        }
+
+        public void setBudgetBurst(int budgetBurst) {
+            this.budgetBurst = budgetBurst;
+        }
+    }
+
+    public static class Endpoint {
+
+        /**
+         * 端点名称，用于日志和指标标签
+         */
+        private String name;
+
+        private String baseUrl;
+
+        private String apiKey;
+
+        private String modelName;
+
+        /**
+         * 为空时沿用 langchain4j.openai.streaming-chat-model.max-tokens
+         */
+        private Integer maxTokens;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public void setBaseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String getApiKey() {
+            return apiKey;
+        }
+
+        public void setApiKey(String apiKey) {
+            this.apiKey = apiKey;
+        }
+
+        public String getModelName() {
+            return modelName;
+        }
+
+        public void setModelName(String modelName) {
+            this.modelName = modelName;
+        }
+
+        public Integer getMaxTokens() {
+            return maxTokens;
+        }
+
+        public void setMaxTokens(Integer maxTokens) {
+            this.maxTokens = maxTokens;
+        }
+    }
+}
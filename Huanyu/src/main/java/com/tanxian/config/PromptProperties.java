@@ -0,0 +1,25 @@
+package com.tanxian.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 角色提示词模板配置，各角色使用的模板文件见 chat.characters
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.prompt")
+public class PromptProperties {
+
+    /**
+     * 外部模板目录，目录中的同名文件优先于 classpath 下的 prompt/ 目录，修改后自动热加载；为空时只使用 classpath
+     */
+    private String dir;
+
+    public String getDir() {
+        return dir;
+    }
+
+    public void setDir(String dir) {
+        this.dir = dir;
+    }
+}
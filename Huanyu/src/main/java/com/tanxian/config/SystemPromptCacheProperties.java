@@ -0,0 +1,25 @@
+package com.tanxian.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 已编译系统提示词缓存配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.prompt-cache")
+public class SystemPromptCacheProperties {
+
+    /**
+     * 最多缓存的系统消息数（模板 × 昵称），超出时淘汰最久未使用的
+     */
+    private int maxSize = 4096;
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+}
@@ -1,5 +1,7 @@
 package com.tanxian.controller;
 
+import com.tanxian.character.CharacterRegistry;
+import com.tanxian.chat.ChatStreamRegistry;
 import com.tanxian.common.LoginUserContext;
 import com.tanxian.resp.ChatMessageResp;
 import com.tanxian.service.AiChatService;
@@ -9,7 +11,11 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -29,20 +35,44 @@ public class AiChatController {
     @Autowired
     private ChatMessageService chatMessageService;
 
+    @Autowired
+    private CharacterRegistry characterRegistry;
+
+    @Autowired
+    private ChatStreamRegistry chatStreamRegistry;
+
 
     @GetMapping(value = "/chat" ,produces = "text/html;charset=utf-8")
     @Operation(summary = "与AI角色对话", description = "根据指定的角色类型与AI进行对话")
     public Flux<String> chat(
             @Parameter(name = "message", description = "用户消息", required = true) String message,
-            @Parameter(name = "type", description = "角色类型: 0=宵宫, 1=温迪, 2=胡桃", required = true) short type){
-        String sessionId = LoginUserContext.getId()+""+type;
-        return aiChatService.chat(sessionId,message,type);
+            @Parameter(name = "type", description = "角色类型，见 chat.characters 配置（0=宵宫, 1=温迪, 2=胡桃）", required = true) short type,
+            @Parameter(name = "Idempotency-Key", description = "客户端生成的幂等键，重试时携带相同的值可复用同一次回复")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey){
+        String sessionId = characterRegistry.sessionId(LoginUserContext.getId(), type);
+        return aiChatService.chat(sessionId,message,type,idempotencyKey);
+    }
+
+    @GetMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "与AI角色对话（SSE）", description = "以 text/event-stream 返回 token/done/error 事件；断线重连时带上 Last-Event-ID 从断点继续，不会重新调用模型")
+    public Flux<ServerSentEvent<Object>> chatStream(
+            @Parameter(name = "message", description = "用户消息", required = true) String message,
+            @Parameter(name = "type", description = "角色类型，见 chat.characters 配置（0=宵宫, 1=温迪, 2=胡桃）", required = true) short type,
+            @Parameter(name = "Idempotency-Key", description = "客户端生成的幂等键，重试时携带相同的值可复用同一次回复")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @Parameter(name = "Last-Event-ID", description = "断线重连时最后收到的事件ID")
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId){
+        String sessionId = characterRegistry.sessionId(LoginUserContext.getId(), type);
+        if (StringUtils.hasText(lastEventId)) {
+            return chatStreamRegistry.resume(sessionId, lastEventId);
+        }
+        return chatStreamRegistry.open(sessionId, aiChatService.chat(sessionId,message,type,idempotencyKey));
     }
 
     @GetMapping("/get-chat")
     @Operation(summary = "获取聊天记录", description = "根据指定的会话ID获取聊天记录")
     public List<ChatMessageResp> getMessage(@RequestParam @Param("type") short type){
-        String sessionId = LoginUserContext.getId()+""+type;
+        String sessionId = characterRegistry.sessionId(LoginUserContext.getId(), type);
         return chatMessageService.getContentsBySessionId(sessionId);
     }
 }
\ No newline at end of file
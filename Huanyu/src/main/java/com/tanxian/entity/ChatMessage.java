@@ -18,6 +18,9 @@ public class ChatMessage {
     @TableField("session_id")
     private String sessionId;
 
+    @TableField("seq")
+    private Long seq; // 会话内递增序号，(session_id, seq) 唯一
+
     @TableField("message_type")
     private String messageType; // USER, ASSISTANT, SYSTEM
 
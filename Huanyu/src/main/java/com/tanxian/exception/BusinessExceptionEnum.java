@@ -5,6 +5,10 @@ public enum BusinessExceptionEnum {
     SYSTEM_MESSAGE_TEMPLATE_NOT_FOUND("系统消息模板未找到"),
     SYSTEM_MESSAGE_TEMPLATE_LOAD_FAILED("系统消息模板加载失败"),
     UNSUPPORTED_CHARACTER_TYPE("不支持的角色类型"),
+    CHARACTER_BUSY("当前角色对话人数过多，请稍后再试"),
+    CHAT_OVERLOADED("当前对话请求过多，请稍后再试"),
+    CHAT_USER_LIMIT("您有对话正在进行中，请稍后再试"),
+    CHAT_STREAM_EXPIRED("对话已过期，请重新发送"),
     
     // 验证码相关异常
     CAPTCHA_GENERATE_FAILED("验证码生成失败"),
@@ -2,13 +2,8 @@ package com.tanxian.handler;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.IOException;
 
-import com.tanxian.config.AliyunNlsProperties;
-import com.alibaba.nls.client.AccessToken;
-import com.alibaba.nls.client.protocol.InputFormatEnum;
-import com.alibaba.nls.client.protocol.NlsClient;
-import com.alibaba.nls.client.protocol.SampleRateEnum;
+import com.tanxian.asr.NlsClientManager;
 import com.alibaba.nls.client.protocol.asr.SpeechTranscriber;
 import com.alibaba.nls.client.protocol.asr.SpeechTranscriberListener;
 import com.alibaba.nls.client.protocol.asr.SpeechTranscriberResponse;
@@ -27,37 +22,11 @@ import org.springframework.stereotype.Service;
 @Service
 public class BatchSpeechTranscriber {
     private static volatile String result;
-    private String appKey,id,secret,url;
-    // 可选：阿里云定制模型与热词词表ID（通过环境变量注入）
-    private String customizationId;
-    private String vocabularyId;
-    private NlsClient client;
     private static final Logger logger = LoggerFactory.getLogger(BatchSpeechTranscriber.class);
 
+    // 共享的识别客户端，令牌由其自动刷新
     @Autowired
-    public BatchSpeechTranscriber(AliyunNlsProperties props) {
-        this.appKey = props.getAppKey();
-        this.id = props.getAccessKeyId();
-        this.secret = props.getAccessKeySecret();
-        this.url = (props.getGatewayUrl() == null || props.getGatewayUrl().isBlank())
-                ? "wss://nls-gateway-cn-shanghai.aliyuncs.com/ws/v1"
-                : props.getGatewayUrl();
-        this.customizationId = props.getCustomizationId() == null ? "" : props.getCustomizationId().trim();
-        this.vocabularyId = props.getVocabularyId() == null ? "" : props.getVocabularyId().trim();
-
-        AccessToken accessToken = new AccessToken(this.id, this.secret);
-        try {
-            accessToken.apply();
-            logger.info("Aliyun NLS token expire time: {}", accessToken.getExpireTime());
-            if (this.url.isBlank()) {
-                client = new NlsClient(accessToken.getToken());
-            } else {
-                client = new NlsClient(this.url, accessToken.getToken());
-            }
-        } catch (IOException e) {
-            logger.error("Failed to init NlsClient", e);
-        }
-    }
+    private NlsClientManager nlsClientManager;
 
     private static SpeechTranscriberListener getTranscriberListener() {
         SpeechTranscriberListener listener = new SpeechTranscriberListener() {
@@ -154,40 +123,8 @@ public class BatchSpeechTranscriber {
             // 每次处理前重置累计结果，避免出现 "null" 前缀
             result = "";
             //创建实例、建立连接。
-            transcriber = new SpeechTranscriber(client, getTranscriberListener());
-            transcriber.setAppKey(appKey);
-            //输入音频编码方式。
-            transcriber.setFormat(InputFormatEnum.PCM);
-            //输入音频采样率。
-            transcriber.setSampleRate(SampleRateEnum.SAMPLE_RATE_16K);
-            //是否返回中间识别结果。
-            transcriber.setEnableIntermediateResult(false);
-            //是否生成并返回标点符号。
-            transcriber.setEnablePunctuation(true);
-            //是否将返回结果规整化，比如将一百返回为100。
-            transcriber.setEnableITN(false);
-
-            //设置vad断句参数。默认值：800ms，有效值：200ms～6000ms。
-            //transcriber.addCustomedParam("max_sentence_silence", 600);
-            //设置是否语义断句。
-            //transcriber.addCustomedParam("enable_semantic_sentence_detection",false);
-            //设置是否开启过滤语气词，即声音顺滑。
-            //transcriber.addCustomedParam("disfluency",true);
-            //设置是否开启词模式。
-            //transcriber.addCustomedParam("enable_words",true);
-            //设置vad噪音阈值参数，参数取值为-1～+1，如-0.9、-0.8、0.2、0.9。
-            //取值越趋于-1，判定为语音的概率越大，亦即有可能更多噪声被当成语音被误识别。
-            //取值越趋于+1，判定为噪音的越多，亦即有可能更多语音段被当成噪音被拒绝识别。
-            //该参数属高级参数，调整需慎重和重点测试。
-            //transcriber.addCustomedParam("speech_noise_threshold",0.3);
-            //设置训练后的定制语言模型id。
-            //transcriber.addCustomedParam("customization_id","你的定制语言模型id");
-            //设置训练后的定制热词id。
-            //transcriber.addCustomedParam("vocabulary_id","你的定制热词id");
-
-            // 应用定制模型与热词词表（如已配置）
-            applyHotwordAndCustomization(transcriber);
-            //此方法将以上参数设置序列化为JSON发送给服务端，并等待服务端确认。
+            transcriber = nlsClientManager.newTranscriber(getTranscriberListener());
+            //此方法将识别参数设置序列化为JSON发送给服务端，并等待服务端确认。
             transcriber.start();
 
             File file = new File(filepath);
@@ -225,31 +162,4 @@ public class BatchSpeechTranscriber {
         }
     }
 
-    public void shutdown() {
-        client.shutdown();
-    }
-
-    // 在ASR启动前应用定制模型与热词词表
-    /**
-     * 应用定制模型与热词词表
-     *
-     * 在ASR启动前应用定制语言模型和热词词表，以提高特定领域或术语的识别准确率。
-     *
-     * @param transcriber 语音识别器实例
-     */
-    private void applyHotwordAndCustomization(SpeechTranscriber transcriber) {
-        try {
-            if (customizationId != null && !customizationId.isBlank()) {
-                logger.info("Apply customization_id: {}", customizationId);
-                transcriber.addCustomedParam("customization_id", customizationId);
-            }
-            if (vocabularyId != null && !vocabularyId.isBlank()) {
-                logger.info("Apply vocabulary_id: {}", vocabularyId);
-                transcriber.addCustomedParam("vocabulary_id", vocabularyId);
-            }
-        } catch (Exception ex) {
-            logger.warn("Apply hotword/customization failed: {}", ex.toString());
-        }
-    }
-
 }
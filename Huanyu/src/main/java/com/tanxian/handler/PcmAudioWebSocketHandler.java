@@ -3,7 +3,10 @@ package com.tanxian.handler;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanxian.character.CharacterProfile;
+import com.tanxian.character.CharacterRegistry;
 import com.tanxian.service.impl.MyChatMemoryStoreImpl;
+import com.tanxian.voice.VoiceCall;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,25 +29,25 @@ public class PcmAudioWebSocketHandler extends AbstractWebSocketHandler {
     private ApplicationContext applicationContext;
     @Autowired
     private MyChatMemoryStoreImpl memoryStore;
+    @Autowired
+    private CharacterRegistry characterRegistry;
     private static final Logger LOG = LoggerFactory.getLogger(PcmAudioWebSocketHandler.class);
-    private volatile String sessionId;
-    // 存储每个会话对应的SpeechTranscriberTool实例
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, WebSocketSpeechTranscriber> sessionTools = new ConcurrentHashMap<>();
-    private final Map<String, String> voiceSessionIds = new ConcurrentHashMap<>();
+    // 每个连接一路通话：处理器是单例，连接相关的状态都放在各自的 VoiceCall 中
+    private final Map<String, VoiceCall> calls = new ConcurrentHashMap<>();
     // 重点：处理客户端发来的二进制消息
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        VoiceCall call = calls.get(session.getId());
+        if (call == null) {
+            return;
+        }
         if (message instanceof BinaryMessage binaryMessage) {
             this.handleBinaryMessage(session, binaryMessage);
             ByteBuffer byteBuffer = (ByteBuffer) message.getPayload();
             byte[] pcmBytes = new byte[byteBuffer.remaining()];
             byteBuffer.get(pcmBytes);
-            // 获取当前会话对应的SpeechTranscriberTool实例
-            WebSocketSpeechTranscriber webSocketSpeechTranscriber = sessionTools.get(session.getId());
-            if (webSocketSpeechTranscriber != null) {
-                webSocketSpeechTranscriber.process(pcmBytes,sessionId);
-            }
+            call.onAudio(pcmBytes);
         }
         if (message instanceof TextMessage textMessage) {
             this.handleTextMessage(session, textMessage);
@@ -55,10 +58,7 @@ public class PcmAudioWebSocketHandler extends AbstractWebSocketHandler {
             JsonNode jsonNode = objectMapper.readTree(payload);
             // 先处理打断逻辑
             if (jsonNode.has("type") && "interrupt".equals(jsonNode.get("type").asText())) {
-                WebSocketSpeechTranscriber webSocketSpeechTranscriber = sessionTools.get(session.getId());
-                if (webSocketSpeechTranscriber != null) {
-                    webSocketSpeechTranscriber.interrupt();
-                }
+                call.interrupt();
                 return;
             }
             String characterName = jsonNode.get("characterId").asText();
@@ -72,17 +72,19 @@ public class PcmAudioWebSocketHandler extends AbstractWebSocketHandler {
             }
 
             LOG.info("WebSocket消息：用户Id={}, 角色={}", userId, characterName);
-            sessionId = String.valueOf(userId);
-            sessionId += switch (characterName) {
-                case "Hutao" -> "2";
-                case "Venti" -> "1";
-                case "Xiaogong" -> "0";
-                default -> "unknown";
-            };
+            CharacterProfile character = characterRegistry.getByClientId(characterName);
+            if (character == null) {
+                LOG.warn("未知的角色标识: {}，忽略该消息", characterName);
+                return;
+            }
+            String sessionId = characterRegistry.sessionId(userId, character.getType());
             // 标记该会话为临时（语音通话），避免消息入库
             memoryStore.markEphemeralSession(sessionId);
-            // 记录映射，方便断开连接时取消标记
-            voiceSessionIds.put(session.getId(), sessionId);
+            // 切换角色时取消原会话的标记
+            String previous = call.bindCharacter(sessionId);
+            if (previous != null) {
+                memoryStore.unmarkEphemeralSession(previous);
+            }
         }
     }
 
@@ -91,9 +93,10 @@ public class PcmAudioWebSocketHandler extends AbstractWebSocketHandler {
     public void afterConnectionEstablished(WebSocketSession session) {
         // 为每个新连接创建一个新的SpeechTranscriberTool实例
         WebSocketSpeechTranscriber webSocketSpeechTranscriber = applicationContext.getBean(WebSocketSpeechTranscriber.class);
-        sessionTools.put(session.getId(), webSocketSpeechTranscriber);
-        // 绑定当前会话，用于将AI文本与TTS音频回传到前端
-        webSocketSpeechTranscriber.bindSession(session);
+        VoiceCall call = new VoiceCall(session, webSocketSpeechTranscriber);
+        // 绑定当前通话，用于将AI文本与TTS音频回传到前端
+        webSocketSpeechTranscriber.bindCall(call);
+        calls.put(session.getId(), call);
         Object uidObj = session.getAttributes().get("userId");
         String nickname = String.valueOf(session.getAttributes().get("nickname"));
         LOG.info("WebSocket 已连接，Session={}, 用户Id={}, 昵称={}", session.getId(), uidObj, nickname);
@@ -102,26 +105,16 @@ public class PcmAudioWebSocketHandler extends AbstractWebSocketHandler {
     @Override
     public void afterConnectionClosed(WebSocketSession session, org.springframework.web.socket.CloseStatus status) throws Exception {
         String webSocketId = session.getId();
-        WebSocketSpeechTranscriber webSocketSpeechTranscriber = sessionTools.get(webSocketId);
-        // 取消临时会话标记
-        String ephemeralSessionId = voiceSessionIds.remove(webSocketId);
-        if (ephemeralSessionId != null) {
-            memoryStore.unmarkEphemeralSession(ephemeralSessionId);
-        }
-        
-        if (webSocketSpeechTranscriber != null) {
-            // 清理资源
-            if (webSocketSpeechTranscriber.transcriber != null) {
-                webSocketSpeechTranscriber.transcriber.stop();
-                webSocketSpeechTranscriber.transcriber.close();
+        VoiceCall call = calls.remove(webSocketId);
+        if (call != null && call.close()) {
+            // 取消临时会话标记
+            String ephemeralSessionId = call.getSessionId();
+            if (ephemeralSessionId != null) {
+                memoryStore.unmarkEphemeralSession(ephemeralSessionId);
             }
-            // 调用shutdown方法清理NlsClient
-            webSocketSpeechTranscriber.shutdown();
-            // 从映射中移除
-            sessionTools.remove(webSocketId);
         }
-        
+
         LOG.info("WebSocket 已断开，Session={}, 已清理SpeechTranscriberTool实例", webSocketId);
     }
 
-}
\ No newline at end of file
+}
@@ -2,18 +2,23 @@ package com.tanxian.handler;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.IOException;
 
-import com.tanxian.config.AliyunNlsProperties;
-import com.alibaba.nls.client.AccessToken;
-import com.alibaba.nls.client.protocol.InputFormatEnum;
-import com.alibaba.nls.client.protocol.NlsClient;
-import com.alibaba.nls.client.protocol.SampleRateEnum;
+import com.tanxian.asr.NlsClientManager;
+import com.tanxian.asr.SpeechTranscriberPool;
+import com.tanxian.audio.TtsCancellation;
+import com.tanxian.audio.WavAssembler;
+import com.tanxian.character.CharacterProfile;
+import com.tanxian.character.CharacterRegistry;
 import com.alibaba.nls.client.protocol.asr.SpeechTranscriber;
 import com.alibaba.nls.client.protocol.asr.SpeechTranscriberListener;
 import com.alibaba.nls.client.protocol.asr.SpeechTranscriberResponse;
 import com.tanxian.service.AiChatService;
 import com.tanxian.service.MessageTurnToAiVoiceTool;
+import com.tanxian.voice.CallTranscriber;
+import com.tanxian.voice.SerialExecutor;
+import com.tanxian.voice.VoiceCall;
+import com.tanxian.voice.VoiceCallExecutor;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,15 +27,18 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * WebSocket实时语音转文字处理器
@@ -46,63 +54,63 @@ import java.util.concurrent.TimeUnit;
  */
 @Service
 @Scope("prototype")
-public class WebSocketSpeechTranscriber {
+public class WebSocketSpeechTranscriber implements CallTranscriber {
     @Autowired
     AiChatService aiChatService;
     @Autowired
     MessageTurnToAiVoiceTool messageTurnToAiVoiceTool;
     @Autowired
-    public WebSocketSpeechTranscriber(AliyunNlsProperties props) {
+    CharacterRegistry characterRegistry;
+    // 共享的识别客户端与自动刷新的访问令牌，创建会话时不再单独获取令牌和创建客户端
+    @Autowired
+    NlsClientManager nlsClientManager;
+    // 预热的识别会话，第一帧音频到达时无需再等待握手
+    @Autowired
+    SpeechTranscriberPool speechTranscriberPool;
+    // 所有通话共享的虚拟线程执行器，本会话的任务通过串行队列保证顺序
+    @Autowired
+    VoiceCallExecutor voiceCallExecutor;
+
+    public WebSocketSpeechTranscriber() {
         cnt = 0;
         isRecording = false;
-        this.appKey = props.getAppKey();
-        this.id = props.getAccessKeyId();
-        this.secret = props.getAccessKeySecret();
-        this.url = (props.getGatewayUrl() == null || props.getGatewayUrl().isBlank())
-                ? "wss://nls-gateway-cn-shanghai.aliyuncs.com/ws/v1"
-                : props.getGatewayUrl();
-        this.customizationId = props.getCustomizationId() == null ? "" : props.getCustomizationId().trim();
-        this.vocabularyId = props.getVocabularyId() == null ? "" : props.getVocabularyId().trim();
-
-        AccessToken accessToken = new AccessToken(this.id, this.secret);
-        try {
-            accessToken.apply();
-            System.out.println("get token: " + ", expire time: " + accessToken.getExpireTime());
-            if (this.url.isBlank()) {
-                client = new NlsClient(accessToken.getToken());
-            } else {
-                client = new NlsClient(this.url, accessToken.getToken());
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
     }
 
-    private String appKey,id,secret,url,sessionId;
-    // 可选：阿里云定制模型与热词词表ID（通过配置注入）
-    private String customizationId;
-    private String vocabularyId;
-    private NlsClient client;
+    private String sessionId;
     private static final Logger logger = LoggerFactory.getLogger(WebSocketSpeechTranscriber.class);
     public boolean isRecording;
-    public SpeechTranscriber transcriber;
+    private SpeechTranscriber transcriber;
     public int cnt;
 
     private volatile WebSocketSession boundSession;
+    private volatile VoiceCall call;
     private final ObjectMapper objectMapper = new ObjectMapper();
     // Ensure websocket writes are serialized per session
-    private final ExecutorService sendExecutor = Executors.newSingleThreadExecutor();
-    // Interrupt flag for stopping current TTS audio streaming
-    private volatile boolean stopAudioStreaming = false;
+    private SerialExecutor sendQueue;
+    // 进行中的回复轮次，打断时逐个取消
+    private final Set<VoiceTurn> activeTurns = ConcurrentHashMap.newKeySet();
+    // 正在播放的语音分段，打断时中止其TTS请求
+    private volatile TtsPlayback currentPlayback;
+    // 语音分段序号，随 audio_start/audio_end 下发，打断时告知前端被截断的分段
+    private final AtomicLong audioSeq = new AtomicLong();
     // 串行处理音频播放，避免并发交错
-    private final java.util.concurrent.ExecutorService audioExecutor = Executors.newSingleThreadExecutor();
-    private final java.util.concurrent.ConcurrentLinkedQueue<String> ttsQueue = new java.util.concurrent.ConcurrentLinkedQueue<>();
-    private volatile boolean audioStreamingActive = false;
+    private SerialExecutor audioQueue;
+    // 识别句末回调与模型输出分片的处理，不占用识别客户端和模型连接的 I/O 线程
+    private SerialExecutor eventQueue;
+    // 单轮回复拼接音频的上限（约 16MB，32kHz 16bit 单声道可容纳 4 分钟以上）
+    private static final int MAX_TURN_AUDIO_BYTES = 16 * 1024 * 1024;
     // 句末回调去重：避免同一句被重复处理两次
     private final java.util.Set<String> processedSentenceIds = java.util.Collections.newSetFromMap(new java.util.concurrent.ConcurrentHashMap<>());
 
     // 移除无参构造函数，防止绕过配置导致使用硬编码的凭证
 
+    @PostConstruct
+    public void init() {
+        sendQueue = voiceCallExecutor.newSerialQueue("voice-send");
+        audioQueue = voiceCallExecutor.newSerialQueue("voice-audio");
+        eventQueue = voiceCallExecutor.newSerialQueue("voice-event");
+    }
+
     private SpeechTranscriberListener getTranscriberListener() {
 
         SpeechTranscriberListener listener = new SpeechTranscriberListener() {
@@ -160,51 +168,10 @@ public class WebSocketSpeechTranscriber {
                     return;
                 }
 
-                short characterId = (short) (sessionId.charAt(sessionId.length() - 1)-'0');
-                System.out.println("lwj会话id是:"+sessionId);
-                // 移除重复调用：避免通过 SendToAiTool 再次触发 aiChatService.chat
-
-                // Stream AI text to frontend via WebSocket and then TTS audio
-                try {
-                    final WebSocketSession session = boundSession;
-                    if (session != null && session.isOpen()) {
-                        String userText = response.getTransSentenceText();
-                        final StringBuilder aiTextBuilder = new StringBuilder();
-
-                        aiChatService.chat(sessionId, userText, characterId)
-                                .subscribe(
-                                        chunk -> {
-                                            aiTextBuilder.append(chunk);
-                                            // 文本分片立即推送到前端
-                                            Map<String, Object> msg = new HashMap<>();
-                                            msg.put("type", "ai_text");
-                                            msg.put("chunk", chunk);
-                                            safeSendText(session, msg);
-
-                                            // 从累计文本中提取可播放的分句，尽早启动TTS
-                                            for (String seg : extractFlushableSegments(aiTextBuilder)) {
-                                                enqueueTtsSegment(seg, sessionId);
-                                            }
-                                        },
-                                        error -> {
-                                            Map<String, Object> msg = new HashMap<>();
-                                            msg.put("type", "ai_error");
-                                            msg.put("message", String.valueOf(error.getMessage()));
-                                            safeSendText(session, msg);
-                                        },
-                                        () -> {
-                                            // 完成时若仍有剩余，作为最后一段播放
-                                            String remainder = aiTextBuilder.toString().trim();
-                                            if (!remainder.isEmpty()) {
-                                                enqueueTtsSegment(remainder, sessionId);
-                                            }
-                                        }
-                                );
-                    }
-                } catch (Exception e) {
-                    logger.error("Error streaming AI/TTS via WebSocket", e);
-                }
-
+                // 回调运行在共享识别客户端的 I/O 线程上，后续处理转到本会话的串行队列
+                final String sessionId = WebSocketSpeechTranscriber.this.sessionId;
+                final String userText = response.getTransSentenceText();
+                eventQueue.execute(() -> handleSentence(sessionId, userText));
             }
 
             //识别完毕
@@ -225,8 +192,77 @@ public class WebSocketSpeechTranscriber {
         return listener;
     }
 
-    public void bindSession(WebSocketSession session) {
-        this.boundSession = session;
+    /**
+     * 处理识别出的一句话：调用AI流式回复，文本分片推送到前端，并按分句排队合成语音
+     */
+    private void handleSentence(String sessionId, String userText) {
+        CharacterProfile character = characterRegistry.getBySessionId(sessionId);
+        if (character == null) {
+            logger.warn("无法从会话ID识别角色，忽略该句: {}", sessionId);
+            return;
+        }
+        short characterId = character.getType();
+        // 移除重复调用：避免通过 SendToAiTool 再次触发 aiChatService.chat
+
+        // Stream AI text to frontend via WebSocket and then TTS audio
+        try {
+            final WebSocketSession session = boundSession;
+            if (session != null && session.isOpen()) {
+                final StringBuilder aiTextBuilder = new StringBuilder();
+                // 本轮回复：累计完整文本，并拼接逐段合成的音频用于上传
+                final VoiceTurn turn = new VoiceTurn(sessionId, characterId);
+                call.beginTurn();
+                activeTurns.add(turn);
+
+                turn.subscription = aiChatService.voiceChat(sessionId, userText, characterId)
+                        .publishOn(Schedulers.fromExecutor(eventQueue))
+                        .subscribe(
+                                chunk -> {
+                                    aiTextBuilder.append(chunk);
+                                    turn.fullText.append(chunk);
+                                    // 文本分片立即推送到前端
+                                    Map<String, Object> msg = new HashMap<>();
+                                    msg.put("type", "ai_text");
+                                    msg.put("chunk", chunk);
+                                    safeSendText(session, msg);
+
+                                    // 从累计文本中提取可播放的分句，尽早启动TTS
+                                    for (String seg : extractFlushableSegments(aiTextBuilder)) {
+                                        enqueueTtsSegment(seg, sessionId, turn);
+                                    }
+                                },
+                                error -> {
+                                    Map<String, Object> msg = new HashMap<>();
+                                    msg.put("type", "ai_error");
+                                    msg.put("message", String.valueOf(error.getMessage()));
+                                    safeSendText(session, msg);
+                                    // 回复不完整，已排队的分段不再播放，也不上传
+                                    turn.cancel();
+                                    audioQueue.execute(() -> finishTurn(turn));
+                                },
+                                () -> {
+                                    // 完成时若仍有剩余，作为最后一段播放
+                                    String remainder = aiTextBuilder.toString().trim();
+                                    if (!remainder.isEmpty()) {
+                                        enqueueTtsSegment(remainder, sessionId, turn);
+                                    }
+                                    // 所有分段播放完后上传拼接好的整轮音频
+                                    audioQueue.execute(() -> finishTurn(turn));
+                                }
+                        );
+                // 订阅建立前已被打断
+                if (turn.cancelled) {
+                    turn.subscription.dispose();
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error streaming AI/TTS via WebSocket", e);
+        }
+    }
+
+    public void bindCall(VoiceCall call) {
+        this.call = call;
+        this.boundSession = call.getSession();
     }
 
     private boolean isSessionOpen(WebSocketSession session) {
@@ -238,7 +274,7 @@ public class WebSocketSpeechTranscriber {
         try {
             String json = objectMapper.writeValueAsString(payload);
             // serialize writes via executor
-            sendExecutor.execute(() -> {
+            sendQueue.execute(() -> {
                 try {
                     if (isSessionOpen(session)) session.sendMessage(new TextMessage(json));
                 } catch (Exception ex) {
@@ -250,13 +286,34 @@ public class WebSocketSpeechTranscriber {
         }
     }
 
-    private void streamTtsAndSend(String text, String sessionId) {
+    private void streamTtsAndSend(String text, String sessionId, VoiceTurn turn) {
+        final WavAssembler assembler = turn.audio;
         final WebSocketSession session = boundSession;
-        if (!isSessionOpen(session)) return;
-        try (InputStream is = messageTurnToAiVoiceTool.streamToAiVoice(text, sessionId)) {
+        if (!isSessionOpen(session)) {
+            assembler.markIncomplete();
+            return;
+        }
+        assembler.beginSegment();
+        call.beginSpeaking();
+        final long seq = audioSeq.incrementAndGet();
+        final TtsPlayback playback = new TtsPlayback(turn, seq);
+        currentPlayback = playback;
+        // 登记为当前分段后再检查一次，打断发生在登记之前时不再请求TTS
+        if (turn.cancelled) {
+            playback.cancellation.cancel();
+        }
+        try (InputStream is = messageTurnToAiVoiceTool.streamToAiVoice(text, sessionId, playback.cancellation)) {
+            playback.stream = is;
+            if (turn.cancelled) {
+                // 请求或重试期间被打断：不发送任何音频帧
+                assembler.markIncomplete();
+                sendAudioEnd(session, seq);
+                return;
+            }
             // Notify audio start
             Map<String, Object> start = new HashMap<>();
             start.put("type", "audio_start");
+            start.put("seq", seq);
             // 关键：同步发送audio_start，保证其在二进制音频之前到达前端，避免首帧被后续重置逻辑丢弃
             try {
                 String json = objectMapper.writeValueAsString(start);
@@ -268,8 +325,14 @@ public class WebSocketSpeechTranscriber {
             // 使用更小的缓冲区以更快将音频分片推送到前端，降低首帧延迟
             byte[] buf = new byte[2048];
             int read;
+            boolean interrupted = false;
             while ((read = is.read(buf)) != -1) {
-                if (stopAudioStreaming) break;
+                if (turn.cancelled) {
+                    interrupted = true;
+                    break;
+                }
+                // 同时写入本轮音频拼接器，上传时无需重新合成
+                assembler.append(buf, 0, read);
                 byte[] chunk = new byte[read];
                 System.arraycopy(buf, 0, chunk, 0, read);
                 // 直接发送二进制消息，避免排队带来的额外延迟
@@ -280,23 +343,42 @@ public class WebSocketSpeechTranscriber {
                 }
             }
 
-            // Notify audio end
-            Map<String, Object> end = new HashMap<>();
-            end.put("type", "audio_end");
-            // 同步发送audio_end，保持与audio_start一致的顺序保证
-            try {
-                String json = objectMapper.writeValueAsString(end);
-                if (isSessionOpen(session)) session.sendMessage(new TextMessage(json));
-            } catch (Exception ex) {
-                logger.warn("WebSocket text send failed (audio_end): {}", ex.toString());
+            if (interrupted || turn.cancelled) {
+                assembler.markIncomplete();
+            } else {
+                assembler.endSegment();
             }
-            stopAudioStreaming = false;
+            sendAudioEnd(session, seq);
         } catch (Exception e) {
-            logger.error("TTS streaming failed", e);
-            Map<String, Object> err = new HashMap<>();
-            err.put("type", "audio_error");
-            err.put("message", String.valueOf(e.getMessage()));
-            safeSendText(session, err);
+            assembler.markIncomplete();
+            if (turn.cancelled) {
+                // 被打断时关闭了TTS响应流，读流失败属于预期
+                logger.debug("TTS streaming aborted by interrupt: seq={}", seq);
+                sendAudioEnd(session, seq);
+            } else {
+                logger.error("TTS streaming failed", e);
+                Map<String, Object> err = new HashMap<>();
+                err.put("type", "audio_error");
+                err.put("seq", seq);
+                err.put("message", String.valueOf(e.getMessage()));
+                safeSendText(session, err);
+            }
+        } finally {
+            currentPlayback = null;
+        }
+    }
+
+    private void sendAudioEnd(WebSocketSession session, long seq) {
+        // Notify audio end
+        Map<String, Object> end = new HashMap<>();
+        end.put("type", "audio_end");
+        end.put("seq", seq);
+        // 同步发送audio_end，保持与audio_start一致的顺序保证
+        try {
+            String json = objectMapper.writeValueAsString(end);
+            if (isSessionOpen(session)) session.sendMessage(new TextMessage(json));
+        } catch (Exception ex) {
+            logger.warn("WebSocket text send failed (audio_end): {}", ex.toString());
         }
     }
 
@@ -329,33 +411,130 @@ public class WebSocketSpeechTranscriber {
     }
 
     // 入队并触发串行播放
-    private void enqueueTtsSegment(String segment, String sessionId) {
+    private void enqueueTtsSegment(String segment, String sessionId, VoiceTurn turn) {
         if (segment == null || segment.isBlank()) return;
-        ttsQueue.offer(segment);
-        if (!audioStreamingActive) {
-            audioStreamingActive = true;
-            audioExecutor.execute(() -> {
-                try {
-                    while (isSessionOpen(boundSession)) {
-                        String seg = ttsQueue.poll();
-                        if (seg == null) break;
-                        streamTtsAndSend(seg, sessionId);
-                    }
-                } finally {
-                    audioStreamingActive = false;
-                }
-            });
+        audioQueue.execute(() -> {
+            if (turn.cancelled) {
+                // 已被打断：排队中的分段直接丢弃，不再请求合成
+                logger.debug("Drop TTS segment of interrupted turn: sessionId={}", sessionId);
+            } else if (isSessionOpen(boundSession)) {
+                streamTtsAndSend(segment, sessionId, turn);
+            } else {
+                // 连接已关闭，剩余分段不再播放，本轮改为整段合成
+                turn.audio.markIncomplete();
+            }
+        });
+    }
+
+    /**
+     * 一轮回复播放结束：分段音频完整时直接上传拼接结果，否则（连接断开、合成失败等）交由服务端整段合成；
+     * 被打断或模型出错的回复不完整，不上传。每轮只执行一次
+     */
+    private void finishTurn(VoiceTurn turn) {
+        if (!turn.finished.compareAndSet(false, true)) return;
+        activeTurns.remove(turn);
+        call.endTurn();
+        if (turn.cancelled) return;
+        String aiText = turn.fullText.toString();
+        if (aiText.isBlank()) return;
+        byte[] wav = turn.audio.toWav();
+        if (wav == null) {
+            logger.info("本轮语音分段不完整，回退为整段合成上传: sessionId={}", turn.sessionId);
+        }
+        try {
+            aiChatService.uploadVoiceReplyAudio(turn.sessionId, turn.type, aiText, wav);
+        } catch (Exception e) {
+            logger.warn("上传语音回复音频失败: {}", e.toString());
         }
     }
 
     /**
-     * 中断当前AI语音播放
+     * 一轮语音回复的完整文本与拼接中的音频，只在音频线程中按顺序写入
+     */
+    private static class VoiceTurn {
+        private final String sessionId;
+        private final short type;
+        private final StringBuilder fullText = new StringBuilder();
+        private final WavAssembler audio = new WavAssembler(MAX_TURN_AUDIO_BYTES);
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile Disposable subscription;
+        private volatile boolean cancelled;
+
+        private VoiceTurn(String sessionId, short type) {
+            this.sessionId = sessionId;
+            this.type = type;
+        }
+
+        /**
+         * 取消本轮：停止接收模型输出，排队中的分段不再播放
+         *
+         * @return 是否为首次取消
+         */
+        private boolean cancel() {
+            if (cancelled) return false;
+            cancelled = true;
+            Disposable current = subscription;
+            if (current != null) {
+                current.dispose();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 正在播放的一个语音分段。打断时取消TTS调用（首个响应之前的请求与重试等待）并关闭其响应流：
+     * 底层HTTP请求随之取消，阻塞中的读取立即返回
+     */
+    private static class TtsPlayback {
+        private final VoiceTurn turn;
+        private final long seq;
+        private final TtsCancellation cancellation = new TtsCancellation();
+        private volatile InputStream stream;
+
+        private TtsPlayback(VoiceTurn turn, long seq) {
+            this.turn = turn;
+            this.seq = seq;
+        }
+
+        private void abort() {
+            cancellation.cancel();
+            InputStream current = stream;
+            if (current == null) return;
+            try {
+                current.close();
+            } catch (Exception e) {
+                logger.debug("Close TTS stream failed: {}", e.toString());
+            }
+        }
+    }
+
+    /**
+     * 中断当前AI回复
      * 
-     * 该方法用于打断当前正在进行的TTS语音播放，但不会停止ASR录音过程。
+     * 该方法用于打断正在进行的回复，但不会停止ASR录音过程：取消模型输出的订阅，
+     * 丢弃排队中的语音分段，中止正在进行的TTS请求，并通过 audio_interrupted 告知前端被截断的分段序号。
      * 适用于用户希望立即停止AI语音输出的场景，例如用户开始说话时自动打断AI语音。
      */
+    @Override
     public void interrupt() {
-        stopAudioStreaming = true;
+        int cancelled = 0;
+        for (VoiceTurn turn : activeTurns) {
+            if (turn.cancel()) {
+                cancelled++;
+                // 订阅已取消，不会再有完成回调，由这里结束本轮
+                audioQueue.execute(() -> finishTurn(turn));
+            }
+        }
+        TtsPlayback playback = currentPlayback;
+        if (playback != null && playback.turn.cancelled) {
+            playback.abort();
+        }
+        long seq = playback != null ? playback.seq : audioSeq.get();
+        logger.info("Voice reply interrupted: cancelledTurns={}, seq={}", cancelled, seq);
+        Map<String, Object> msg = new HashMap<>();
+        msg.put("type", "audio_interrupted");
+        msg.put("seq", seq);
+        safeSendText(boundSession, msg);
     }
 
     /**
@@ -384,40 +563,8 @@ public class WebSocketSpeechTranscriber {
     public void process(String filepath) {
         try {
             //创建实例、建立连接。
-            transcriber = new SpeechTranscriber(client, getTranscriberListener());
-            transcriber.setAppKey(appKey);
-            //输入音频编码方式。
-            transcriber.setFormat(InputFormatEnum.PCM);
-            //输入音频采样率。
-            transcriber.setSampleRate(SampleRateEnum.SAMPLE_RATE_16K);
-            //是否返回中间识别结果。
-            transcriber.setEnableIntermediateResult(false);
-            //是否生成并返回标点符号。
-            transcriber.setEnablePunctuation(true);
-            //是否将返回结果规整化，比如将一百返回为100。
-            transcriber.setEnableITN(false);
-
-            //设置vad断句参数。默认值：800ms，有效值：200ms～6000ms。
-            //transcriber.addCustomedParam("max_sentence_silence", 600);
-            //设置是否语义断句。
-            //transcriber.addCustomedParam("enable_semantic_sentence_detection",false);
-            //设置是否开启过滤语气词，即声音顺滑。
-            //transcriber.addCustomedParam("disfluency",true);
-            //设置是否开启词模式。
-            //transcriber.addCustomedParam("enable_words",true);
-            //设置vad噪音阈值参数，参数取值为-1～+1，如-0.9、-0.8、0.2、0.9。
-            //取值越趋于-1，判定为语音的概率越大，亦即有可能更多噪声被当成语音被误识别。
-            //取值越趋于+1，判定为噪音的越多，亦即有可能更多语音段被当成噪音被拒绝识别。
-            //该参数属高级参数，调整需慎重和重点测试。
-            //transcriber.addCustomedParam("speech_noise_threshold",0.3);
-            //设置训练后的定制语言模型id。
-            //transcriber.addCustomedParam("customization_id","你的定制语言模型id");
-            //设置训练后的定制热词id。
-            //transcriber.addCustomedParam("vocabulary_id","你的定制热词id");
-
-            // 应用定制模型与热词词表（如已配置）
-            applyHotwordAndCustomization(transcriber);
-            //此方法将以上参数设置序列化为JSON发送给服务端，并等待服务端确认。
+            transcriber = nlsClientManager.newTranscriber(getTranscriberListener());
+            //此方法将识别参数序列化为JSON发送给服务端，并等待服务端确认。
             transcriber.start();
 
             File file = new File(filepath);
@@ -450,56 +597,23 @@ public class WebSocketSpeechTranscriber {
      * 处理通过WebSocket接收到的音频数据
      * 
      * 该方法接收实时音频数据块并发送到阿里云ASR服务进行语音识别。
-     * 如果是第一次调用，会初始化ASR连接和相关参数。
+     * 如果是第一次调用，会从预热池取用已就绪的ASR会话（池空时现场建立连接）。
      * 
      * @param data 音频数据块
      * @param sessionId 会话ID，用于标识不同的用户会话
      */
+    @Override
     public void process(byte[] data,String sessionId) {
         try {
             this.sessionId = sessionId;
             if(!isRecording) {
+                //从预热池取一个已建立连接并 start 的会话，池空时现场创建；失败时保持未录音状态，下一帧重新获取
+                transcriber = speechTranscriberPool.acquire(getTranscriberListener());
                 isRecording = true;
-                //创建实例、建立连接。
-                transcriber = new SpeechTranscriber(client, getTranscriberListener());
-                transcriber.setAppKey(appKey);
-                //输入音频编码方式。
-                transcriber.setFormat(InputFormatEnum.PCM);
-                //输入音频采样率。
-                transcriber.setSampleRate(SampleRateEnum.SAMPLE_RATE_16K);
-                //是否返回中间识别结果。
-                transcriber.setEnableIntermediateResult(false);
-                //是否生成并返回标点符号。
-                transcriber.setEnablePunctuation(true);
-                //是否将返回结果规整化，比如将一百返回为100。
-                transcriber.setEnableITN(false);
-
-                //设置vad断句参数。默认值：800ms，有效值：200ms～6000ms。
-                //transcriber.addCustomedParam("max_sentence_silence", 600);
-                //设置是否语义断句。
-                //transcriber.addCustomedParam("enable_semantic_sentence_detection",false);
-                //设置是否开启过滤语气词，即声音顺滑。
-                //transcriber.addCustomedParam("disfluency",true);
-                //设置是否开启词模式。
-                //transcriber.addCustomedParam("enable_words",true);
-                //设置vad噪音阈值参数，参数取值为-1～+1，如-0.9、-0.8、0.2、0.9。
-                //取值越趋于-1，判定为语音的概率越大，亦即有可能更多噪声被当成语音被误识别。
-                //取值越趋于+1，判定为噪音的越多，亦即有可能更多语音段被当成噪音被拒绝识别。
-                //该参数属高级参数，调整需慎重和重点测试。
-                //transcriber.addCustomedParam("speech_noise_threshold",0.3);
-                //设置训练后的定制语言模型id。
-                //transcriber.addCustomedParam("customization_id","你的定制语言模型id");
-                //设置训练后的定制热词id。
-                //transcriber.addCustomedParam("vocabulary_id","你的定制热词id");
-
-                // 应用定制模型与热词词表（如已配置）
-                applyHotwordAndCustomization(transcriber);
-                //此方法将以上参数设置序列化为JSON发送给服务端，并等待服务端确认。
-                transcriber.start();
             }
             byte[] b = data;
             int len = b.length;
-            logger.info("send data pack length: " + len);
+            logger.debug("send data pack length: {}", len);
             transcriber.send(b, len);
             //本案例用读取本地文件的形式模拟实时获取语音流并发送的，因为读取速度较快，这里需要设置sleep。
             //如果实时获取语音则无需设置sleep, 如果是8k采样率语音第二个参数设置为8000。
@@ -508,40 +622,35 @@ public class WebSocketSpeechTranscriber {
 
             //通知服务端语音数据发送完毕，等待服务端处理完成。
         } catch (Exception e) {
-            System.err.println(e.getMessage());
-        } finally {
-
+            logger.warn("发送识别音频失败: sessionId={}, {}", sessionId, e.toString());
         }
     }
 
     /**
-     * 应用定制模型与热词词表
-     * 
-     * 在ASR启动前应用定制语言模型和热词词表，以提高特定领域或术语的识别准确率。
-     * 
-     * @param transcriber 语音识别器实例
+     * 结束识别并释放识别连接（NlsClient 为全局共享，不在这里关闭），stop 失败时也会关闭连接
      */
-    private void applyHotwordAndCustomization(SpeechTranscriber transcriber) {
+    @Override
+    public void close() {
         try {
-            if (customizationId != null && !customizationId.isBlank()) {
-                logger.info("Apply customization_id: {}", customizationId);
-                transcriber.addCustomedParam("customization_id", customizationId);
+            if (transcriber != null) {
+                transcriber.stop();
             }
-            if (vocabularyId != null && !vocabularyId.isBlank()) {
-                logger.info("Apply vocabulary_id: {}", vocabularyId);
-                transcriber.addCustomedParam("vocabulary_id", vocabularyId);
+        } catch (Exception e) {
+            logger.warn("结束识别失败: {}", e.toString());
+        } finally {
+            if (transcriber != null) {
+                transcriber.close();
             }
-        } catch (Exception ex) {
-            logger.warn("Apply hotword/customization failed: {}", ex.toString());
+            shutdown();
         }
     }
 
-    public void shutdown() {
-        client.shutdown();
-        try {
-            sendExecutor.shutdownNow();
-            sendExecutor.awaitTermination(500, TimeUnit.MILLISECONDS);
-        } catch (Exception ignored) {}
+    /**
+     * 连接关闭时丢弃尚未发送的消息。播放与回调队列不关闭：剩余分段会因连接已关闭而跳过，
+     * 进行中的回复结束后仍需上传本轮音频，队列清空后不再占用任何线程
+     */
+    private void shutdown() {
+        sendQueue.close();
     }
 
 }
@@ -0,0 +1,43 @@
+package com.tanxian.llm;
+
+import java.util.Arrays;
+
+/**
+ * 最近 N 个延迟样本的环形缓冲，用于估算分位数
+ */
+class LatencyWindow {
+
+    private final long[] samples;
+    private int next;
+    private int size;
+
+    LatencyWindow(int capacity) {
+        this.samples = new long[Math.max(1, capacity)];
+    }
+
+    synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) {
+            size++;
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param quantile 0~1
+     * @return 分位数，没有样本时返回 -1
+     */
+    synchronized long quantile(double quantile) {
+        if (size == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int idx = (int) Math.ceil(quantile * size) - 1;
+        return sorted[Math.min(size - 1, Math.max(0, idx))];
+    }
+}
@@ -0,0 +1,168 @@
+package com.tanxian.llm;
+
+import dev.langchain4j.model.chat.StreamingChatModel;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 路由中的一个模型端点及其运行状态
+ *
+ * 首 token 延迟与错误率用 EWMA 平滑；熔断器三态：
+ * 关闭（正常放行）-> 连续失败达到阈值后打开（拒绝）-> 打开期满后半开（只放行一个探测请求）-> 探测成功关闭，失败重新打开。
+ */
+public class LlmEndpoint {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final StreamingChatModel model;
+    private final double alpha;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final long idleDecayMillis;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private double ttftEwmaMillis;
+    private double errorRateEwma;
+    private int consecutiveFailures;
+    private State state = State.CLOSED;
+    private long openUntil;
+    private boolean probeInFlight;
+    private long lastAcquired;
+
+    LlmEndpoint(String name, StreamingChatModel model, double alpha, double initialTtftMillis,
+                int failureThreshold, long openMillis, long idleDecayMillis) {
+        this.name = name;
+        this.model = model;
+        this.alpha = alpha;
+        this.ttftEwmaMillis = initialTtftMillis;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.idleDecayMillis = idleDecayMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    StreamingChatModel getModel() {
+        return model;
+    }
+
+    /**
+     * 熔断器是否放行本次请求；半开状态下只放行一个探测请求，放行即占用探测名额
+     */
+    synchronized boolean tryAcquire(long now) {
+        if (state == State.OPEN) {
+            if (now < openUntil) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+        }
+        inFlight.incrementAndGet();
+        lastAcquired = now;
+        return true;
+    }
+
+    /**
+     * 当前状态下是否可能被选中（不占用探测名额）
+     */
+    synchronized boolean isAvailable(long now) {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> now >= openUntil;
+            case HALF_OPEN -> !probeInFlight;
+        };
+    }
+
+    /**
+     * 选择代价：首 token 延迟 EWMA ×（进行中请求数 + 1），再按成功率放大。
+     * 空闲端点的代价随空闲时间指数衰减，保证一段时间没被选中的端点（如刚恢复的）会重新获得流量来更新观测值
+     */
+    synchronized double cost(long now) {
+        double successRate = Math.max(0.05, 1 - errorRateEwma);
+        double cost = ttftEwmaMillis * (inFlight.get() + 1) / successRate;
+        if (inFlight.get() == 0 && idleDecayMillis > 0) {
+            cost *= Math.exp(-(double) Math.max(0, now - lastAcquired) / idleDecayMillis);
+        }
+        return cost;
+    }
+
+    synchronized void recordFirstToken(long ttftMillis) {
+        ttftEwmaMillis = alpha * ttftMillis + (1 - alpha) * ttftEwmaMillis;
+    }
+
+    synchronized void recordSuccess() {
+        inFlight.decrementAndGet();
+        errorRateEwma = (1 - alpha) * errorRateEwma;
+        consecutiveFailures = 0;
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * 请求在出结果之前被放弃（对冲落败），或因请求本身的错误（参数错误、审核拒绝等）失败，
+     * 不计入成功或失败；半开探测以这种方式结束时释放探测名额
+     */
+    synchronized void recordCancelled() {
+        inFlight.decrementAndGet();
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * @return 本次失败是否导致熔断打开
+     */
+    synchronized boolean recordFailure(long now) {
+        inFlight.decrementAndGet();
+        errorRateEwma = alpha + (1 - alpha) * errorRateEwma;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openUntil = now + openMillis;
+            probeInFlight = false;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized double ttftMillis() {
+        return ttftEwmaMillis;
+    }
+
+    synchronized double errorRate() {
+        return errorRateEwma;
+    }
+
+    /**
+     * 指标用的状态值：0 关闭，1 半开，2 打开
+     */
+    synchronized int stateCode() {
+        return switch (state) {
+            case CLOSED -> 0;
+            case HALF_OPEN -> 1;
+            case OPEN -> 2;
+        };
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,468 @@
+package com.tanxian.llm;
+
+import com.tanxian.config.LlmRoutingProperties;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.NonRetriableException;
+import dev.langchain4j.exception.RetriableException;
+import dev.langchain4j.exception.UnresolvedModelServerException;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多端点路由的流式对话模型
+ *
+ * 每次请求从未熔断的端点中随机取两个，选择代价较低的一个（Power of Two Choices + 峰值 EWMA）：
+ * 代价 = 首 token 延迟 EWMA ×（进行中请求数 + 1）/ 成功率 EWMA，既偏向快的端点，又不会把流量全部压到同一个端点；
+ * 空闲端点的代价随时间衰减，恢复后的端点能重新被选中。
+ *
+ * 收到首 token 之前出错或超过 first-token-timeout，换一个端点重试（最多 max-attempts 个），
+ * 上层只会看到成功端点的输出；已经开始输出后出错则直接向上层报告。
+ * 只有超时、网络错误、5xx、429 等端点本身的问题才切换端点并计入熔断；参数错误、内容审核拒绝、鉴权失败等
+ * 请求本身的错误换端点也不会成功，直接报告给上层，也不影响端点的错误率和熔断状态。
+ *
+ * 启用对冲时，若超过近期首 token 延迟的分位数仍未收到首 token，再向另一个端点（只有一个端点时为同一端点）
+ * 发出相同请求，先收到首 token 的一方胜出，另一方被放弃；对冲次数受预算限制，不超过请求总数的一定比例。
+ * 超时或落败的请求无法中途取消，其后续回调会被忽略。
+ */
+@Slf4j
+public class RoutingStreamingChatModel implements StreamingChatModel {
+
+    private static final int PHASE_WAITING = 0;
+    private static final int PHASE_STREAMING = 1;
+    private static final int PHASE_DONE = 2;
+
+    // 样本太少时分位数不可靠，先用 initial-ttft 作为对冲延迟
+    private static final int MIN_HEDGE_SAMPLES = 20;
+
+    private final List<LlmEndpoint> endpoints;
+    private final LlmRoutingProperties properties;
+    private final LlmRoutingProperties.Hedge hedge;
+    private final LatencyWindow ttftWindow;
+    private final Counter routedCounter;
+    private final Counter failoverCounter;
+    private final Counter hedgeStartedCounter;
+    private final Counter hedgeWonCounter;
+    private final Counter hedgeBudgetExhaustedCounter;
+    private final Map<String, Counter> successCounters;
+    private final Map<String, Counter> errorCounters;
+
+    private final Object hedgeBudgetLock = new Object();
+    private double hedgeBudget;
+
+    public RoutingStreamingChatModel(Map<String, StreamingChatModel> models, LlmRoutingProperties properties,
+                                     MeterRegistry meterRegistry) {
+        if (models.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个模型端点");
+        }
+        this.properties = properties;
+        this.hedge = properties.getHedge();
+        this.ttftWindow = new LatencyWindow(hedge.getWindowSize());
+        List<LlmEndpoint> list = new ArrayList<>();
+        Map<String, Counter> successes = new HashMap<>();
+        Map<String, Counter> errors = new HashMap<>();
+        models.forEach((name, model) -> {
+            LlmEndpoint endpoint = new LlmEndpoint(name, model, properties.getEwmaAlpha(),
+                    properties.getInitialTtft().toMillis(), properties.getFailureThreshold(),
+                    properties.getOpenDuration().toMillis(), properties.getIdleDecay().toMillis());
+            list.add(endpoint);
+            Gauge.builder("chat.llm.endpoint.ttft", endpoint, LlmEndpoint::ttftMillis).tag("endpoint", name)
+                    .baseUnit("milliseconds").description("端点首 token 延迟 EWMA").register(meterRegistry);
+            Gauge.builder("chat.llm.endpoint.error.rate", endpoint, LlmEndpoint::errorRate).tag("endpoint", name)
+                    .description("端点错误率 EWMA").register(meterRegistry);
+            Gauge.builder("chat.llm.endpoint.state", endpoint, LlmEndpoint::stateCode).tag("endpoint", name)
+                    .description("端点熔断状态：0 关闭，1 半开，2 打开").register(meterRegistry);
+            Gauge.builder("chat.llm.endpoint.inflight", endpoint, LlmEndpoint::inFlight).tag("endpoint", name)
+                    .description("端点进行中的请求数").register(meterRegistry);
+            successes.put(name, Counter.builder("chat.llm.requests").tag("endpoint", name).tag("result", "success")
+                    .description("端点请求结果").register(meterRegistry));
+            errors.put(name, Counter.builder("chat.llm.requests").tag("endpoint", name).tag("result", "error")
+                    .description("端点请求结果").register(meterRegistry));
+        });
+        this.endpoints = List.copyOf(list);
+        this.successCounters = Map.copyOf(successes);
+        this.errorCounters = Map.copyOf(errors);
+        this.routedCounter = Counter.builder("chat.llm.routed")
+                .description("经过路由的对话请求数").register(meterRegistry);
+        this.failoverCounter = Counter.builder("chat.llm.failover")
+                .description("首 token 之前切换端点的次数").register(meterRegistry);
+        this.hedgeStartedCounter = Counter.builder("chat.llm.hedge").tag("result", "started")
+                .description("发出的对冲请求数").register(meterRegistry);
+        this.hedgeWonCounter = Counter.builder("chat.llm.hedge").tag("result", "won")
+                .description("对冲请求先于原请求收到首 token 的次数").register(meterRegistry);
+        this.hedgeBudgetExhaustedCounter = Counter.builder("chat.llm.hedge").tag("result", "budget_exhausted")
+                .description("因预算不足未发出的对冲请求数").register(meterRegistry);
+        this.hedgeBudget = hedge.getBudgetBurst();
+        log.info("模型路由已启用，端点: {}，对冲请求: {}", endpoints, hedge.isEnabled() ? "启用" : "关闭");
+    }
+
+    /**
+     * 注册引用本实例的指标，需在构造完成后调用，避免在构造器中泄露未初始化完的 this
+     */
+    public void registerGauges(MeterRegistry meterRegistry) {
+        Gauge.builder("chat.llm.hedge.delay", this, RoutingStreamingChatModel::hedgeDelayMillis)
+                .baseUnit("milliseconds").description("当前对冲延迟").register(meterRegistry);
+    }
+
+    @Override
+    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        routedCounter.increment();
+        if (hedge.isEnabled()) {
+            depositHedgeBudget();
+        }
+        new RoutedRequest(chatRequest, handler).start();
+    }
+
+    /**
+     * 选择端点：在可用端点中随机取两个比较代价，已尝试过的端点不再选择；全部熔断时返回 null
+     */
+    LlmEndpoint select(Set<LlmEndpoint> tried) {
+        long now = System.currentTimeMillis();
+        List<LlmEndpoint> candidates = new ArrayList<>(endpoints.size());
+        for (LlmEndpoint endpoint : endpoints) {
+            if (!tried.contains(endpoint) && endpoint.isAvailable(now)) {
+                candidates.add(endpoint);
+            }
+        }
+        while (!candidates.isEmpty()) {
+            LlmEndpoint chosen;
+            if (candidates.size() == 1) {
+                chosen = candidates.get(0);
+            } else {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int i = random.nextInt(candidates.size());
+                int j = random.nextInt(candidates.size() - 1);
+                if (j >= i) {
+                    j++;
+                }
+                LlmEndpoint a = candidates.get(i);
+                LlmEndpoint b = candidates.get(j);
+                chosen = a.cost(now) <= b.cost(now) ? a : b;
+            }
+            if (chosen.tryAcquire(now)) {
+                return chosen;
+            }
+            // 半开端点的探测名额被并发请求抢走，换一个
+            candidates.remove(chosen);
+        }
+        return null;
+    }
+
+    /**
+     * 对冲延迟：近期首 token 延迟的分位数，不低于 min-delay，不超过 first-token-timeout
+     */
+    long hedgeDelayMillis() {
+        long delay = ttftWindow.size() >= MIN_HEDGE_SAMPLES
+                ? ttftWindow.quantile(hedge.getPercentile())
+                : properties.getInitialTtft().toMillis();
+        delay = Math.max(delay, hedge.getMinDelay().toMillis());
+        return Math.min(delay, properties.getFirstTokenTimeout().toMillis());
+    }
+
+    /**
+     * 错误是否由端点本身引起（超时、网络错误、5xx、429），只有这类错误才值得换端点重试并计入熔断
+     */
+    static boolean isEndpointFailure(Throwable error) {
+        if (error instanceof TimeoutException || error instanceof RetriableException
+                || error instanceof UnresolvedModelServerException) {
+            return true;
+        }
+        if (error instanceof HttpException httpException) {
+            int status = httpException.statusCode();
+            return status >= 500 || status == 429;
+        }
+        if (error instanceof NonRetriableException) {
+            return false;
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 对冲预算：每个请求存入 budget-percent/100 次，发出一次对冲消耗 1 次，最多累积 budget-burst 次
+     */
+    private void depositHedgeBudget() {
+        synchronized (hedgeBudgetLock) {
+            hedgeBudget = Math.min(hedge.getBudgetBurst(), hedgeBudget + hedge.getBudgetPercent() / 100d);
+        }
+    }
+
+    private boolean tryWithdrawHedgeBudget() {
+        synchronized (hedgeBudgetLock) {
+            if (hedgeBudget < 1) {
+                return false;
+            }
+            hedgeBudget -= 1;
+            return true;
+        }
+    }
+
+    /**
+     * 一次路由请求：首 token 之前可能依次（失败切换）或同时（对冲）在多个端点上尝试，只有胜出的尝试输出给上层
+     */
+    private class RoutedRequest {
+
+        private final ChatRequest request;
+        private final StreamingChatResponseHandler downstream;
+        private final Set<LlmEndpoint> tried = new HashSet<>();
+        private final List<Attempt> attempts = new ArrayList<>();
+        // 尚未出结果（未收到首 token 也未失败）的尝试数
+        private int waiting;
+        private Attempt winner;
+        private boolean hedged;
+        private Disposable hedgeTimer;
+
+        private RoutedRequest(ChatRequest request, StreamingChatResponseHandler downstream) {
+            this.request = request;
+            this.downstream = downstream;
+        }
+
+        private synchronized void start() {
+            LlmEndpoint endpoint = select(tried);
+            if (endpoint == null) {
+                downstream.onError(new IllegalStateException("没有可用的模型端点（全部熔断）"));
+                return;
+            }
+            if (hedge.isEnabled()) {
+                hedgeTimer = Schedulers.parallel().schedule(this::hedge, hedgeDelayMillis(), TimeUnit.MILLISECONDS);
+            }
+            launch(endpoint, false);
+        }
+
+        /**
+         * 首 token 之前失败：还有其他尝试在等待时交给它们，否则切换到下一个端点
+         */
+        private synchronized void attemptFailed(Throwable error) {
+            waiting--;
+            if (winner != null || waiting > 0) {
+                return;
+            }
+            LlmEndpoint endpoint = tried.size() < properties.getMaxAttempts() ? select(tried) : null;
+            if (endpoint == null) {
+                finish();
+                downstream.onError(error);
+                return;
+            }
+            failoverCounter.increment();
+            log.warn("模型端点首 token 前失败，切换到 {}: {}", endpoint, error.toString());
+            launch(endpoint, false);
+        }
+
+        /**
+         * 首 token 之前因请求本身的错误失败：换端点也不会成功，结束整个请求并放弃其余尝试
+         *
+         * @return 是否由本次尝试向上层报告错误（其他尝试已胜出时返回 false）
+         */
+        private synchronized boolean reject(Attempt attempt) {
+            waiting--;
+            if (winner != null) {
+                return false;
+            }
+            winner = attempt;
+            finish();
+            for (Attempt other : attempts) {
+                if (other != attempt) {
+                    other.abandon();
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 尝试收到首 token（或直接完成）时争夺胜出权，胜出后放弃其余仍在等待的尝试
+         */
+        private synchronized boolean claim(Attempt attempt) {
+            if (winner != null) {
+                return false;
+            }
+            winner = attempt;
+            waiting--;
+            finish();
+            if (attempt.hedge) {
+                hedgeWonCounter.increment();
+            }
+            for (Attempt other : attempts) {
+                if (other != attempt) {
+                    other.abandon();
+                }
+            }
+            return true;
+        }
+
+        private synchronized void hedge() {
+            if (winner != null || waiting == 0 || hedged) {
+                return;
+            }
+            if (!tryWithdrawHedgeBudget()) {
+                hedgeBudgetExhaustedCounter.increment();
+                return;
+            }
+            LlmEndpoint endpoint = select(tried);
+            if (endpoint == null) {
+                // 没有其他可用端点时，在原端点上再发一次相同请求
+                endpoint = select(Set.of());
+            }
+            if (endpoint == null) {
+                return;
+            }
+            hedged = true;
+            hedgeStartedCounter.increment();
+            log.debug("首 token 超过 {}ms 未到，向 {} 发出对冲请求", hedgeDelayMillis(), endpoint);
+            launch(endpoint, true);
+        }
+
+        private void launch(LlmEndpoint endpoint, boolean hedge) {
+            tried.add(endpoint);
+            waiting++;
+            Attempt attempt = new Attempt(this, endpoint, hedge);
+            attempts.add(attempt);
+            try {
+                endpoint.getModel().chat(request, attempt);
+            } catch (RuntimeException e) {
+                attempt.onError(e);
+            }
+        }
+
+        private void finish() {
+            if (hedgeTimer != null) {
+                hedgeTimer.dispose();
+            }
+        }
+    }
+
+    /**
+     * 单个端点上的一次尝试
+     */
+    private class Attempt implements StreamingChatResponseHandler {
+
+        private final RoutedRequest routed;
+        private final LlmEndpoint endpoint;
+        private final boolean hedge;
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger phase = new AtomicInteger(PHASE_WAITING);
+        private final Disposable firstTokenTimer;
+
+        private Attempt(RoutedRequest routed, LlmEndpoint endpoint, boolean hedge) {
+            this.routed = routed;
+            this.endpoint = endpoint;
+            this.hedge = hedge;
+            this.firstTokenTimer = Schedulers.parallel().schedule(this::onFirstTokenTimeout,
+                    properties.getFirstTokenTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void onPartialResponse(String partialResponse) {
+            if (phase.get() == PHASE_WAITING && phase.compareAndSet(PHASE_WAITING, PHASE_STREAMING)) {
+                firstTokenTimer.dispose();
+                recordFirstToken();
+                if (!routed.claim(this)) {
+                    // 对冲落败：端点本身是健康的，按成功计入后放弃
+                    phase.set(PHASE_DONE);
+                    endpoint.recordSuccess();
+                    return;
+                }
+            }
+            if (phase.get() == PHASE_STREAMING) {
+                routed.downstream.onPartialResponse(partialResponse);
+            }
+        }
+
+        @Override
+        public void onCompleteResponse(ChatResponse completeResponse) {
+            int previous = phase.getAndSet(PHASE_DONE);
+            if (previous == PHASE_DONE) {
+                return;
+            }
+            firstTokenTimer.dispose();
+            endpoint.recordSuccess();
+            if (previous == PHASE_WAITING) {
+                recordFirstToken();
+                if (!routed.claim(this)) {
+                    return;
+                }
+            }
+            successCounters.get(endpoint.getName()).increment();
+            routed.downstream.onCompleteResponse(completeResponse);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            int previous = phase.getAndSet(PHASE_DONE);
+            if (previous == PHASE_DONE) {
+                return;
+            }
+            firstTokenTimer.dispose();
+            if (!isEndpointFailure(error)) {
+                errorCounters.get(endpoint.getName()).increment();
+                endpoint.recordCancelled();
+                if (previous == PHASE_STREAMING || routed.reject(this)) {
+                    routed.downstream.onError(error);
+                }
+                return;
+            }
+            fail(error);
+            if (previous == PHASE_WAITING) {
+                routed.attemptFailed(error);
+            } else {
+                routed.downstream.onError(error);
+            }
+        }
+
+        /**
+         * 其他尝试已胜出，放弃仍在等待首 token 的本次尝试
+         */
+        private void abandon() {
+            if (phase.compareAndSet(PHASE_WAITING, PHASE_DONE)) {
+                firstTokenTimer.dispose();
+                endpoint.recordCancelled();
+            }
+        }
+
+        private void onFirstTokenTimeout() {
+            if (!phase.compareAndSet(PHASE_WAITING, PHASE_DONE)) {
+                return;
+            }
+            // 超时本身计入延迟观测，避免慢端点的 EWMA 因为没有首 token 而一直偏低
+            recordFirstToken();
+            TimeoutException timeout = new TimeoutException("等待首 token 超时: " + endpoint);
+            fail(timeout);
+            routed.attemptFailed(timeout);
+        }
+
+        private void recordFirstToken() {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            endpoint.recordFirstToken(elapsed);
+            ttftWindow.record(elapsed);
+        }
+
+        private void fail(Throwable error) {
+            errorCounters.get(endpoint.getName()).increment();
+            if (endpoint.recordFailure(System.currentTimeMillis())) {
+                log.warn("模型端点 {} 已熔断 {}，最近错误: {}", endpoint, properties.getOpenDuration(), error.toString());
+            }
+        }
+    }
+}
@@ -3,8 +3,7 @@ package com.tanxian.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.tanxian.entity.ChatMessage;
 import com.tanxian.resp.ChatMessageResp;
-import com.tanxian.service.impl.MyChatMemoryStoreImpl;
-import io.lettuce.core.dynamic.annotation.Param;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
 import java.util.List;
@@ -12,4 +11,30 @@ import java.util.List;
 public interface ChatMessageMapper extends BaseMapper<ChatMessage> {
     @Select("SELECT * FROM chat_messages WHERE session_id = #{sessionId} ORDER BY created_at ASC")
     List<ChatMessageResp> findBySessionId(@Param("sessionId") String sessionId);
+
+    /**
+     * 多行批量插入消息，(session_id, seq) 已存在的行保持不变，重放日志时幂等；其他错误照常抛出
+     * @param messages 待插入的消息
+     * @return 插入行数
+     */
+    int insertBatch(@Param("list") List<ChatMessage> messages);
+
+    /**
+     * 查询会话当前最大的消息序号
+     * @param sessionId 会话ID
+     * @return 最大序号，没有消息时为 0
+     */
+    @Select("SELECT COALESCE(MAX(seq), 0) FROM chat_messages WHERE session_id = #{sessionId}")
+    long selectMaxSeq(@Param("sessionId") String sessionId);
+
+    /**
+     * 按 (session_id, id) 倒序键集分页查询会话最近的非系统消息
+     * @param sessionId 会话ID
+     * @param beforeId 只查询 id 小于该值的消息，为空时从最新一条开始
+     * @param limit 最多返回条数
+     * @return 按 id 倒序排列的消息
+     */
+    List<ChatMessage> selectRecentBySessionId(@Param("sessionId") String sessionId,
+                                              @Param("beforeId") Long beforeId,
+                                              @Param("limit") int limit);
 }
@@ -0,0 +1,115 @@
+package com.tanxian.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.TokenCountEstimator;
+
+/**
+ * 本地 token 数估算（面向通义千问，离线、无网络调用）
+ *
+ * 千问使用字节级 BPE 词表，常用汉字词组大多合并为单个 token，经验上每个汉字约 0.7 个 token；
+ * 英文单词约每 4 个字母一个 token，数字按位拆分，标点与表情各自计数。
+ * 每条消息另计 chat 模板的固定开销（&lt;|im_start|&gt;role\n ... &lt;|im_end|&gt;\n）。
+ * 结果只用于预算控制，允许与服务端计数有少量偏差。
+ */
+public class QwenTokenCountEstimator implements TokenCountEstimator {
+
+    // 每条消息的模板开销
+    private static final int TOKENS_PER_MESSAGE = 5;
+    // 每次请求末尾为助手回复预置的 <|im_start|>assistant\n
+    private static final int TOKENS_PER_REQUEST = 3;
+    // 汉字按千分之七百计
+    private static final int CJK_TOKENS_PER_MILLE = 700;
+
+    @Override
+    public int estimateTokenCountInText(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        long cjkChars = 0;
+        long tokens = 0;
+        int letterRun = 0;
+        boolean inNewlines = false;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+
+            if (isAsciiLetter(cp)) {
+                letterRun++;
+                inNewlines = false;
+                continue;
+            }
+            tokens += (letterRun + 3) / 4;
+            letterRun = 0;
+
+            if (cp == '\n') {
+                // 连续换行通常合并为一个 token
+                if (!inNewlines) {
+                    tokens++;
+                }
+                inNewlines = true;
+                continue;
+            }
+            inNewlines = false;
+            if (Character.isWhitespace(cp)) {
+                // 空格一般并入后一个单词
+                continue;
+            }
+            if (isCjkIdeograph(cp)) {
+                cjkChars++;
+            } else if (cp < 0x80 || isCjkPunctuation(cp)) {
+                tokens++;
+            } else {
+                // 表情、生僻符号等通常被拆为多个字节 token
+                tokens += 2;
+            }
+        }
+        tokens += (letterRun + 3) / 4;
+        tokens += (cjkChars * CJK_TOKENS_PER_MILLE + 999) / 1000;
+        return (int) Math.min(Integer.MAX_VALUE, tokens);
+    }
+
+    @Override
+    public int estimateTokenCountInMessage(ChatMessage message) {
+        return TOKENS_PER_MESSAGE + estimateTokenCountInText(textOf(message));
+    }
+
+    @Override
+    public int estimateTokenCountInMessages(Iterable<ChatMessage> messages) {
+        int tokens = TOKENS_PER_REQUEST;
+        for (ChatMessage message : messages) {
+            tokens += estimateTokenCountInMessage(message);
+        }
+        return tokens;
+    }
+
+    private static String textOf(ChatMessage message) {
+        if (message instanceof SystemMessage systemMessage) {
+            return systemMessage.text();
+        }
+        if (message instanceof UserMessage userMessage) {
+            return userMessage.hasSingleText() ? userMessage.singleText() : userMessage.toString();
+        }
+        if (message instanceof AiMessage aiMessage) {
+            return aiMessage.text() != null ? aiMessage.text() : aiMessage.toString();
+        }
+        return message.toString();
+    }
+
+    private static boolean isAsciiLetter(int cp) {
+        return (cp >= 'a' && cp <= 'z') || (cp >= 'A' && cp <= 'Z');
+    }
+
+    private static boolean isCjkIdeograph(int cp) {
+        return (cp >= 0x4E00 && cp <= 0x9FFF)
+                || (cp >= 0x3400 && cp <= 0x4DBF)
+                || (cp >= 0xF900 && cp <= 0xFAFF)
+                || (cp >= 0x20000 && cp <= 0x2FA1F);
+    }
+
+    private static boolean isCjkPunctuation(int cp) {
+        return (cp >= 0x3000 && cp <= 0x303F) || (cp >= 0xFF00 && cp <= 0xFFEF) || (cp >= 0x2000 && cp <= 0x206F);
+    }
+}
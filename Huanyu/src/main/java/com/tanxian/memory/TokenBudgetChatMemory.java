@@ -0,0 +1,111 @@
+package com.tanxian.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.TokenCountEstimator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按 token 预算裁剪发送给模型的记忆
+ *
+ * 存储仍由内部的消息窗口记忆负责（条数上限 + 滚动摘要），这里只在 AiServices 组装请求
+ * 调用 messages() 时，保留系统消息并从最新消息向前累加，超出预算的更早消息不再发送。
+ * 这样不同用户的 prompt 长度有稳定上限，首 token 延迟不再随消息长短大幅波动。
+ */
+@Slf4j
+public class TokenBudgetChatMemory implements ChatMemory {
+
+    private final ChatMemory delegate;
+    private final int maxTokens;
+    private final TokenCountEstimator estimator;
+    private final DistributionSummary promptTokens;
+    private final Counter trimmedMessages;
+
+    public TokenBudgetChatMemory(ChatMemory delegate, int maxTokens, TokenCountEstimator estimator,
+                                 String character, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxTokens = maxTokens;
+        this.estimator = estimator;
+        this.promptTokens = DistributionSummary.builder("chat.prompt.tokens")
+                .tag("character", character)
+                .baseUnit("tokens")
+                .description("发送给模型的记忆估算 token 数")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.trimmedMessages = Counter.builder("chat.prompt.trimmed")
+                .tag("character", character)
+                .description("因超出 token 预算未发送的消息数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Object id() {
+        return delegate.id();
+    }
+
+    @Override
+    public void add(ChatMessage message) {
+        delegate.add(message);
+    }
+
+    @Override
+    public List<ChatMessage> messages() {
+        List<ChatMessage> messages = delegate.messages();
+        if (messages.isEmpty()) {
+            return messages;
+        }
+
+        int start = 0;
+        int tokens = estimator.estimateTokenCountInMessages(List.of());
+        SystemMessage systemMessage = null;
+        if (messages.get(0) instanceof SystemMessage first) {
+            systemMessage = first;
+            tokens += estimator.estimateTokenCountInMessage(first);
+            start = 1;
+        }
+
+        // 从最新消息向前累加，至少保留最后一条（本轮用户输入）
+        int keepFrom = messages.size();
+        for (int i = messages.size() - 1; i >= start; i--) {
+            int messageTokens = estimator.estimateTokenCountInMessage(messages.get(i));
+            if (keepFrom < messages.size() && tokens + messageTokens > maxTokens) {
+                break;
+            }
+            tokens += messageTokens;
+            keepFrom = i;
+        }
+        // 保留部分从用户消息开始，不发送缺少提问的孤立回复
+        while (keepFrom < messages.size() - 1 && !(messages.get(keepFrom) instanceof UserMessage)) {
+            tokens -= estimator.estimateTokenCountInMessage(messages.get(keepFrom));
+            keepFrom++;
+        }
+
+        int trimmed = keepFrom - start;
+        promptTokens.record(tokens);
+        if (trimmed == 0) {
+            return messages;
+        }
+        trimmedMessages.increment(trimmed);
+        log.debug("会话 {} 超出 token 预算 {}，本次少发送 {} 条较早消息，估算 {} tokens", id(), maxTokens, trimmed, tokens);
+
+        List<ChatMessage> result = new ArrayList<>(messages.size() - trimmed);
+        if (systemMessage != null) {
+            result.add(systemMessage);
+        }
+        result.addAll(messages.subList(keepFrom, messages.size()));
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+}
@@ -0,0 +1,205 @@
+package com.tanxian.prompt;
+
+import com.tanxian.character.CharacterProfile;
+import com.tanxian.character.CharacterRegistry;
+import com.tanxian.config.PromptProperties;
+import com.tanxian.exception.BusinessException;
+import com.tanxian.exception.BusinessExceptionEnum;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 角色提示词模板注册表
+ *
+ * 启动时一次性加载所有模板到内存，读取时直接访问不可变快照，无锁。
+ * 配置了外部目录时，同名文件优先于 classpath，并监听目录变化：内容变化的模板生成新版本，
+ * 整体替换快照；读取失败或内容为空时保留旧版本，修改提示词无需重新部署。
+ */
+@Component
+@Slf4j
+public class PromptRegistry {
+
+    private static final String CLASSPATH_DIR = "prompt/";
+    // 编辑器保存文件时通常会产生多个事件，稍等片刻后合并处理
+    private static final long RELOAD_DEBOUNCE_MS = 200;
+
+    @Autowired
+    private PromptProperties promptProperties;
+
+    @Autowired
+    private CharacterRegistry characterRegistry;
+
+    private final AtomicLong versionSeq = new AtomicLong();
+    private volatile Map<String, PromptTemplate> templates = Map.of();
+    private WatchService watchService;
+
+    @PostConstruct
+    public void init() {
+        Map<String, PromptTemplate> loaded = new HashMap<>();
+        for (CharacterProfile character : characterRegistry.all()) {
+            String key = character.getKey();
+            String fileName = character.getPromptFile();
+            Source source = read(fileName);
+            if (source == null) {
+                log.error("提示词模板不存在或内容为空: {} -> {}", key, fileName);
+                throw new BusinessException(BusinessExceptionEnum.SYSTEM_MESSAGE_TEMPLATE_NOT_FOUND);
+            }
+            loaded.put(key, new PromptTemplate(key, source.content, versionSeq.incrementAndGet(), source.location));
+            log.info("已加载提示词模板: {} -> {}", key, source.location);
+        }
+        templates = Map.copyOf(loaded);
+        startWatcher();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("关闭提示词目录监听失败", e);
+            }
+        }
+    }
+
+    /**
+     * 获取模板，未配置的key返回 null
+     */
+    public PromptTemplate get(String key) {
+        return templates.get(key);
+    }
+
+    /**
+     * 重新读取所有模板，只有内容变化的模板才会生成新版本
+     */
+    public synchronized void reload() {
+        Map<String, PromptTemplate> current = templates;
+        Map<String, PromptTemplate> next = new HashMap<>(current);
+        boolean changed = false;
+        for (CharacterProfile character : characterRegistry.all()) {
+            String key = character.getKey();
+            Source source = read(character.getPromptFile());
+            if (source == null) {
+                log.warn("提示词模板读取失败或为空，继续使用旧版本: {}", key);
+                continue;
+            }
+            PromptTemplate old = current.get(key);
+            if (old != null && old.content().equals(source.content)) {
+                continue;
+            }
+            PromptTemplate updated = new PromptTemplate(key, source.content, versionSeq.incrementAndGet(), source.location);
+            next.put(key, updated);
+            changed = true;
+            log.info("提示词模板已更新: {} -> {}，版本 {}", key, source.location, updated.version());
+        }
+        if (changed) {
+            templates = Map.copyOf(next);
+        }
+    }
+
+    /**
+     * 读取模板内容：外部目录优先，其次 classpath
+     */
+    private Source read(String fileName) {
+        try {
+            String location;
+            String raw;
+            Path external = externalDir() == null ? null : externalDir().resolve(fileName);
+            if (external != null && Files.isRegularFile(external)) {
+                location = external.toAbsolutePath().toString();
+                raw = Files.readString(external, StandardCharsets.UTF_8);
+            } else {
+                ClassPathResource resource = new ClassPathResource(CLASSPATH_DIR + fileName);
+                if (!resource.exists()) {
+                    return null;
+                }
+                location = "classpath:" + CLASSPATH_DIR + fileName;
+                try (InputStream inputStream = resource.getInputStream()) {
+                    raw = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+                }
+            }
+            String content = raw.lines().collect(Collectors.joining("\n"));
+            return StringUtils.hasText(content) ? new Source(content, location) : null;
+        } catch (IOException e) {
+            log.error("读取提示词模板失败: {}", fileName, e);
+            return null;
+        }
+    }
+
+    private Path externalDir() {
+        return StringUtils.hasText(promptProperties.getDir()) ? Paths.get(promptProperties.getDir()) : null;
+    }
+
+    private void startWatcher() {
+        Path dir = externalDir();
+        if (dir == null) {
+            return;
+        }
+        if (!Files.isDirectory(dir)) {
+            log.warn("提示词外部目录不存在，不启用热加载: {}", dir.toAbsolutePath());
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            log.error("监听提示词目录失败，不启用热加载: {}", dir.toAbsolutePath(), e);
+            return;
+        }
+        Thread watcher = new Thread(this::watchLoop, "prompt-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("提示词热加载已启用，监听目录: {}", dir.toAbsolutePath());
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Thread.sleep(RELOAD_DEBOUNCE_MS);
+                key.pollEvents();
+                WatchKey more;
+                while ((more = watchService.poll()) != null) {
+                    more.pollEvents();
+                    more.reset();
+                }
+                reload();
+                if (!key.reset()) {
+                    log.warn("提示词目录已不可访问，停止热加载");
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            log.debug("提示词目录监听已关闭");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("提示词目录监听异常退出", e);
+        }
+    }
+
+    private record Source(String content, String location) {
+    }
+}
@@ -0,0 +1,12 @@
+package com.tanxian.prompt;
+
+/**
+ * 已加载的提示词模板（不可变）
+ *
+ * @param key     模板key
+ * @param content 模板内容
+ * @param version 版本号，内容变化时递增，用于下游缓存失效
+ * @param source  来源（外部文件路径或 classpath 路径），便于排查
+ */
+public record PromptTemplate(String key, String content, long version, String source) {
+}
@@ -12,4 +12,32 @@ public interface AiChatService {
      * @return 流式响应结果
      */
     Flux<String> chat(String sessionId,String message,short type);
-}
\ No newline at end of file
+
+    /**
+     * 与AI角色进行对话，相同幂等键的重复请求共享同一次回复
+     * @param sessionId 会话ID
+     * @param message 用户消息
+     * @param type 角色类型
+     * @param idempotencyKey 客户端生成的幂等键，可为空（为空时按会话与消息内容合并进行中的请求）
+     * @return 流式响应结果
+     */
+    Flux<String> chat(String sessionId,String message,short type,String idempotencyKey);
+
+    /**
+     * 语音通话中的一轮对话，模型调用排队时优先于文字聊天
+     * @param sessionId 会话ID
+     * @param message 语音识别出的用户消息
+     * @param type 角色类型
+     * @return 流式响应结果
+     */
+    Flux<String> voiceChat(String sessionId,String message,short type);
+
+    /**
+     * 上传语音通话回复的音频（与文字聊天使用相同的文件键）
+     * @param sessionId 会话ID
+     * @param type 角色类型
+     * @param aiText 完整的回复文本
+     * @param wav 通话中逐段合成并拼接好的音频；为空时重新合成整段回复
+     */
+    void uploadVoiceReplyAudio(String sessionId,short type,String aiText,byte[] wav);
+}
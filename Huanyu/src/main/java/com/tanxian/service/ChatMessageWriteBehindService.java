@@ -0,0 +1,27 @@
+package com.tanxian.service;
+
+import com.tanxian.entity.ChatMessage;
+
+import java.util.List;
+
+/**
+ * 聊天消息异步入库服务
+ * 新消息先追加到本地日志并进入内存队列，由后台线程按批次写入 chat_messages，
+ * 调用方（LLM 流式回调线程）不再等待 MySQL
+ */
+public interface ChatMessageWriteBehindService {
+
+    /**
+     * 将待入库的消息追加到本地日志并加入队列
+     * 每条消息必须带有会话ID与会话内序号，(session_id, seq) 是重放时的去重键
+     * @param messages 待入库的消息（按时间顺序）
+     */
+    void enqueue(List<ChatMessage> messages);
+
+    /**
+     * 获取某个会话中尚未写入数据库的消息
+     * @param sessionId 会话ID
+     * @return 按入队顺序排列的待入库消息
+     */
+    List<ChatMessage> pendingMessages(String sessionId);
+}
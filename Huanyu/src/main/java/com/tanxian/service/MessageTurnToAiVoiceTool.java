@@ -1,5 +1,7 @@
 package com.tanxian.service;
 
+import com.tanxian.audio.TtsCancellation;
+
 import java.io.InputStream;
 
 public interface MessageTurnToAiVoiceTool {
@@ -17,7 +19,8 @@ public interface MessageTurnToAiVoiceTool {
      * 
      * @param message 需要转换为语音的文本消息
      * @param sessionId 会话ID，用于标识特定的对话会话
-     * @return 包含AI语音数据的输入流
+     * @param cancellation 取消句柄，取消后中止正在进行的请求且不再重试
+     * @return 包含AI语音数据的输入流，被取消或失败时为空流
      */
-    InputStream streamToAiVoice(String message, String sessionId);
+    InputStream streamToAiVoice(String message, String sessionId, TtsCancellation cancellation);
 }
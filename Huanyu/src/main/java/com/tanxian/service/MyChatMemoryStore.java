@@ -22,4 +22,11 @@ public interface MyChatMemoryStore extends ChatMemoryStore {
      * @return 可序列化的消息列表
      */
     java.util.List<MyChatMemoryStoreImpl.SerializableChatMessage> getSerializableMessages(String sessionId);
+
+    /**
+     * 获取会话所属角色的模板key
+     * @param sessionId 会话ID
+     * @return 角色模板key，如 hutao
+     */
+    String getCharacterKey(String sessionId);
 }
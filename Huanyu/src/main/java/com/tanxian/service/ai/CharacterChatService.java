@@ -1,19 +1,23 @@
 package com.tanxian.service.ai;
 
 import dev.langchain4j.service.MemoryId;
-import dev.langchain4j.service.SystemMessage;
 import dev.langchain4j.service.UserMessage;
 import dev.langchain4j.service.spring.AiService;
 import dev.langchain4j.service.spring.AiServiceWiringMode;
 import reactor.core.publisher.Flux;
 
+/**
+ * 所有角色共用的对话服务
+ *
+ * 角色差异只体现在系统提示词上，由 MyChatMemoryStore 按会话所属角色从 PromptRegistry 提供（支持热加载），
+ * 因此新增角色不需要新增接口。
+ */
 @AiService(
         wiringMode = AiServiceWiringMode.EXPLICIT,
         chatModel = "openAiChatModel",
-        streamingChatModel = "openAiStreamingChatModel",
+        streamingChatModel = "routingStreamingChatModel",
         chatMemoryProvider = "chatMemoryProvider"
 )
-public interface HuTaoService {
-    @SystemMessage(fromResource = "prompt/HuTao.md")
+public interface CharacterChatService {
     Flux<String> chat(@MemoryId String sessionId, @UserMessage String message);
 }
@@ -0,0 +1,18 @@
+package com.tanxian.service.ai;
+
+import dev.langchain4j.service.SystemMessage;
+import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.service.spring.AiService;
+import dev.langchain4j.service.spring.AiServiceWiringMode;
+
+/**
+ * 长对话记忆摘要：将滑出窗口的旧消息合并进滚动摘要，不使用会话记忆
+ */
+@AiService(
+        wiringMode = AiServiceWiringMode.EXPLICIT,
+        chatModel = "memorySummaryChatModel"
+)
+public interface MemorySummaryService {
+    @SystemMessage(fromResource = "prompt/MemorySummary.md")
+    String summarize(@UserMessage String transcript);
+}
@@ -1,19 +0,0 @@
-package com.tanxian.service.ai;
-
-import dev.langchain4j.service.MemoryId;
-import dev.langchain4j.service.SystemMessage;
-import dev.langchain4j.service.UserMessage;
-import dev.langchain4j.service.spring.AiService;
-import dev.langchain4j.service.spring.AiServiceWiringMode;
-import reactor.core.publisher.Flux;
-
-@AiService(
-        wiringMode = AiServiceWiringMode.EXPLICIT,
-        chatModel = "openAiChatModel",
-        streamingChatModel = "openAiStreamingChatModel",
-        chatMemoryProvider = "chatMemoryProvider"
-)
-public interface VentiService {
-    @SystemMessage(fromResource = "prompt/Venti.md")
-    Flux<String> chat(@MemoryId String sessionId, @UserMessage String message);
-}
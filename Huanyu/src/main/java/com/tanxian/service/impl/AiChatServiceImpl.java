@@ -1,5 +1,11 @@
 package com.tanxian.service.impl;
 
+import com.tanxian.cache.ChatResponseCache;
+import com.tanxian.character.CharacterProfile;
+import com.tanxian.chat.ChatAdmissionController;
+import com.tanxian.chat.ChatPriority;
+import com.tanxian.chat.ChatRequestCoalescer;
+import com.tanxian.character.CharacterRegistry;
 import com.tanxian.exception.BusinessException;
 import com.tanxian.exception.BusinessExceptionEnum;
 import com.tanxian.common.LoginUserContext;
@@ -8,28 +14,31 @@ import com.tanxian.service.AiChatService;
 import com.tanxian.service.MyChatMemoryStore;
 import com.tanxian.service.MessageTurnToAiVoiceTool;
 import com.tanxian.util.QiniuUploadUtil;
-import com.tanxian.service.ai.HuTaoService;
-import com.tanxian.service.ai.VentiService;
-import com.tanxian.service.ai.YoimiyaService;
+import com.tanxian.service.ai.CharacterChatService;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
-import reactor.core.scheduler.Schedulers;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 @Service
+@Slf4j
 public class AiChatServiceImpl implements AiChatService {
     @Autowired
-    private YoimiyaService yoimiyaService;
+    private CharacterChatService characterChatService;
 
     @Autowired
-    private VentiService ventiService;
-
-    @Autowired
-    private HuTaoService huTaoService;
+    private CharacterRegistry characterRegistry;
 
     @Autowired
     private MyChatMemoryStore myChatMemoryStore;
@@ -40,59 +49,198 @@ public class AiChatServiceImpl implements AiChatService {
     @Autowired
     private QiniuUploadUtil qiniuUploadUtil;
 
+    @Autowired
+    private ChatResponseCache responseCache;
+
+    @Autowired
+    private ChatMemoryProvider chatMemoryProvider;
+
+    @Autowired
+    private ChatRequestCoalescer chatRequestCoalescer;
+
+    @Autowired
+    private ChatAdmissionController chatAdmissionController;
+
     @Override
     public Flux<String> chat(String sessionId, String message, short type) {
+        return chat(sessionId, message, type, null);
+    }
+
+    @Override
+    public Flux<String> chat(String sessionId, String message, short type, String idempotencyKey) {
+        return chat(sessionId, message, type, idempotencyKey, ChatPriority.TEXT);
+    }
+
+    @Override
+    public Flux<String> voiceChat(String sessionId, String message, short type) {
+        return chat(sessionId, message, type, null, ChatPriority.VOICE);
+    }
+
+    private Flux<String> chat(String sessionId, String message, short type, String idempotencyKey, ChatPriority priority) {
+        CharacterProfile character = characterRegistry.getByType(type);
+        if (character == null) {
+            throw new BusinessException(BusinessExceptionEnum.CHAT_TYPE_ERROR);
+        }
+        // 同一会话的重复请求（客户端重试、语音重复提交）共享一次上游调用
+        if (StringUtils.hasText(idempotencyKey)) {
+            return chatRequestCoalescer.coalesceIdempotent(sessionId + ":idem:" + idempotencyKey,
+                    () -> doChat(character, sessionId, message, type, priority));
+        }
+        String key = sessionId + ":" + sha1Hex(message);
+        // 语音通话被打断时立即取消模型调用
+        if (priority == ChatPriority.VOICE) {
+            return chatRequestCoalescer.coalesceWithoutGrace(key, () -> doChat(character, sessionId, message, type, priority));
+        }
+        return chatRequestCoalescer.coalesce(key, () -> doChat(character, sessionId, message, type, priority));
+    }
+
+    private Flux<String> doChat(CharacterProfile character, String sessionId, String message, short type,
+                                ChatPriority priority) {
         // 记录会话信息（如果是新会话）
         myChatMemoryStore.recordChatSession(sessionId, type);
-        StringBuilder fullText = new StringBuilder();
 
-        Flux<String> flux = switch (type) {
-            case 0 -> yoimiyaService.chat(sessionId, message);
-            case 1 -> ventiService.chat(sessionId, message);
-            case 2 -> huTaoService.chat(sessionId, message);
-            default -> throw new BusinessException(BusinessExceptionEnum.CHAT_TYPE_ERROR);
-        };
+        // 短句先查回复缓存，命中时不占用并发许可、不调用模型
+        String fingerprint = responseCache.isCacheable(message) ? contextFingerprint(sessionId) : null;
+        if (fingerprint != null) {
+            List<String> cached = responseCache.get(character.getKey(), fingerprint, message);
+            if (cached != null) {
+                return replayCachedReply(character, sessionId, message, type, cached, priority);
+            }
+        }
+
+        // 先经过全局准入控制（可能排队），获得许可后的调用可能在其他线程上执行，需要带上当前登录用户
+        LoginResp user = LoginUserContext.getUser();
+        return chatAdmissionController.acquire(characterRegistry.userKeyOf(sessionId), priority)
+                .flatMapMany(permit -> Flux.defer(() -> streamFromModel(character, sessionId, message, type, fingerprint, user, priority))
+                        .doFinally(signal -> permit.release()));
+    }
+
+    private Flux<String> streamFromModel(CharacterProfile character, String sessionId, String message, short type,
+                                         String fingerprint, LoginResp user, ChatPriority priority) {
+        // 角色并发已满时直接拒绝，不排队等待，避免热门角色拖慢其他角色
+        if (!character.tryAcquireChat()) {
+            throw new BusinessException(BusinessExceptionEnum.CHARACTER_BUSY);
+        }
+        Flux<String> flux;
+        // 组装请求时会读取记忆并生成带用户昵称的系统提示词
+        LoginResp previous = LoginUserContext.getUser();
+        LoginUserContext.setUser(user);
+        try {
+            flux = characterChatService.chat(sessionId, message);
+        } catch (RuntimeException e) {
+            character.releaseChat();
+            throw e;
+        } finally {
+            LoginUserContext.setUser(previous);
+        }
+        List<String> chunks = new ArrayList<>();
+        String nickname = user == null || !StringUtils.hasText(user.getNickname()) ? null : user.getNickname();
 
         // 边流式边累计完整文本，并在结束后异步生成并上传音频
         return flux
-                .doOnNext(fullText::append)
+                .doOnNext(chunks::add)
+                .doOnComplete(() -> {
+                    String aiText = String.join("", chunks);
+                    if (aiText.isBlank()) return;
+                    // 回复中带有用户昵称时不缓存，避免回放给其他用户
+                    if (fingerprint != null && (nickname == null || !aiText.contains(nickname))) {
+                        responseCache.put(character.getKey(), fingerprint, message, chunks);
+                    }
+                    // 语音通话的音频由通话端拼接已播放的分段后上传，不再重复合成
+                    if (priority != ChatPriority.VOICE) {
+                        scheduleAudioUpload(character, sessionId, type, aiText, null);
+                    }
+                })
+                .doFinally(signal -> character.releaseChat());
+    }
+
+    /**
+     * 回放缓存的回复，并像正常对话一样把本轮问答写入会话记忆
+     */
+    private Flux<String> replayCachedReply(CharacterProfile character, String sessionId, String message,
+                                           short type, List<String> chunks, ChatPriority priority) {
+        String aiText = String.join("", chunks);
+        return Flux.defer(() -> {
+                    ChatMemory memory = chatMemoryProvider.get(sessionId);
+                    memory.add(UserMessage.from(message));
+                    memory.add(AiMessage.from(aiText));
+                    return Flux.fromIterable(chunks);
+                })
                 .doOnComplete(() -> {
-                    String aiText = fullText.toString();
-                    if (aiText == null || aiText.isBlank()) return;
-                    // 异步执行，避免阻塞文本流
-                    Schedulers.boundedElastic().schedule(() -> {
+                    if (priority != ChatPriority.VOICE) {
+                        scheduleAudioUpload(character, sessionId, type, aiText, null);
+                    }
+                });
+    }
+
+    /**
+     * 当前会话的上下文指纹，读取记忆失败时返回 null（不使用缓存）
+     */
+    private String contextFingerprint(String sessionId) {
+        try {
+            return responseCache.fingerprint(myChatMemoryStore.getMessages(sessionId));
+        } catch (Exception e) {
+            log.warn("读取会话记忆失败，跳过回复缓存 sessionId={}: {}", sessionId, e.toString());
+            return null;
+        }
+    }
+
+    @Override
+    public void uploadVoiceReplyAudio(String sessionId, short type, String aiText, byte[] wav) {
+        CharacterProfile character = characterRegistry.getByType(type);
+        if (character == null || !StringUtils.hasText(aiText)) {
+            return;
+        }
+        scheduleAudioUpload(character, sessionId, type, aiText, wav);
+    }
+
+    /**
+     * 在角色独立的线程池中生成音频并上传，排队已满时跳过
+     *
+     * @param preparedWav 已合成好的音频（语音通话中拼接的分段音频），为空时调用TTS合成整段回复
+     */
+    private void scheduleAudioUpload(CharacterProfile character, String sessionId, short type, String aiText,
+                                     byte[] preparedWav) {
+        // 异步执行，避免阻塞文本流
+        boolean submitted = character.trySubmitTts(() -> {
+            try {
+                // 生成固定文件键：huanyu/audio/<type>-<sha1(text)>.wav
+                String sha1 = sha1Hex(aiText.trim());
+                String fileKey = "huanyu/audio/" + type + "-" + sha1 + ".wav";
+                boolean existsBefore = qiniuUploadUtil.exists(fileKey);
+                log.debug("准备上传音频 fileKey={}, existsBefore={}", fileKey, existsBefore);
+                if (!existsBefore) {
+                    byte[] wav = preparedWav;
+                    if (wav != null && wav.length > 0) {
+                        log.debug("复用语音通话已合成的音频，字节大小={}", wav.length);
+                    } else {
+                        wav = messageTurnToAiVoiceTool.turnToAiVoice(aiText, sessionId);
+                        log.debug("TTS生成字节大小={}", wav == null ? 0 : wav.length);
+                    }
+                    if (wav != null && wav.length > 0) {
                         try {
-                            // 生成固定文件键：huanyu/audio/<type>-<sha1(text)>.wav
-                            String sha1 = sha1Hex(aiText.trim());
-                            String fileKey = "huanyu/audio/" + type + "-" + sha1 + ".wav";
-                            boolean existsBefore = qiniuUploadUtil.exists(fileKey);
-                            System.out.println("[AiChatService] 准备上传音频 fileKey=" + fileKey + ", existsBefore=" + existsBefore);
-                            if (!existsBefore) {
-                                byte[] wav = messageTurnToAiVoiceTool.turnToAiVoice(aiText, sessionId);
-                                System.out.println("[AiChatService] TTS生成字节大小=" + (wav == null ? 0 : wav.length));
-                                if (wav != null && wav.length > 0) {
-                                    try {
-                                        qiniuUploadUtil.uploadAudioBytesWithKey(wav, fileKey);
-                                        boolean existsAfter = qiniuUploadUtil.exists(fileKey);
-                                        System.out.println("[AiChatService] 上传完成 existsAfter=" + existsAfter + ", fileKey=" + fileKey);
-                                        // 可选：设置几天后自动删除
-                                        qiniuUploadUtil.setDeleteAfterDays(fileKey, 1);
-                                    } catch (Exception ue) {
-                                        System.err.println("[AiChatService] 七牛上传失败: " + ue.getMessage());
-                                        ue.printStackTrace();
-                                    }
-                                } else {
-                                    System.err.println("[AiChatService] TTS生成音频为空，跳过上传 fileKey=" + fileKey);
-                                }
-                            } else {
-                                System.out.println("[AiChatService] 音频已存在，跳过上传 fileKey=" + fileKey);
-                            }
-                        } catch (Exception e) {
-                            // 仅记录，不影响聊天流
-                            e.printStackTrace();
+                            qiniuUploadUtil.uploadAudioBytesWithKey(wav, fileKey);
+                            boolean existsAfter = qiniuUploadUtil.exists(fileKey);
+                            log.info("音频上传完成 fileKey={}, existsAfter={}", fileKey, existsAfter);
+                            // 可选：设置几天后自动删除
+                            qiniuUploadUtil.setDeleteAfterDays(fileKey, 1);
+                        } catch (Exception ue) {
+                            log.error("七牛上传失败 fileKey={}", fileKey, ue);
                         }
-                    });
-                });
+                    } else {
+                        log.warn("TTS生成音频为空，跳过上传 fileKey={}", fileKey);
+                    }
+                } else {
+                    log.debug("音频已存在，跳过上传 fileKey={}", fileKey);
+                }
+            } catch (Exception e) {
+                // 仅记录，不影响聊天流
+                log.warn("生成或上传回复音频失败 sessionId={}", sessionId, e);
+            }
+        });
+        if (!submitted) {
+            log.warn("角色 {} 音频生成排队已满，跳过 sessionId={}", character.getKey(), sessionId);
+        }
     }
 
     private static String sha1Hex(String input) {
@@ -0,0 +1,374 @@
+package com.tanxian.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanxian.config.ChatPersistenceProperties;
+import com.tanxian.entity.ChatMessage;
+import com.tanxian.mapper.ChatMessageMapper;
+import com.tanxian.service.ChatMessageWriteBehindService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天消息异步入库实现
+ *
+ * 本地日志格式：每行一条 ChatMessage 的 JSON。检查点文件记录已成功入库的日志字节偏移，
+ * 启动时从检查点之后重放未入库的消息，保证宕机不丢消息（至少一次写入）。
+ * 入库与推进检查点之间宕机会导致同一批消息被重放，每条消息都带有会话内序号，
+ * 由 (session_id, seq) 唯一索引去重，重放不会产生重复行。
+ *
+ * 整批写入失败时逐条重试：数据库不可用等暂时性错误保留在队列中等下个周期；
+ * 单条消息本身无法写入（超长、非法值等）时转存到死信文件并出队，不会阻塞后面的消息。
+ */
+@Service
+@Slf4j
+public class ChatMessageWriteBehindServiceImpl implements ChatMessageWriteBehindService {
+
+    private static final String JOURNAL_FILE = "chat-messages.journal";
+    private static final String CHECKPOINT_FILE = "chat-messages.checkpoint";
+    private static final String DEAD_LETTER_FILE = "chat-messages.dead";
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private ChatPersistenceProperties properties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    // 待入库队列，仅后台线程出队
+    private final ConcurrentLinkedQueue<PendingEntry> queue = new ConcurrentLinkedQueue<>();
+    // 保证日志追加与入队顺序一致
+    private final Object journalLock = new Object();
+
+    private FileChannel journalChannel;
+    private Path checkpointPath;
+    private Path deadLetterPath;
+    private ScheduledExecutorService flusher;
+    private Counter deadLetterCounter;
+
+    @PostConstruct
+    public void init() throws IOException {
+        Path dir = Paths.get(properties.getJournalDir());
+        Files.createDirectories(dir);
+        checkpointPath = dir.resolve(CHECKPOINT_FILE);
+        deadLetterPath = dir.resolve(DEAD_LETTER_FILE);
+        deadLetterCounter = Counter.builder("chat.persistence.dead.letter")
+                .description("无法写入数据库、转存到死信文件的聊天消息数").register(meterRegistry);
+        journalChannel = FileChannel.open(dir.resolve(JOURNAL_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        long intervalMs = properties.getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        log.info("聊天消息异步入库已启动，日志目录: {}，批量: {}，间隔: {}，待重放: {} 条",
+                dir.toAbsolutePath(), properties.getBatchSize(), properties.getFlushInterval(), queue.size());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 关闭前尽量把剩余消息写入数据库，失败的部分会在下次启动时重放
+        flushSafely();
+        try {
+            if (journalChannel != null) {
+                journalChannel.close();
+            }
+        } catch (IOException e) {
+            log.warn("关闭聊天消息日志失败", e);
+        }
+    }
+
+    @Override
+    public void enqueue(List<ChatMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        for (ChatMessage message : messages) {
+            if (message.getSessionId() == null || message.getSeq() == null) {
+                throw new IllegalArgumentException("待入库消息缺少会话ID或序号，无法幂等重放");
+            }
+        }
+        try {
+            synchronized (journalLock) {
+                for (ChatMessage message : messages) {
+                    byte[] line = (objectMapper.writeValueAsString(message) + "\n").getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer buffer = ByteBuffer.wrap(line);
+                    long position = journalChannel.size();
+                    while (buffer.hasRemaining()) {
+                        position += journalChannel.write(buffer, position);
+                    }
+                    queue.add(new PendingEntry(message, position));
+                }
+                if (properties.isFsync()) {
+                    journalChannel.force(false);
+                }
+            }
+        } catch (IOException e) {
+            // 日志写入失败时仍保留在内存队列中，尽量不丢消息
+            log.error("追加聊天消息日志失败，消息仅保存在内存队列中", e);
+            for (ChatMessage message : messages) {
+                if (queue.stream().noneMatch(entry -> entry.message == message)) {
+                    queue.add(new PendingEntry(message, -1));
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<ChatMessage> pendingMessages(String sessionId) {
+        List<ChatMessage> result = new ArrayList<>();
+        for (PendingEntry entry : queue) {
+            if (sessionId.equals(entry.message.getSessionId())) {
+                result.add(entry.message);
+            }
+        }
+        return result;
+    }
+
+    private void flushSafely() {
+        try {
+            flushPending();
+        } catch (Exception e) {
+            log.error("批量写入聊天消息失败，将在下个周期重试，待入库: {} 条", queue.size(), e);
+        }
+    }
+
+    /**
+     * 按批次将队列中的消息写入数据库，成功后推进检查点再出队
+     */
+    private void flushPending() throws IOException {
+        int batchSize = Math.max(1, properties.getBatchSize());
+        while (true) {
+            List<PendingEntry> batch = new ArrayList<>(batchSize);
+            Iterator<PendingEntry> it = queue.iterator();
+            while (it.hasNext() && batch.size() < batchSize) {
+                batch.add(it.next());
+            }
+            if (batch.isEmpty()) {
+                compactIfIdle();
+                return;
+            }
+
+            List<ChatMessage> rows = new ArrayList<>(batch.size());
+            long checkpoint = -1;
+            for (PendingEntry entry : batch) {
+                rows.add(entry.message);
+                checkpoint = Math.max(checkpoint, entry.endOffset);
+            }
+            try {
+                chatMessageMapper.insertBatch(rows);
+            } catch (RuntimeException e) {
+                if (!isPoison(e)) {
+                    throw e;
+                }
+                log.warn("批量写入聊天消息失败，逐条重试: {}", e.toString());
+                if (!flushOneByOne(batch)) {
+                    return;
+                }
+                continue;
+            }
+            if (checkpoint >= 0) {
+                writeCheckpoint(checkpoint);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                queue.poll();
+            }
+            log.debug("批量写入聊天消息 {} 条", rows.size());
+
+            if (batch.size() < batchSize) {
+                compactIfIdle();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 逐条写入一个批次，写不进去的消息转入死信；遇到暂时性错误时停下，已处理的部分照常推进检查点
+     *
+     * @return 整个批次是否都已处理
+     */
+    private boolean flushOneByOne(List<PendingEntry> batch) throws IOException {
+        long checkpoint = -1;
+        int done = 0;
+        try {
+            for (PendingEntry entry : batch) {
+                try {
+                    chatMessageMapper.insertBatch(List.of(entry.message));
+                } catch (RuntimeException e) {
+                    if (!isPoison(e)) {
+                        log.error("逐条写入聊天消息失败，将在下个周期重试，待入库: {} 条", queue.size() - done, e);
+                        return false;
+                    }
+                    deadLetter(entry.message, e);
+                }
+                checkpoint = Math.max(checkpoint, entry.endOffset);
+                done++;
+            }
+            return true;
+        } finally {
+            if (checkpoint >= 0) {
+                writeCheckpoint(checkpoint);
+            }
+            for (int i = 0; i < done; i++) {
+                queue.poll();
+            }
+        }
+    }
+
+    /**
+     * 是否为消息本身导致的错误（重试也不会成功）；连接失败、超时、死锁等暂时性错误返回 false
+     */
+    private static boolean isPoison(RuntimeException e) {
+        return e instanceof NonTransientDataAccessException
+                && !(e instanceof NonTransientDataAccessResourceException);
+    }
+
+    /**
+     * 将无法入库的消息连同错误原因追加到死信文件，便于人工处理后补录
+     */
+    private void deadLetter(ChatMessage message, Exception cause) throws IOException {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("failedAt", System.currentTimeMillis());
+        record.put("error", String.valueOf(cause.getMessage()));
+        record.put("message", message);
+        byte[] line = (objectMapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+        if (properties.isFsync()) {
+            Files.write(deadLetterPath, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+        } else {
+            Files.write(deadLetterPath, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        deadLetterCounter.increment();
+        log.error("聊天消息无法写入数据库，已转入死信文件 {}: sessionId={}, seq={}",
+                deadLetterPath, message.getSessionId(), message.getSeq(), cause);
+    }
+
+    /**
+     * 队列清空后截断日志文件，避免无限增长
+     */
+    private void compactIfIdle() throws IOException {
+        synchronized (journalLock) {
+            if (queue.isEmpty() && journalChannel.size() > properties.getCompactThreshold()) {
+                journalChannel.truncate(0);
+                journalChannel.force(true);
+                writeCheckpoint(0);
+                log.info("聊天消息日志已截断复用");
+            }
+        }
+    }
+
+    /**
+     * 从检查点之后重放未入库的消息，丢弃宕机时写了一半的末尾行
+     */
+    private void recover() throws IOException {
+        long checkpoint = readCheckpoint();
+        long size = journalChannel.size();
+        if (checkpoint > size) {
+            log.warn("聊天消息检查点 {} 超出日志大小 {}，从日志末尾开始", checkpoint, size);
+            checkpoint = size;
+        }
+        if (checkpoint == size) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) (size - checkpoint));
+        long position = checkpoint;
+        while (buffer.hasRemaining()) {
+            int read = journalChannel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        byte[] tail = buffer.array();
+
+        int lineStart = 0;
+        for (int i = 0; i < tail.length; i++) {
+            if (tail[i] != '\n') {
+                continue;
+            }
+            String line = new String(tail, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            try {
+                queue.add(new PendingEntry(objectMapper.readValue(line, ChatMessage.class), checkpoint + i + 1));
+            } catch (Exception e) {
+                log.error("解析聊天消息日志失败，跳过该行: {}", line, e);
+            }
+            lineStart = i + 1;
+        }
+        if (lineStart < tail.length) {
+            log.warn("聊天消息日志末尾存在不完整记录，已截断 {} 字节", tail.length - lineStart);
+            journalChannel.truncate(checkpoint + lineStart);
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        if (!Files.exists(checkpointPath)) {
+            return 0L;
+        }
+        String text = Files.readString(checkpointPath, StandardCharsets.UTF_8).trim();
+        try {
+            return text.isEmpty() ? 0L : Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            log.warn("聊天消息检查点文件损坏，从头重放: {}", text);
+            return 0L;
+        }
+    }
+
+    private void writeCheckpoint(long offset) throws IOException {
+        Path tmp = checkpointPath.resolveSibling(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(tmp, Long.toString(offset), StandardCharsets.UTF_8);
+        Files.move(tmp, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 队列元素：消息及其在日志中的结束偏移（-1 表示未写入日志）
+     */
+    private static class PendingEntry {
+        private final ChatMessage message;
+        private final long endOffset;
+
+        private PendingEntry(ChatMessage message, long endOffset) {
+            this.message = message;
+            this.endOffset = endOffset;
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.tanxian.service.impl;
 
+import com.tanxian.audio.TtsCancellation;
+import com.tanxian.character.CharacterProfile;
+import com.tanxian.character.CharacterRegistry;
 import com.tanxian.service.MessageTurnToAiVoiceTool;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayInputStream;
@@ -15,6 +19,9 @@ import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 @Service
 public class MessageTurnToAiVoiceToolImpl implements MessageTurnToAiVoiceTool {
@@ -31,22 +38,16 @@ public class MessageTurnToAiVoiceToolImpl implements MessageTurnToAiVoiceTool {
     private static final Duration REQUEST_STREAM_TIMEOUT = Duration.ofSeconds(30);
     private static final long INITIAL_BACKOFF_MS = 300;
 
+    @Autowired
+    private CharacterRegistry characterRegistry;
+
     @Override
     public byte[] turnToAiVoice(String message,String sessionId) {
         message = message.replaceAll("\\*.*\\*", "");
-        char type = sessionId.charAt(sessionId.length()-1);
-        int port = switch (type) {
-            case '0' -> 5000;
-            case '1' -> 5001;
-            case '2' -> 5002;
-            default -> {
-                LOG.warn("未识别的type: {}，默认使用5000端口", type);
-                yield 5000;
-            }
-        };
-
-        // 使用IPv4避免Windows上localhost解析为IPv6(::1)导致连接失败
-        String base = "http://127.0.0.1:" + port;
+        CharacterProfile character = resolveCharacter(sessionId);
+        String type = character.getKey();
+        // 从角色的TTS地址池中轮询选择（配置中使用IPv4地址，避免localhost解析为IPv6导致连接失败）
+        String base = character.nextTtsEndpoint();
         String url = base + "/";     // 仅使用 api.py 的根路径端点
 
         try {
@@ -129,10 +130,10 @@ public class MessageTurnToAiVoiceToolImpl implements MessageTurnToAiVoiceTool {
                     }
                 } catch (java.net.ConnectException e) {
                     if (attempt == MAX_RETRIES) {
-                        LOG.error("调用TTS服务失败(最终尝试): 无法连接到TTS服务，请检查Python服务是否启动并在{}端口监听，url={}, type={}, sessionId={}", port, url, type, sessionId, e);
+                        LOG.error("调用TTS服务失败(最终尝试): 无法连接到TTS服务，请检查Python服务是否启动并在{}监听，url={}, type={}, sessionId={}", base, url, type, sessionId, e);
                         return new byte[0];
                     }
-                    LOG.warn("调用TTS服务连接异常，第{}次重试：无法连接到TTS服务，请检查Python服务是否启动并在{}端口监听，错误信息: {}", attempt, port, e.toString());
+                    LOG.warn("调用TTS服务连接异常，第{}次重试：无法连接到TTS服务，请检查Python服务是否启动并在{}监听，错误信息: {}", attempt, base, e.toString());
                 } catch (Exception e) {
                     if (attempt == MAX_RETRIES) {
                         LOG.error("调用TTS服务失败(最终尝试): url={}, type={}, sessionId={}", url, type, sessionId, e);
@@ -156,22 +157,14 @@ public class MessageTurnToAiVoiceToolImpl implements MessageTurnToAiVoiceTool {
     }
 
     @Override
-    public InputStream streamToAiVoice(String message, String sessionId) {
+    public InputStream streamToAiVoice(String message, String sessionId, TtsCancellation cancellation) {
         //先将message进行处理，将在两个*符号中间的字段删除
         message = message.replaceAll("\\*.*\\*", "");
-        char type = sessionId.charAt(sessionId.length() - 1);
-        int port = switch (type) {
-            case '0' -> 5000;
-            case '1' -> 5001;
-            case '2' -> 5002;
-            default -> {
-                LOG.warn("未识别的type: {}，默认使用5000端口", type);
-                yield 5000;
-            }
-        };
-
-        // 使用IPv4避免localhost解析为IPv6导致连接失败，且与当前api.py保持POST /stream
-        String url = "http://127.0.0.1:" + port + "/stream";
+        CharacterProfile character = resolveCharacter(sessionId);
+        String type = character.getKey();
+        String base = character.nextTtsEndpoint();
+        // 与当前api.py保持POST /stream
+        String url = base + "/stream";
 
         try {
             Map<String, Object> payload = new HashMap<>();
@@ -194,27 +187,51 @@ public class MessageTurnToAiVoiceToolImpl implements MessageTurnToAiVoiceTool {
             
             long backoff = INITIAL_BACKOFF_MS;
             for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
+                if (cancellation.isCancelled()) {
+                    LOG.info("TTS流请求已取消: attempt={}, sessionId={}", attempt, sessionId);
+                    return new ByteArrayInputStream(new byte[0]);
+                }
                 try {
-                    HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                    // 异步发送并登记，取消时中止请求，阻塞中的等待随之返回
+                    CompletableFuture<HttpResponse<InputStream>> future =
+                            httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+                    cancellation.track(future);
+                    HttpResponse<InputStream> response;
+                    try {
+                        response = future.get();
+                    } catch (ExecutionException ee) {
+                        throw ee.getCause() instanceof Exception cause ? cause : ee;
+                    }
                     int status = response.statusCode();
                     LOG.info("TTS流请求响应: status={}, attempt={}, url={}, sessionId={}", status, attempt, url, sessionId);
-                    
+                    if (cancellation.isCancelled()) {
+                        response.body().close();
+                        return new ByteArrayInputStream(new byte[0]);
+                    }
+
                     if (status == 200) {
                         LOG.info("TTS流请求成功: url={}, sessionId={}", url, sessionId);
                         return response.body();
                     }
+                    response.body().close();
                     if (status >= 500 || status == 429) {
                         LOG.warn("TTS流服务响应{}，第{}次重试", status, attempt);
                     } else {
                         LOG.warn("TTS流服务响应非200: {}，不重试", status);
                         return new ByteArrayInputStream(new byte[0]);
                     }
+                } catch (CancellationException e) {
+                    LOG.info("TTS流请求已取消: attempt={}, sessionId={}", attempt, sessionId);
+                    return new ByteArrayInputStream(new byte[0]);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return new ByteArrayInputStream(new byte[0]);
                 } catch (java.net.ConnectException e) {
                     if (attempt == MAX_RETRIES) {
-                        LOG.error("调用TTS流服务失败(最终尝试): 无法连接到TTS流服务，请检查Python服务是否启动并在{}端口监听，url={}, type={}, sessionId={}", port, url, type, sessionId, e);
+                        LOG.error("调用TTS流服务失败(最终尝试): 无法连接到TTS流服务，请检查Python服务是否启动并在{}监听，url={}, type={}, sessionId={}", base, url, type, sessionId, e);
                         return new ByteArrayInputStream(new byte[0]);
                     }
-                    LOG.warn("调用TTS流服务连接异常，第{}次重试：无法连接到TTS流服务，请检查Python服务是否启动并在{}端口监听，错误信息: {}", attempt, port, e.toString());
+                    LOG.warn("调用TTS流服务连接异常，第{}次重试：无法连接到TTS流服务，请检查Python服务是否启动并在{}监听，错误信息: {}", attempt, base, e.toString());
                 } catch (Exception e) {
                     if (attempt == MAX_RETRIES) {
                         LOG.error("调用TTS流服务失败(最终尝试): url={}, type={}, sessionId={}", url, type, sessionId, e);
@@ -223,7 +240,10 @@ public class MessageTurnToAiVoiceToolImpl implements MessageTurnToAiVoiceTool {
                     LOG.warn("调用TTS流服务异常，第{}次重试：{}", attempt, e.toString());
                 }
                 try {
-                    Thread.sleep(backoff);
+                    if (cancellation.sleep(backoff)) {
+                        LOG.info("TTS流请求重试前已取消: sessionId={}", sessionId);
+                        return new ByteArrayInputStream(new byte[0]);
+                    }
                 } catch (InterruptedException ie) {
                     Thread.currentThread().interrupt();
                     return new ByteArrayInputStream(new byte[0]);
@@ -236,4 +256,16 @@ public class MessageTurnToAiVoiceToolImpl implements MessageTurnToAiVoiceTool {
             return new ByteArrayInputStream(new byte[0]);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 根据会话ID确定角色，无法识别时使用默认角色
+     */
+    private CharacterProfile resolveCharacter(String sessionId) {
+        CharacterProfile character = characterRegistry.getBySessionId(sessionId);
+        if (character == null) {
+            character = characterRegistry.getDefault();
+            LOG.warn("未识别的会话角色: {}，默认使用角色 {}", sessionId, character);
+        }
+        return character;
+    }
+}
@@ -1,7 +1,16 @@
 package com.tanxian.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.tanxian.cache.ChatMemoryNearCache;
+import com.tanxian.cache.ChatMemoryWindow;
+import com.tanxian.cache.ChatSessionMeta;
+import com.tanxian.cache.ChatSessionMetaCache;
+import com.tanxian.cache.SystemPromptCache;
+import com.tanxian.character.CharacterProfile;
+import com.tanxian.character.CharacterRegistry;
+import com.tanxian.codec.ChatMemoryCodecs;
 import com.tanxian.common.LoginUserContext;
+import com.tanxian.config.ChatMemoryProperties;
 import com.tanxian.resp.LoginResp;
 import com.tanxian.entity.ChatMessage;
 import com.tanxian.entity.ChatSession;
@@ -9,32 +18,39 @@ import com.tanxian.exception.BusinessException;
 import com.tanxian.exception.BusinessExceptionEnum;
 import com.tanxian.mapper.ChatMessageMapper;
 import com.tanxian.mapper.ChatSessionMapper;
+import com.tanxian.prompt.PromptRegistry;
+import com.tanxian.prompt.PromptTemplate;
+import com.tanxian.service.ChatMessageWriteBehindService;
 import com.tanxian.service.MessageTurnToAiVoiceTool;
 import com.tanxian.service.MyChatMemoryStore;
+import com.tanxian.service.ai.MemorySummaryService;
 import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.ChatMessageDeserializer;
-import dev.langchain4j.data.message.ChatMessageSerializer;
 import dev.langchain4j.data.message.SystemMessage;
 import dev.langchain4j.data.message.UserMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
@@ -54,83 +70,115 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
     @Autowired
     MessageTurnToAiVoiceTool messageTurnToAiVoiceTool;
 
-    // 系统消息模板缓存（从本地文件加载）
-    private final Map<String, String> systemMessageCache = new ConcurrentHashMap<>();
+    @Autowired
+    private ChatMemoryProperties chatMemoryProperties;
+
+    @Autowired
+    private ChatMessageWriteBehindService chatMessageWriteBehindService;
+
+    @Autowired
+    private ChatSessionMetaCache chatSessionMetaCache;
+
+    @Autowired
+    private SystemPromptCache systemPromptCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ChatMemoryNearCache chatMemoryNearCache;
+
+    @Autowired
+    private ChatMemoryCodecs chatMemoryCodecs;
+
+    @Autowired
+    private MemorySummaryService memorySummaryService;
+
+    @Autowired
+    private PromptRegistry promptRegistry;
+
+    @Autowired
+    private CharacterRegistry characterRegistry;
+
     // 标记不需要持久化到数据库的会话（例如语音通话会话）
     private final Set<String> ephemeralSessions = ConcurrentHashMap.newKeySet();
+    // 会话内消息序号计数器前缀
+    private static final String SEQ_KEY_PREFIX = "chat:seq:";
+    // ARGV: 分配个数、计数器TTL（秒）、可选的初始化种子；计数器缺失且未给种子时返回 -1
+    private static final DefaultRedisScript<Long> ALLOCATE_SEQ_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then "
+                    + "if ARGV[3] == nil then return -1 end "
+                    + "redis.call('set', KEYS[1], ARGV[3]) "
+                    + "end "
+                    + "local last = redis.call('incrby', KEYS[1], ARGV[1]) "
+                    + "redis.call('expire', KEYS[1], ARGV[2]) "
+                    + "return last",
+            Long.class);
     // 语音通话临时标记使用的 Redis 前缀与 TTL 设置
     private static final String EPHEMERAL_KEY_PREFIX = "chat:ephemeral:";
     private static final Duration EPHEMERAL_TTL = Duration.ofMinutes(10);
     // 为避免连接关闭与入库之间的竞态，这里为取消标记设置一个短暂保护期
     private static final Duration EPHEMERAL_GRACE_TTL = Duration.ofSeconds(3);
-    // 语音阶段产生的消息哈希集合前缀与TTL（用于永不入库）
-    private static final String EPHEMERAL_MSG_SET_PREFIX = "chat:ephemeral:msg:";
-    private static final Duration EPHEMERAL_MSG_TTL = Duration.ofHours(6);
-
-    // 标记是否已初始化
-    private volatile boolean initialized = false;
+    // 会话窗口列表前缀（每个元素为一条消息的JSON，按时间顺序追加）
+    private static final String MEMORY_LIST_KEY_PREFIX = "chat:memory:";
+    // 缓存未命中时跨节点回源锁前缀与轮询间隔
+    private static final String LOAD_LOCK_KEY_PREFIX = "chat:memory:lock:";
+    private static final long LOAD_LOCK_POLL_INTERVAL_MS = 30;
+    private static final DefaultRedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+    // 本节点内正在进行的回源加载，同一会话的并发请求共享同一结果
+    private final Map<String, CompletableFuture<ChatMemoryWindow>> inFlightLoads = new ConcurrentHashMap<>();
+    // 滚动摘要键前缀，与窗口列表使用相同的过期时间
+    private static final String SUMMARY_KEY_PREFIX = "chat:memory:summary:";
+    // 压缩期间窗口头部未变化（没有其他写入淘汰旧消息）时才裁剪列表并写入摘要
+    private static final byte[] COMPACT_SCRIPT = ("if redis.call('lindex', KEYS[1], 0) ~= ARGV[1] then return 0 end "
+            + "redis.call('ltrim', KEYS[1], tonumber(ARGV[2]), -1) "
+            + "redis.call('set', KEYS[2], ARGV[3], 'EX', tonumber(ARGV[4])) "
+            + "return 1").getBytes(StandardCharsets.UTF_8);
+    // 追加新消息、裁剪到窗口大小并续期窗口与摘要，在一次脚本调用中完成，避免中途失败留下未续期或未裁剪的列表
+    // KEYS: 窗口列表、摘要；ARGV: 过期秒数、窗口大小、新消息...
+    private static final byte[] APPEND_SCRIPT = ("for i = 3, #ARGV do redis.call('rpush', KEYS[1], ARGV[i]) end "
+            + "redis.call('ltrim', KEYS[1], -tonumber(ARGV[2]), -1) "
+            + "redis.call('expire', KEYS[1], tonumber(ARGV[1])) "
+            + "redis.call('expire', KEYS[2], tonumber(ARGV[1])) "
+            + "return 1").getBytes(StandardCharsets.UTF_8);
+    // 整体重写窗口列表：删除后重新写入并设置过期时间；KEYS: 窗口列表；ARGV: 过期秒数、消息...
+    private static final byte[] REWRITE_SCRIPT = ("redis.call('del', KEYS[1]) "
+            + "if #ARGV < 2 then return 0 end "
+            + "for i = 2, #ARGV do redis.call('rpush', KEYS[1], ARGV[i]) end "
+            + "redis.call('expire', KEYS[1], tonumber(ARGV[1])) "
+            + "return 1").getBytes(StandardCharsets.UTF_8);
+    // 本节点正在压缩的会话，避免同一会话重复调用摘要模型
+    private final Set<String> compactingSessions = ConcurrentHashMap.newKeySet();
+    private Counter leaderLoadCounter;
+    private Counter coalescedLoadCounter;
+    private Counter remoteWaitLoadCounter;
 
     // 空构造函数
     public MyChatMemoryStoreImpl() {
         log.info("MyChatMemoryStoreImpl 构造函数执行");
     }
 
-    /**
-     * 延迟初始化系统消息缓存
-     */
-    private void ensureInitialized() {
-        if (!initialized) {
-            synchronized (this) {
-                if (!initialized) {
-                    try {
-                        initSystemMessageCache();
-                        initialized = true;
-                        log.info("系统消息缓存初始化完成");
-                    } catch (Exception e) {
-                        log.error("延迟初始化系统消息缓存失败", e);
-                        throw new BusinessException(BusinessExceptionEnum.SYSTEM_MESSAGE_TEMPLATE_LOAD_FAILED);
-                    }
-                }
-            }
-        }
-    }
-
-    /**
-     * 加载所有prompt文件到内存缓存
-     */
-    private void initSystemMessageCache() {
-        log.info("开始加载系统消息模板到内存缓存...");
-
-        try {
-            // 加载宵宫模板
-            loadPromptTemplate("yoimiya", "prompt/Yoimiya.md");
-
-            // 加载温迪模板
-            loadPromptTemplate("venti", "prompt/Venti.md");
-
-            // 加载胡桃模板
-            loadPromptTemplate("hutao", "prompt/HuTao.md");
-
-            log.info("系统消息模板加载完成，共加载 {} 个模板", systemMessageCache.size());
-
-        } catch (Exception e) {
-            log.error("加载系统消息模板失败", e);
-            throw new BusinessException(BusinessExceptionEnum.SYSTEM_MESSAGE_TEMPLATE_LOAD_FAILED);
-        }
+    @PostConstruct
+    public void initMetrics() {
+        leaderLoadCounter = Counter.builder("chat.memory.load").tag("result", "leader")
+                .description("缓存未命中时实际回源的次数").register(meterRegistry);
+        coalescedLoadCounter = Counter.builder("chat.memory.load").tag("result", "coalesced")
+                .description("本节点内合并到已有加载的次数").register(meterRegistry);
+        remoteWaitLoadCounter = Counter.builder("chat.memory.load").tag("result", "remote_wait")
+                .description("等待其他节点回源的次数").register(meterRegistry);
     }
 
     /**
      * 根据sessionId获取系统消息
      */
     private SystemMessage getSystemMessageBySessionId(String sessionId) {
-        ensureInitialized(); // 确保已初始化
-
         try {
             String templateKey = determineTemplateKeyFromSessionId(sessionId);
-            String content = systemMessageCache.get(templateKey);
+            PromptTemplate template = promptRegistry.get(templateKey);
 
-            if (StringUtils.hasText(content)) {
-                // 动态追加系统指令：昵称与回复长度控制
+            if (template != null) {
                 String nickname = "旅行者";
                 try {
                     LoginResp loginResp = LoginUserContext.getUser();
@@ -139,10 +187,14 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
                     }
                 } catch (Exception ignored) {}
 
-                String dynamic = "\n\n用户昵称：" + nickname + "。"
-                        + "请将回复控制在约50字内，保持角色特色和自然语调。";
-
-                return SystemMessage.from(content + dynamic);
+                // 按（模板, 版本, 昵称）复用已编译的系统消息，避免每次读取记忆都重新拼接
+                final String finalNickname = nickname;
+                return systemPromptCache.get(templateKey, template.version(), nickname, () -> {
+                    // 动态追加系统指令：昵称与回复长度控制
+                    String dynamic = "\n\n用户昵称：" + finalNickname + "。"
+                            + "请将回复控制在约50字内，保持角色特色和自然语调。";
+                    return template.content() + dynamic;
+                });
             }
 
             // 没找到模板时抛出异常
@@ -157,35 +209,6 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
         }
     }
 
-    /**
-     * 从本地资源文件加载prompt模板
-     */
-    private void loadPromptTemplate(String templateKey, String resourcePath) {
-        try {
-            ClassPathResource resource = new ClassPathResource(resourcePath);
-            if (resource.exists()) {
-                try (InputStream inputStream = resource.getInputStream();
-                     BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-
-                    String content = reader.lines().collect(Collectors.joining("\n"));
-                    if (StringUtils.hasText(content.trim())) {
-                        systemMessageCache.put(templateKey, content);
-                        log.info("已加载模板: {} -> {}", templateKey, resourcePath);
-                    } else {
-                        log.error("模板文件内容为空: {}", resourcePath);
-                        throw new BusinessException(BusinessExceptionEnum.SYSTEM_MESSAGE_TEMPLATE_LOAD_FAILED);
-                    }
-                }
-            } else {
-                log.error("模板文件不存在: {}", resourcePath);
-                throw new BusinessException(BusinessExceptionEnum.SYSTEM_MESSAGE_TEMPLATE_NOT_FOUND);
-            }
-        } catch (IOException e) {
-            log.error("加载模板文件失败: {}", resourcePath, e);
-            throw new BusinessException(BusinessExceptionEnum.SYSTEM_MESSAGE_TEMPLATE_LOAD_FAILED);
-        }
-    }
-
     /**
      * 根据角色类型获取模板key
      */
@@ -195,15 +218,12 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
             throw new BusinessException(BusinessExceptionEnum.UNSUPPORTED_CHARACTER_TYPE);
         }
 
-        return switch (characterType) {
-            case 0 -> "yoimiya";
-            case 1 -> "venti";
-            case 2 -> "hutao";
-            default -> {
-                log.error("不支持的角色类型: {}", characterType);
-                throw new BusinessException(BusinessExceptionEnum.UNSUPPORTED_CHARACTER_TYPE);
-            }
-        };
+        CharacterProfile character = characterRegistry.getByType(characterType);
+        if (character == null) {
+            log.error("不支持的角色类型: {}", characterType);
+            throw new BusinessException(BusinessExceptionEnum.UNSUPPORTED_CHARACTER_TYPE);
+        }
+        return character.getKey();
     }
 
     /**
@@ -211,13 +231,11 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
      */
     private String determineTemplateKeyFromSessionId(String sessionId) {
         try {
-            LambdaQueryWrapper<ChatSession> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(ChatSession::getSessionId, sessionId);
-            ChatSession chatSession = chatSessionMapper.selectOne(queryWrapper);
+            // 优先读取本地会话元数据缓存，未命中时才查询 chat_sessions
+            ChatSessionMeta meta = chatSessionMetaCache.getOrLoad(sessionId, this::loadSessionMeta);
 
-            if (chatSession != null) {
-                Short characterType = chatSession.getCharacterType();
-                return getTemplateKeyByCharacterType(characterType);
+            if (meta != null) {
+                return getTemplateKeyByCharacterType(meta.getCharacterType());
             }
 
             log.error("未找到sessionId对应的ChatSession记录: {}", sessionId);
@@ -231,48 +249,70 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
         }
     }
 
+    @Override
+    public String getCharacterKey(String sessionId) {
+        return determineTemplateKeyFromSessionId(sessionId);
+    }
+
     /**
-     * 生成Redis键名
+     * 从数据库加载会话元数据
+     */
+    private ChatSessionMeta loadSessionMeta(String sessionId) {
+        LambdaQueryWrapper<ChatSession> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ChatSession::getSessionId, sessionId);
+        ChatSession chatSession = chatSessionMapper.selectOne(queryWrapper);
+        return chatSession == null ? null : toSessionMeta(chatSession);
+    }
+
+    private ChatSessionMeta toSessionMeta(ChatSession chatSession) {
+        return new ChatSessionMeta(chatSession.getCharacterType(), chatSession.getUserId(), chatSession.getCharacterName());
+    }
+
+    /**
+     * 生成Redis键名（旧版整段JSON存储，仅用于迁移读取）
      */
     private String getRedisKey(String sessionId) {
         return "chat:session:" + sessionId;
     }
 
+    /**
+     * 生成会话窗口列表的Redis键名（每个元素为一条编码后的消息）
+     */
+    private String getMemoryListKey(String sessionId) {
+        return MEMORY_LIST_KEY_PREFIX + sessionId;
+    }
+
+    /**
+     * 生成滚动摘要的Redis键名
+     */
+    private String getSummaryKey(String sessionId) {
+        return SUMMARY_KEY_PREFIX + sessionId;
+    }
+
     @Override
     public List<dev.langchain4j.data.message.ChatMessage> getMessages(Object memoryId) {
-        ensureInitialized();
-
         String sessionId = memoryId.toString();
         log.info("获取会话消息，sessionId: {}", sessionId);
 
         try {
-            String redisKey = getRedisKey(sessionId);
-            String json = redisTemplate.opsForValue().get(redisKey);
-            if (StringUtils.hasText(json)) {
-                log.info("从Redis获取到会话消息");
-                List<dev.langchain4j.data.message.ChatMessage> cachedMessages = ChatMessageDeserializer.messagesFromJson(json);
-                return addSystemMessageToMessages(cachedMessages, sessionId);
+            // 本地近端缓存命中时无需网络往返与JSON解析
+            ChatMemoryWindow nearWindow = chatMemoryNearCache.get(sessionId);
+            if (nearWindow != null) {
+                log.debug("从本地缓存获取到会话消息 {} 条", nearWindow.messages().size());
+                return addSystemMessageToMessages(nearWindow, sessionId);
             }
 
-            log.info("Redis中无数据，从MySQL查询");
-            LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(ChatMessage::getSessionId, sessionId)
-                    .ne(ChatMessage::getMessageType, "SYSTEM")
-                    .orderByAsc(ChatMessage::getCreatedAt); // 按时间升序获取所有消息
-            List<ChatMessage> dbMessages = chatMessageMapper.selectList(queryWrapper);
-
-            if (dbMessages == null || dbMessages.isEmpty()) {
-                log.info("MySQL中也没有数据，返回只包含系统消息的列表");
-                return addSystemMessageToMessages(new ArrayList<>(), sessionId);
+            long version = chatMemoryNearCache.version(sessionId);
+            ChatMemoryWindow cachedWindow = readWindowFromRedis(sessionId);
+            if (cachedWindow != null) {
+                log.info("从Redis获取到会话消息 {} 条", cachedWindow.messages().size());
+                chatMemoryNearCache.putIfUnchanged(sessionId, cachedWindow, version);
+                return addSystemMessageToMessages(cachedWindow, sessionId);
             }
-
-            log.info("从MySQL获取到{}条消息", dbMessages.size());
-            List<dev.langchain4j.data.message.ChatMessage> nonSystemMessages = convertToLangchainMessages(dbMessages);
-            String newJson = ChatMessageSerializer.messagesToJson(nonSystemMessages);
-            redisTemplate.opsForValue().set(redisKey, newJson, Duration.ofDays(1));
-            log.info("已将查询结果缓存到Redis，过期时间1天");
-
-            return addSystemMessageToMessages(nonSystemMessages, sessionId);
+            // 缓存未命中：同一会话的并发加载合并为一次
+            ChatMemoryWindow loadedWindow = loadWindowWithSingleFlight(sessionId);
+            chatMemoryNearCache.putIfUnchanged(sessionId, loadedWindow, version);
+            return addSystemMessageToMessages(loadedWindow, sessionId);
 
         } catch (Exception e) {
             log.error("获取会话消息失败，sessionId: {}", sessionId, e);
@@ -280,10 +320,144 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
         }
     }
 
+    /**
+     * 从Redis读取窗口范围内的消息及滚动摘要（同一次流水线），读取成本与历史长度无关
+     *
+     * @return 窗口内的消息与摘要，窗口列表不存在时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    private ChatMemoryWindow readWindowFromRedis(String sessionId) {
+        int windowSize = chatMemoryProperties.getWindowSize();
+        byte[] rawKey = getMemoryListKey(sessionId).getBytes(StandardCharsets.UTF_8);
+        byte[] summaryKey = getSummaryKey(sessionId).getBytes(StandardCharsets.UTF_8);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.listCommands().lRange(rawKey, -windowSize, -1);
+            connection.stringCommands().get(summaryKey);
+            return null;
+        }, RedisSerializer.byteArray());
+        List<byte[]> entries = (List<byte[]>) results.get(0);
+        if (entries == null || entries.isEmpty()) {
+            return null;
+        }
+        List<dev.langchain4j.data.message.ChatMessage> messages = new ArrayList<>(entries.size());
+        for (byte[] entry : entries) {
+            messages.add(chatMemoryCodecs.decode(entry));
+        }
+        byte[] summary = (byte[]) results.get(1);
+        return new ChatMemoryWindow(messages, summary == null ? null : new String(summary, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 单飞加载：本节点内同一会话只有一个线程执行加载，其余线程等待其结果
+     */
+    private ChatMemoryWindow loadWindowWithSingleFlight(String sessionId) {
+        CompletableFuture<ChatMemoryWindow> mine = new CompletableFuture<>();
+        CompletableFuture<ChatMemoryWindow> inFlight = inFlightLoads.putIfAbsent(sessionId, mine);
+        if (inFlight != null) {
+            coalescedLoadCounter.increment();
+            log.info("会话 {} 正在加载中，等待已有加载结果", sessionId);
+            return inFlight.join();
+        }
+        try {
+            ChatMemoryWindow loaded = loadWindowWithRedisLock(sessionId);
+            mine.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(sessionId, mine);
+        }
+    }
+
+    /**
+     * 跨节点单飞：持有短租约锁的节点负责回源，其余节点轮询等待其写回Redis
+     * 等待超过租约时间或锁已释放但仍无数据时，自行回源（新会话本就没有数据）
+     */
+    private ChatMemoryWindow loadWindowWithRedisLock(String sessionId) {
+        if (!chatMemoryProperties.isLoadLockEnabled()) {
+            leaderLoadCounter.increment();
+            return loadWindowOnMiss(sessionId);
+        }
+        String lockKey = LOAD_LOCK_KEY_PREFIX + sessionId;
+        String token = UUID.randomUUID().toString();
+        Duration lease = chatMemoryProperties.getLoadLockLease();
+        if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, token, lease))) {
+            try {
+                leaderLoadCounter.increment();
+                return loadWindowOnMiss(sessionId);
+            } finally {
+                redisTemplate.execute(RELEASE_LOCK_SCRIPT, Collections.singletonList(lockKey), token);
+            }
+        }
+
+        remoteWaitLoadCounter.increment();
+        long deadline = System.currentTimeMillis() + lease.toMillis();
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                Thread.sleep(LOAD_LOCK_POLL_INTERVAL_MS);
+                ChatMemoryWindow loaded = readWindowFromRedis(sessionId);
+                if (loaded != null) {
+                    return loaded;
+                }
+                if (!Boolean.TRUE.equals(redisTemplate.hasKey(lockKey))) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("等待其他节点加载会话 {} 未得到结果，自行回源", sessionId);
+        return loadWindowOnMiss(sessionId);
+    }
+
+    /**
+     * 缓存未命中时回源加载窗口：优先迁移旧版缓存，其次查询MySQL，并写回Redis
+     */
+    private ChatMemoryWindow loadWindowOnMiss(String sessionId) {
+        int windowSize = chatMemoryProperties.getWindowSize();
+        // 摘要与窗口列表分开存放，窗口列表缺失时摘要可能仍在
+        String summary = redisTemplate.opsForValue().get(getSummaryKey(sessionId));
+
+        // 兼容旧版整段JSON缓存：读取后迁移为列表结构
+        String legacyKey = getRedisKey(sessionId);
+        String legacyJson = redisTemplate.opsForValue().get(legacyKey);
+        if (StringUtils.hasText(legacyJson)) {
+            List<dev.langchain4j.data.message.ChatMessage> legacyMessages = ChatMessageDeserializer.messagesFromJson(legacyJson);
+            if (legacyMessages.size() > windowSize) {
+                legacyMessages = new ArrayList<>(legacyMessages.subList(legacyMessages.size() - windowSize, legacyMessages.size()));
+            }
+            rewriteMemoryList(sessionId, legacyMessages);
+            redisTemplate.delete(legacyKey);
+            log.info("已将旧版会话缓存迁移为列表结构，消息数: {}", legacyMessages.size());
+            return new ChatMemoryWindow(legacyMessages, summary);
+        }
+
+        log.info("Redis中无数据，从MySQL查询最近 {} 条", windowSize);
+        // 先取异步入库队列中尚未落库的消息，再查询数据库，避免窗口缺失最近几条
+        List<ChatMessage> pendingMessages = chatMessageWriteBehindService.pendingMessages(sessionId);
+        // 只按 (session_id, id) 倒序取最新一个窗口的消息，冷读成本与历史长度无关
+        List<ChatMessage> recentMessages = chatMessageMapper.selectRecentBySessionId(sessionId, null, windowSize);
+        Collections.reverse(recentMessages);
+        List<ChatMessage> dbMessages = mergePendingMessages(recentMessages, pendingMessages);
+
+        if (dbMessages == null || dbMessages.isEmpty()) {
+            log.info("MySQL中也没有数据，返回只包含系统消息的列表");
+            return new ChatMemoryWindow(new ArrayList<>(), summary);
+        }
+
+        log.info("从MySQL获取到{}条消息", dbMessages.size());
+        List<dev.langchain4j.data.message.ChatMessage> nonSystemMessages = convertToLangchainMessages(dbMessages);
+        if (nonSystemMessages.size() > windowSize) {
+            nonSystemMessages = new ArrayList<>(nonSystemMessages.subList(nonSystemMessages.size() - windowSize, nonSystemMessages.size()));
+        }
+        rewriteMemoryList(sessionId, nonSystemMessages);
+        log.info("已将查询结果缓存到Redis，过期时间{}", chatMemoryProperties.getTtl());
+        return new ChatMemoryWindow(nonSystemMessages, summary);
+    }
+
     @Override
     public void updateMessages(Object memoryId, List<dev.langchain4j.data.message.ChatMessage> messages) {
-        ensureInitialized();
-
         String sessionId = memoryId.toString();
         log.info("更新会话消息，sessionId: {}, 消息数量: {}", sessionId, messages.size());
 
@@ -292,33 +466,248 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
                     .filter(msg -> !(msg instanceof SystemMessage))
                     .collect(Collectors.toList());
 
-            // 更新Redis缓存（仅存储内存窗口内的消息）
-            String redisKey = getRedisKey(sessionId);
-            String json = ChatMessageSerializer.messagesToJson(nonSystemMessages);
-            redisTemplate.opsForValue().set(redisKey, json, Duration.ofDays(1));
-            log.info("已更新Redis缓存");
+            // 仅追加新增消息到Redis列表，并裁剪到窗口大小
+            List<dev.langchain4j.data.message.ChatMessage> appendedMessages = appendToMemoryList(sessionId, nonSystemMessages);
+            log.info("已更新Redis缓存，新增 {} 条消息", appendedMessages.size());
+            if (!nonSystemMessages.isEmpty()) {
+                // Redis中的窗口此时与传入窗口一致，直接覆盖本地缓存
+                chatMemoryNearCache.putAfterWrite(sessionId, nonSystemMessages);
+            }
             
             // 若为短暂会话（语音通话），跳过数据库持久化
+            // 语音阶段的消息只会在产生时被识别为新增，之后留在窗口中也不会再次入库
             if (isEphemeralSession(sessionId)) {
                 log.info("会话 {} 标记为临时（语音通话），跳过数据库存储", sessionId);
-                // 记录语音阶段的最新消息哈希，避免之后因为窗口缓存导致误入库
-                try {
-                    if (!nonSystemMessages.isEmpty()) {
-                        dev.langchain4j.data.message.ChatMessage lastMessage =
-                                nonSystemMessages.get(nonSystemMessages.size() - 1);
-                        recordEphemeralMessageHash(sessionId, lastMessage);
-                    }
-                } catch (Exception e) {
-                    log.warn("记录语音阶段消息哈希失败: sessionId={}", sessionId, e);
-                }
             } else {
-                // 完整存储所有消息到数据库（不受内存窗口限制）
-                storeAllMessagesToDatabase(sessionId, nonSystemMessages);
+                // 新增消息交给异步入库队列，不阻塞LLM流式回调线程
+                storeNewMessagesToDatabase(sessionId, appendedMessages);
             }
+
+            // 一轮对话结束且窗口较长时，异步将较早的对话折叠进滚动摘要
+            scheduleCompactionIfNeeded(sessionId, nonSystemMessages);
             
         } catch (Exception e) {
             log.error("更新会话消息失败，sessionId: {}", sessionId, e);
+            // Redis写入结果不确定，丢弃本地缓存，下次读取时回源
+            chatMemoryNearCache.invalidate(sessionId);
+        }
+    }
+
+    /**
+     * 将窗口中新增的消息追加到Redis列表
+     *
+     * LangChain4j 每次更新都会传入完整窗口（旧窗口 + 新消息 - 头部淘汰的消息），
+     * 这里通过一次流水线读取列表长度与首尾元素，定位旧窗口末尾在新窗口中的位置，
+     * 只序列化其后的新消息，由脚本一次完成 RPUSH、LTRIM 裁剪与续期。
+     * 无法定位时退化为整体重写。
+     *
+     * @return 本次新增的消息
+     */
+    private List<dev.langchain4j.data.message.ChatMessage> appendToMemoryList(
+            String sessionId, List<dev.langchain4j.data.message.ChatMessage> window) {
+        if (window.isEmpty()) {
+            return Collections.emptyList();
+        }
+        byte[] rawKey = getMemoryListKey(sessionId).getBytes(StandardCharsets.UTF_8);
+        // 元素可能是二进制编码，结果保持原始字节
+        List<Object> state = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.listCommands().lLen(rawKey);
+            connection.listCommands().lIndex(rawKey, 0);
+            connection.listCommands().lIndex(rawKey, -1);
+            return null;
+        }, RedisSerializer.byteArray());
+        long storedSize = state.get(0) == null ? 0L : (Long) state.get(0);
+        byte[] storedHead = (byte[]) state.get(1);
+        byte[] storedTail = (byte[]) state.get(2);
+
+        int appendFrom = storedSize == 0 ? -1 : locateAppendOffset(window, storedSize, storedHead, storedTail);
+        if (appendFrom < 0) {
+            // 缓存缺失或无法对齐：整体重写窗口，仅将最后一条视为新消息
+            rewriteMemoryList(sessionId, window);
+            return window.subList(window.size() - 1, window.size());
+        }
+
+        List<dev.langchain4j.data.message.ChatMessage> appended = window.subList(appendFrom, window.size());
+        byte[][] keysAndArgs = new byte[4 + appended.size()][];
+        keysAndArgs[0] = rawKey;
+        // 摘要随窗口一起续期
+        keysAndArgs[1] = getSummaryKey(sessionId).getBytes(StandardCharsets.UTF_8);
+        keysAndArgs[2] = String.valueOf(chatMemoryProperties.getTtl().getSeconds()).getBytes(StandardCharsets.UTF_8);
+        keysAndArgs[3] = String.valueOf(window.size()).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < appended.size(); i++) {
+            keysAndArgs[4 + i] = chatMemoryCodecs.encode(appended.get(i));
+        }
+        redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.scriptingCommands().eval(APPEND_SCRIPT, ReturnType.INTEGER, 2, keysAndArgs));
+        return appended;
+    }
+
+    /**
+     * 定位新增消息在窗口中的起始下标
+     *
+     * 新窗口 = 旧窗口去掉头部 e 条 + 追加 k 条，因此旧窗口的末尾元素一定位于新窗口的 size-1-k 处，
+     * 且 k >= size - storedSize。从末尾向前查找第一个满足约束且内容一致的位置即可。
+     * 比较的是解码后的消息，与存储时使用的编码格式无关。
+     *
+     * @return 新增消息的起始下标，无法定位时返回 -1
+     */
+    private int locateAppendOffset(List<dev.langchain4j.data.message.ChatMessage> window,
+                                   long storedSize, byte[] storedHead, byte[] storedTail) {
+        if (storedTail == null || storedHead == null) {
+            return -1;
+        }
+        dev.langchain4j.data.message.ChatMessage tailMessage;
+        dev.langchain4j.data.message.ChatMessage headMessage;
+        try {
+            tailMessage = chatMemoryCodecs.decode(storedTail);
+            headMessage = chatMemoryCodecs.decode(storedHead);
+        } catch (Exception e) {
+            log.warn("解析Redis窗口首尾消息失败，将整体重写窗口", e);
+            return -1;
+        }
+        int size = window.size();
+        int minAppended = (int) Math.max(0, size - storedSize);
+        for (int p = size - 1 - minAppended; p >= 0; p--) {
+            if (!tailMessage.equals(window.get(p))) {
+                continue;
+            }
+            int appended = size - 1 - p;
+            long evicted = storedSize + appended - size;
+            // 未发生淘汰时头部必须一致，用于区分重复内容造成的误匹配
+            if (evicted == 0 && !headMessage.equals(window.get(0))) {
+                continue;
+            }
+            return p + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * 整体重写会话窗口列表
+     */
+    private void rewriteMemoryList(String sessionId, List<dev.langchain4j.data.message.ChatMessage> messages) {
+        byte[][] keysAndArgs = new byte[2 + messages.size()][];
+        keysAndArgs[0] = getMemoryListKey(sessionId).getBytes(StandardCharsets.UTF_8);
+        keysAndArgs[1] = String.valueOf(chatMemoryProperties.getTtl().getSeconds()).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < messages.size(); i++) {
+            keysAndArgs[2 + i] = chatMemoryCodecs.encode(messages.get(i));
         }
+        redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.scriptingCommands().eval(REWRITE_SCRIPT, ReturnType.INTEGER, 1, keysAndArgs));
+    }
+
+    /**
+     * 一轮对话结束（最后一条为AI回复）且窗口达到阈值时，提交异步压缩任务，不阻塞当前回复
+     */
+    private void scheduleCompactionIfNeeded(String sessionId, List<dev.langchain4j.data.message.ChatMessage> window) {
+        if (!chatMemoryProperties.isSummaryEnabled()
+                || window.size() < chatMemoryProperties.getSummaryTriggerMessages()
+                || !(window.get(window.size() - 1) instanceof AiMessage)) {
+            return;
+        }
+        if (!compactingSessions.add(sessionId)) {
+            return;
+        }
+        Mono.fromRunnable(() -> {
+                    // 压缩会替换摘要：期间本地缓存不回填、写入不沿用旧摘要，结束后再失效一次
+                    chatMemoryNearCache.beginCompaction(sessionId);
+                    try {
+                        compactMemory(sessionId);
+                    } finally {
+                        chatMemoryNearCache.endCompaction(sessionId);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .doFinally(signal -> compactingSessions.remove(sessionId))
+                .subscribe(null, e -> log.error("压缩会话记忆失败，sessionId: {}", sessionId, e));
+    }
+
+    /**
+     * 将窗口中较早的消息与已有摘要合并为新摘要，并从窗口列表头部移除这些消息
+     * 摘要耗时较长，期间若有新消息追加到尾部不受影响；若头部已变化则放弃本次结果
+     */
+    @SuppressWarnings("unchecked")
+    private void compactMemory(String sessionId) {
+        byte[] rawKey = getMemoryListKey(sessionId).getBytes(StandardCharsets.UTF_8);
+        byte[] summaryKey = getSummaryKey(sessionId).getBytes(StandardCharsets.UTF_8);
+        List<Object> state = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.listCommands().lRange(rawKey, 0, -1);
+            connection.stringCommands().get(summaryKey);
+            return null;
+        }, RedisSerializer.byteArray());
+        List<byte[]> entries = (List<byte[]>) state.get(0);
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        List<dev.langchain4j.data.message.ChatMessage> messages = new ArrayList<>(entries.size());
+        for (byte[] entry : entries) {
+            messages.add(chatMemoryCodecs.decode(entry));
+        }
+
+        int fold = messages.size() - Math.max(2, chatMemoryProperties.getSummaryKeepMessages());
+        // 保留部分从用户消息开始，不拆开同一轮对话
+        while (fold > 0 && fold < messages.size() && !(messages.get(fold) instanceof UserMessage)) {
+            fold++;
+        }
+        if (fold <= 0 || fold >= messages.size()) {
+            return;
+        }
+
+        byte[] previous = (byte[]) state.get(1);
+        String transcript = buildSummaryTranscript(sessionId,
+                previous == null ? null : new String(previous, StandardCharsets.UTF_8), messages.subList(0, fold));
+        long start = System.currentTimeMillis();
+        String summary = memorySummaryService.summarize(transcript);
+        if (!StringUtils.hasText(summary)) {
+            log.warn("摘要模型返回为空，跳过本次压缩: sessionId={}", sessionId);
+            return;
+        }
+        summary = summary.trim();
+        if (summary.length() > chatMemoryProperties.getSummaryMaxChars()) {
+            summary = summary.substring(0, chatMemoryProperties.getSummaryMaxChars());
+        }
+
+        byte[][] keysAndArgs = {
+                rawKey,
+                summaryKey,
+                entries.get(0),
+                String.valueOf(fold).getBytes(StandardCharsets.UTF_8),
+                summary.getBytes(StandardCharsets.UTF_8),
+                String.valueOf(chatMemoryProperties.getTtl().getSeconds()).getBytes(StandardCharsets.UTF_8)
+        };
+        Long applied = redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.scriptingCommands().eval(COMPACT_SCRIPT, ReturnType.INTEGER, 2, keysAndArgs));
+        if (applied != null && applied == 1) {
+            log.info("会话记忆已压缩: sessionId={}, 折叠 {} 条，保留 {} 条，摘要 {} 字，耗时 {}ms",
+                    sessionId, fold, messages.size() - fold, summary.length(), System.currentTimeMillis() - start);
+        } else {
+            log.info("压缩期间会话窗口已变化，放弃本次摘要: sessionId={}", sessionId);
+        }
+    }
+
+    /**
+     * 组装摘要模型的输入：已有摘要 + 需要折叠的对话
+     */
+    private String buildSummaryTranscript(String sessionId, String previousSummary,
+                                          List<dev.langchain4j.data.message.ChatMessage> messages) {
+        ChatSessionMeta meta = chatSessionMetaCache.getOrLoad(sessionId, this::loadSessionMeta);
+        String characterName = meta != null && StringUtils.hasText(meta.getCharacterName()) ? meta.getCharacterName() : "角色";
+
+        StringBuilder transcript = new StringBuilder();
+        transcript.append("已有摘要：\n")
+                .append(StringUtils.hasText(previousSummary) ? previousSummary : "（无）")
+                .append("\n\n新增对话：\n");
+        for (dev.langchain4j.data.message.ChatMessage message : messages) {
+            if (message instanceof UserMessage userMessage) {
+                transcript.append("用户：").append(userMessage.hasSingleText() ? userMessage.singleText() : userMessage.toString());
+            } else if (message instanceof AiMessage aiMessage && aiMessage.text() != null) {
+                transcript.append(characterName).append("：").append(aiMessage.text());
+            } else {
+                continue;
+            }
+            transcript.append('\n');
+        }
+        return transcript.toString();
     }
 
     /**
@@ -371,10 +760,11 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
     @Override
     public void deleteMessages(Object memoryId) {
         String sessionId = memoryId.toString();
-        String redisKey = getRedisKey(sessionId);
+        String redisKey = getMemoryListKey(sessionId);
 
         try {
-            redisTemplate.delete(redisKey);
+            redisTemplate.delete(List.of(redisKey, getRedisKey(sessionId), getSummaryKey(sessionId), SEQ_KEY_PREFIX + sessionId));
+            chatMemoryNearCache.invalidate(sessionId);
             log.info("已删除Redis缓存: {}", redisKey);
 
             LambdaQueryWrapper<ChatMessage> deleteWrapper = new LambdaQueryWrapper<>();
@@ -388,15 +778,38 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
     }
 
     /**
-     * 动态添加SYSTEM消息到消息列表前面
+     * 将尚未落库的消息拼接到数据库结果之后
+     * 查询期间可能恰好有一批消息写入数据库，这里按序号跳过数据库中已存在的部分
+     */
+    private List<ChatMessage> mergePendingMessages(List<ChatMessage> dbMessages, List<ChatMessage> pendingMessages) {
+        if (pendingMessages.isEmpty()) {
+            return dbMessages;
+        }
+        List<ChatMessage> merged = dbMessages == null ? new ArrayList<>() : new ArrayList<>(dbMessages);
+        long maxDbSeq = 0;
+        for (ChatMessage db : merged) {
+            if (db.getSeq() != null) {
+                maxDbSeq = Math.max(maxDbSeq, db.getSeq());
+            }
+        }
+        for (ChatMessage pending : pendingMessages) {
+            if (pending.getSeq() == null || pending.getSeq() > maxDbSeq) {
+                merged.add(pending);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 动态添加SYSTEM消息到消息列表前面，存在滚动摘要时追加到系统消息末尾
      */
     private List<dev.langchain4j.data.message.ChatMessage> addSystemMessageToMessages(
-            List<dev.langchain4j.data.message.ChatMessage> messages, String sessionId) {
-        List<dev.langchain4j.data.message.ChatMessage> result = new ArrayList<>();
+            ChatMemoryWindow window, String sessionId) {
+        List<dev.langchain4j.data.message.ChatMessage> result = new ArrayList<>(window.messages().size() + 1);
 
-        SystemMessage systemMessage = getSystemMessageBySessionId(sessionId);
-        result.add(systemMessage);
-        result.addAll(messages);
+        // 系统提示词按（模板, 版本, 昵称）复用同一实例，合入摘要的结果随窗口缓存
+        result.add(window.systemMessage(getSystemMessageBySessionId(sessionId)));
+        result.addAll(window.messages());
 
         return result;
     }
@@ -461,145 +874,67 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
     }
 
     /**
-     * 完整存储所有消息到数据库，不受内存窗口限制
-     * 这个方法会存储会话中的每一条消息，而不仅仅是内存窗口中的消息
+     * 将本轮新增的消息加入异步入库队列
+     * 新增消息由Redis列表追加时确定，无需再查询数据库判断是否已存在
      */
-    private void storeAllMessagesToDatabase(String sessionId, List<dev.langchain4j.data.message.ChatMessage> currentWindowMessages) {
+    private void storeNewMessagesToDatabase(String sessionId, List<dev.langchain4j.data.message.ChatMessage> newMessages) {
+        if (newMessages.isEmpty()) {
+            return;
+        }
         try {
-            // 获取数据库中已存在的消息数量
-            LambdaQueryWrapper<ChatMessage> countWrapper = new LambdaQueryWrapper<>();
-            countWrapper.eq(ChatMessage::getSessionId, sessionId)
-                    .ne(ChatMessage::getMessageType, "SYSTEM");
-            Long existingCount = chatMessageMapper.selectCount(countWrapper);
-            
-            log.info("会话 {} 数据库中已有 {} 条消息，当前内存窗口有 {} 条消息", sessionId, existingCount, currentWindowMessages.size());
-            
-            // 检查是否有新消息需要存储
-            // 由于LangChain4j的内存窗口限制，我们需要检测新增的消息
-            if (!currentWindowMessages.isEmpty()) {
-                // 获取当前窗口中的最后一条消息
-                dev.langchain4j.data.message.ChatMessage lastMessage = currentWindowMessages.get(currentWindowMessages.size() - 1);
-
-                // 如果最后一条消息是在语音阶段产生过（哈希存在于Redis集合），则永不入库
-                if (isEphemeralPhaseMessage(sessionId, lastMessage)) {
-                    log.info("跳过语音阶段消息的入库（哈希命中）: sessionId={}", sessionId);
-                    return;
-                }
-                
-                // 检查这条消息是否已经存在于数据库中
-                if (!isMessageExistsInDatabase(sessionId, lastMessage)) {
-                    // 如果最后一条消息不存在，说明有新消息需要存储
-                    ChatMessage dbMessage = convertSingleMessageToDb(sessionId, lastMessage);
-                    if (dbMessage != null) {
-                        chatMessageMapper.insert(dbMessage);
-                        log.info("成功存储新消息到数据库: {} - {}", dbMessage.getMessageType(), 
-                                dbMessage.getContent().length() > 50 ? 
-                                dbMessage.getContent().substring(0, 50) + "..." : 
-                                dbMessage.getContent());
-                        // if(dbMessage.getMessageType().equals("ASSISTANT")) {
-                        //     messageTurnToAiVoiceTool.turnToAiVoice(dbMessage.getContent(),dbMessage.getSessionId());
-                        // }
-                    }
-                } else {
-                    log.debug("消息已存在于数据库中，无需重复存储");
+            // 为新增消息分配会话内递增序号，入库按 (session_id, seq) 幂等
+            long seq = allocateSequences(sessionId, newMessages.size());
+            List<ChatMessage> rows = new ArrayList<>(newMessages.size());
+            for (dev.langchain4j.data.message.ChatMessage message : newMessages) {
+                ChatMessage dbMessage = convertSingleMessageToDb(sessionId, message, seq++);
+                if (dbMessage != null) {
+                    rows.add(dbMessage);
                 }
             }
-            
-        } catch (Exception e) {
-            log.error("完整存储消息到数据库失败，sessionId: {}", sessionId, e);
-        }
-    }
-
-    /**
-     * 记录语音阶段产生的消息哈希到 Redis 集合
-     */
-    private void recordEphemeralMessageHash(String sessionId, dev.langchain4j.data.message.ChatMessage message) {
-        try {
-            String key = EPHEMERAL_MSG_SET_PREFIX + sessionId;
-            String hash = hashMessageForDedup(message);
-            if (StringUtils.hasText(hash)) {
-                redisTemplate.opsForSet().add(key, hash);
-                redisTemplate.expire(key, EPHEMERAL_MSG_TTL);
-                log.debug("记录语音阶段消息哈希: {} -> {}", sessionId, hash);
+            if (!rows.isEmpty()) {
+                chatMessageWriteBehindService.enqueue(rows);
+                log.info("已加入异步入库队列 {} 条消息: sessionId={}", rows.size(), sessionId);
             }
         } catch (Exception e) {
-            log.warn("记录语音阶段消息哈希失败: sessionId={}", sessionId, e);
+            log.error("加入异步入库队列失败，sessionId: {}", sessionId, e);
         }
     }
 
     /**
-     * 判断消息是否属于语音阶段（哈希在 Redis 集合中）
+     * 分配连续的会话内序号
+     *
+     * Redis计数器存在时一次 INCRBY 即可；计数器缺失（首次使用、已过期或Redis数据丢失）时，
+     * 以数据库与待入库队列中的最大序号为种子，在同一个脚本中初始化并分配。
+     * 计数器与记忆窗口使用相同的TTL，每次分配时续期，不活跃的会话不会在Redis中残留计数器。
+     *
+     * @return 分配到的第一个序号
      */
-    private boolean isEphemeralPhaseMessage(String sessionId, dev.langchain4j.data.message.ChatMessage message) {
-        try {
-            String key = EPHEMERAL_MSG_SET_PREFIX + sessionId;
-            String hash = hashMessageForDedup(message);
-            if (!StringUtils.hasText(hash)) return false;
-            Boolean member = redisTemplate.opsForSet().isMember(key, hash);
-            return Boolean.TRUE.equals(member);
-        } catch (Exception e) {
-            log.warn("检查语音阶段消息哈希失败: sessionId={}", sessionId, e);
-            return false;
-        }
-    }
-
-    /**
-     * 为消息生成去重哈希（类型+内容 的 SHA-1）
-     */
-    private String hashMessageForDedup(dev.langchain4j.data.message.ChatMessage message) {
-        try {
-            String type = getMessageType(message);
-            String content = getMessageContent(message);
-            String payload = type + "|" + (content == null ? "" : content);
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            byte[] digest = md.digest(payload.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            for (byte b : digest) {
-                sb.append(String.format("%02x", b));
+    private long allocateSequences(String sessionId, int count) {
+        List<String> keys = Collections.singletonList(SEQ_KEY_PREFIX + sessionId);
+        String ttlSeconds = String.valueOf(chatMemoryProperties.getTtl().getSeconds());
+        Long last = redisTemplate.execute(ALLOCATE_SEQ_SCRIPT, keys, String.valueOf(count), ttlSeconds);
+        if (last == null || last < 0) {
+            long seed = chatMessageMapper.selectMaxSeq(sessionId);
+            for (ChatMessage pending : chatMessageWriteBehindService.pendingMessages(sessionId)) {
+                if (pending.getSeq() != null) {
+                    seed = Math.max(seed, pending.getSeq());
+                }
             }
-            return sb.toString();
-        } catch (Exception e) {
-            log.warn("生成消息哈希失败: {}", message, e);
-            return null;
-        }
-    }
-    
-    /**
-     * 检查消息是否已存在于数据库中
-     */
-    private boolean isMessageExistsInDatabase(String sessionId, dev.langchain4j.data.message.ChatMessage message) {
-        try {
-            // 获取数据库中最后几条消息进行比较
-            LambdaQueryWrapper<ChatMessage> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(ChatMessage::getSessionId, sessionId)
-                    .ne(ChatMessage::getMessageType, "SYSTEM")
-                    .orderByDesc(ChatMessage::getCreatedAt)
-                    .last("LIMIT 5"); // 只检查最后5条消息
-            
-            List<ChatMessage> recentMessages = chatMessageMapper.selectList(queryWrapper);
-            
-            String messageContent = getMessageContent(message);
-            String messageType = getMessageType(message);
-            
-            // 检查是否有相同内容和类型的消息
-            return recentMessages.stream().anyMatch(dbMsg -> 
-                messageType.equals(dbMsg.getMessageType()) && 
-                messageContent.equals(dbMsg.getContent())
-            );
-            
-        } catch (Exception e) {
-            log.error("检查消息是否存在时发生错误", e);
-            return false;
+            log.info("初始化会话序号计数器: sessionId={}, seed={}", sessionId, seed);
+            // 并发初始化时脚本内只有第一个生效，后到的直接在其基础上递增
+            last = redisTemplate.execute(ALLOCATE_SEQ_SCRIPT, keys, String.valueOf(count), ttlSeconds, String.valueOf(seed));
         }
+        return last - count + 1;
     }
-    
+
     /**
      * 将单条LangChain4j消息转换为数据库消息
      */
-    private ChatMessage convertSingleMessageToDb(String sessionId, dev.langchain4j.data.message.ChatMessage message) {
+    private ChatMessage convertSingleMessageToDb(String sessionId, dev.langchain4j.data.message.ChatMessage message, long seq) {
         try {
             ChatMessage dbMessage = new ChatMessage();
             dbMessage.setSessionId(sessionId);
+            dbMessage.setSeq(seq);
             
             if (message instanceof UserMessage) {
                 String content = ((UserMessage) message).singleText();
@@ -624,31 +959,6 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
         }
     }
     
-    /**
-     * 获取消息内容
-     */
-    private String getMessageContent(dev.langchain4j.data.message.ChatMessage message) {
-        if (message instanceof UserMessage) {
-            return ((UserMessage) message).singleText();
-        } else if (message instanceof AiMessage) {
-            return ((AiMessage) message).text();
-        } else {
-            return message.toString();
-        }
-    }
-    
-    /**
-     * 获取消息类型
-     */
-    private String getMessageType(dev.langchain4j.data.message.ChatMessage message) {
-        if (message instanceof UserMessage) {
-            return "USER";
-        } else if (message instanceof AiMessage) {
-            return "ASSISTANT";
-        } else {
-            return "USER";
-        }
-    }
 //    private void insertNewMessagesOnly(String sessionId, List<dev.langchain4j.data.message.ChatMessage> newMessages) {
 //        try {
 //            // 获取数据库中已存在的消息数量
@@ -726,6 +1036,13 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
     @Override
     public void recordChatSession(String sessionId, Short characterType) {
         try {
+            // 本地缓存命中且角色一致时无需访问数据库
+            ChatSessionMeta cached = chatSessionMetaCache.get(sessionId);
+            if (cached != null && characterType.equals(cached.getCharacterType())) {
+                log.debug("会话元数据缓存命中，无需更新: sessionId={}", sessionId);
+                return;
+            }
+
             LambdaQueryWrapper<ChatSession> queryWrapper = new LambdaQueryWrapper<>();
             queryWrapper.eq(ChatSession::getSessionId, sessionId);
             ChatSession existingSession = chatSessionMapper.selectOne(queryWrapper);
@@ -740,6 +1057,7 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
                 chatSession.setUpdatedAt(LocalDateTime.now());
 
                 chatSessionMapper.insert(chatSession);
+                chatSessionMetaCache.put(sessionId, toSessionMeta(chatSession));
                 log.info("已记录新会话: sessionId={}, characterType={}, characterName={}",
                         sessionId, characterType, getCharacterNameByType(characterType));
             } else {
@@ -749,9 +1067,13 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
                     existingSession.setUpdatedAt(LocalDateTime.now());
 
                     chatSessionMapper.updateById(existingSession);
+                    // 角色变更：通知其他节点失效后再写入本地缓存
+                    chatSessionMetaCache.invalidate(sessionId);
+                    chatSessionMetaCache.put(sessionId, toSessionMeta(existingSession));
                     log.info("已更新会话角色: sessionId={}, characterType={}, characterName={}",
                             sessionId, characterType, getCharacterNameByType(characterType));
                 } else {
+                    chatSessionMetaCache.put(sessionId, toSessionMeta(existingSession));
                     log.debug("会话已存在且角色类型相同，无需更新: sessionId={}", sessionId);
                 }
             }
@@ -764,15 +1086,12 @@ public class MyChatMemoryStoreImpl implements MyChatMemoryStore {
      * 根据角色类型获取角色名称
      */
     private String getCharacterNameByType(Short characterType) {
-        return switch (characterType) {
-            case 0 -> "宵宫";
-            case 1 -> "温迪";
-            case 2 -> "胡桃";
-            default -> {
-                log.warn("不支持的角色类型: {}, 使用默认名称", characterType);
-                yield "默认角色";
-            }
-        };
+        CharacterProfile character = characterType == null ? null : characterRegistry.getByType(characterType);
+        if (character == null) {
+            log.warn("不支持的角色类型: {}, 使用默认名称", characterType);
+            return "默认角色";
+        }
+        return character.getName();
     }
 
     /**
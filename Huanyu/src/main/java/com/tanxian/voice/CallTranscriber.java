@@ -0,0 +1,27 @@
+package com.tanxian.voice;
+
+/**
+ * 一路通话使用的识别与回复处理器
+ *
+ * 通话只通过这几个操作驱动处理器，不依赖具体实现及其内部的识别连接。
+ */
+public interface CallTranscriber {
+
+    /**
+     * 发送一帧麦克风音频进行识别
+     *
+     * @param pcm       PCM 音频数据
+     * @param sessionId 所选角色的会话ID
+     */
+    void process(byte[] pcm, String sessionId);
+
+    /**
+     * 打断当前回复，不停止收音
+     */
+    void interrupt();
+
+    /**
+     * 结束识别并释放本路通话的资源，只会被调用一次
+     */
+    void close();
+}
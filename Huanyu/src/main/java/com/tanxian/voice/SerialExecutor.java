@@ -0,0 +1,77 @@
+package com.tanxian.voice;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 串行任务队列
+ *
+ * 提交的任务按顺序在共享执行器上逐个执行，同一时刻最多占用一个线程，队列为空时不占用任何线程。
+ * 用于在共享的虚拟线程执行器上保证单个通话内部的执行顺序。
+ * 单个任务抛出的异常只记录日志，不影响后续任务；关闭后未执行的任务和新提交的任务都直接丢弃。
+ */
+@Slf4j
+public class SerialExecutor implements Executor {
+
+    private final String name;
+    private final Executor delegate;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    public SerialExecutor(String name, Executor delegate) {
+        this.name = name;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (closed) {
+            return;
+        }
+        tasks.offer(task);
+        schedule();
+    }
+
+    /**
+     * 丢弃未执行的任务并拒绝新任务，正在执行的任务不会被打断
+     */
+    public void close() {
+        closed = true;
+        tasks.clear();
+    }
+
+    private void schedule() {
+        if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                delegate.execute(this::drain);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            while (!closed && (task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    log.warn("串行任务执行失败 [{}]: {}", name, t.toString(), t);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // 释放标记前可能有新任务入队，需要重新检查
+            if (!closed) {
+                schedule();
+            }
+        }
+    }
+}
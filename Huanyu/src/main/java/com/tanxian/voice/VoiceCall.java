@@ -0,0 +1,153 @@
+package com.tanxian.voice;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 一路语音通话的状态
+ *
+ * 每个 WebSocket 连接对应一个实例，持有该连接的识别处理器和所选角色的会话ID，
+ * 连接处理器的各个回调只按连接ID找到对应实例再分派，不同通话之间不共享任何可变状态。
+ * 阶段通过 CAS 切换，无需加锁；进入 CLOSED 后不再离开。
+ *
+ * 阶段：HANDSHAKE（已连接，尚未选择角色）→ LISTENING（收音识别中）→ THINKING（已识别出一句，等待模型回复）
+ * → SPEAKING（播放回复语音）→ 回复结束回到 LISTENING；用户打断时进入 INTERRUPTED，连接断开后为 CLOSED。
+ */
+@Slf4j
+public class VoiceCall {
+
+    public enum Phase {
+        HANDSHAKE,
+        LISTENING,
+        THINKING,
+        SPEAKING,
+        INTERRUPTED,
+        CLOSED
+    }
+
+    private final WebSocketSession session;
+    private final CallTranscriber transcriber;
+    private final AtomicReference<Phase> phase = new AtomicReference<>(Phase.HANDSHAKE);
+    private final AtomicReference<String> sessionId = new AtomicReference<>();
+    // 尚未结束的回复轮数，全部结束后回到 LISTENING
+    private final AtomicInteger pendingTurns = new AtomicInteger();
+
+    public VoiceCall(WebSocketSession session, CallTranscriber transcriber) {
+        this.session = session;
+        this.transcriber = transcriber;
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    public Phase getPhase() {
+        return phase.get();
+    }
+
+    public String getSessionId() {
+        return sessionId.get();
+    }
+
+    public boolean isClosed() {
+        return phase.get() == Phase.CLOSED;
+    }
+
+    /**
+     * 选择（或切换）通话角色
+     *
+     * @return 被替换的会话ID，没有时为 null
+     */
+    public String bindCharacter(String newSessionId) {
+        String previous = sessionId.getAndSet(newSessionId);
+        phase.compareAndSet(Phase.HANDSHAKE, Phase.LISTENING);
+        return newSessionId.equals(previous) ? null : previous;
+    }
+
+    /**
+     * 收到一帧麦克风音频；选择角色之前的音频无法归属会话，直接丢弃
+     */
+    public void onAudio(byte[] pcm) {
+        Phase current = phase.get();
+        if (current == Phase.HANDSHAKE || current == Phase.CLOSED) {
+            return;
+        }
+        transcriber.process(pcm, sessionId.get());
+    }
+
+    /**
+     * 用户打断当前回复
+     */
+    public void interrupt() {
+        if (transition(Phase.INTERRUPTED, Phase.THINKING, Phase.SPEAKING)) {
+            transcriber.interrupt();
+        }
+    }
+
+    /**
+     * 识别出一句话，开始新一轮回复
+     */
+    public void beginTurn() {
+        pendingTurns.incrementAndGet();
+        transition(Phase.THINKING, Phase.LISTENING, Phase.SPEAKING, Phase.INTERRUPTED);
+    }
+
+    /**
+     * 开始播放一段回复语音
+     */
+    public void beginSpeaking() {
+        transition(Phase.SPEAKING, Phase.LISTENING, Phase.THINKING, Phase.INTERRUPTED);
+    }
+
+    /**
+     * 一轮回复结束（播放完、被打断或失败）
+     */
+    public void endTurn() {
+        if (pendingTurns.decrementAndGet() <= 0) {
+            pendingTurns.set(0);
+            transition(Phase.LISTENING, Phase.THINKING, Phase.SPEAKING, Phase.INTERRUPTED);
+        }
+    }
+
+    /**
+     * 结束通话并释放识别连接，只有第一次调用生效
+     *
+     * @return 本次调用是否实际关闭了通话
+     */
+    public boolean close() {
+        if (phase.getAndSet(Phase.CLOSED) == Phase.CLOSED) {
+            return false;
+        }
+        try {
+            transcriber.close();
+        } catch (Exception e) {
+            log.warn("释放通话识别资源失败: {}", e.toString());
+        }
+        return true;
+    }
+
+    private boolean transition(Phase to, Phase... from) {
+        while (true) {
+            Phase current = phase.get();
+            if (!contains(from, current)) {
+                return false;
+            }
+            if (phase.compareAndSet(current, to)) {
+                log.debug("语音通话 {} 阶段: {} -> {}", session.getId(), current, to);
+                return true;
+            }
+        }
+    }
+
+    private static boolean contains(Phase[] phases, Phase target) {
+        for (Phase p : phases) {
+            if (p == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
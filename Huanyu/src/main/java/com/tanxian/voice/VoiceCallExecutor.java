@@ -0,0 +1,60 @@
+package com.tanxian.voice;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 语音通话共享的虚拟线程执行器
+ *
+ * 通话中的 WebSocket 发送、TTS 流式播放和识别/模型回调都是阻塞 I/O 为主的任务，
+ * 原先每个连接各自创建单线程池，连接数一多就耗尽平台线程。这里所有通话共用一个每任务一虚拟线程的执行器，
+ * 通话内部的顺序由 {@link SerialExecutor} 保证。
+ */
+@Component
+public class VoiceCallExecutor implements Executor {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger running = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("voice.executor.running", running, AtomicInteger::get)
+                .description("语音通话执行器中正在运行的任务数").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(() -> {
+            running.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * 为一个通话创建串行任务队列
+     */
+    public SerialExecutor newSerialQueue(String name) {
+        return new SerialExecutor(name, this);
+    }
+}
@@ -0,0 +1,149 @@
+package com.tanxian.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WavAssemblerTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    void concatenatesSegmentsAndRewritesHeader() {
+        byte[] first = pcm(100, 1);
+        byte[] second = pcm(60, 2);
+        WavAssembler assembler = new WavAssembler(1 << 20);
+        feed(assembler, wav(1, first, false), 7);
+        feed(assembler, wav(1, second, true), 5);
+
+        byte[] result = assembler.toWav();
+        assertTrue(assembler.isComplete());
+        assertEquals(44 + first.length + second.length, result.length);
+        assertEquals("RIFF", ascii(result, 0));
+        assertEquals(36 + first.length + second.length, readInt(result, 4));
+        assertEquals(first.length + second.length, readInt(result, 40));
+        assertArrayEquals(concat(first, second), Arrays.copyOfRange(result, 44, result.length));
+    }
+
+    @Test
+    void dropsTrailingPartialFrameOfEachSegment() {
+        // 双声道 16 位，每帧 4 字节；第一段多出 3 字节
+        byte[] first = pcm(41, 1);
+        byte[] second = pcm(8, 2);
+        WavAssembler assembler = new WavAssembler(1 << 20);
+        feed(assembler, wav(2, first, false), 3);
+        feed(assembler, wav(2, second, false), 1);
+
+        byte[] result = assembler.toWav();
+        assertArrayEquals(concat(Arrays.copyOf(first, 40), second), Arrays.copyOfRange(result, 44, result.length));
+    }
+
+    @Test
+    void treatsHeaderlessSegmentAsRawPcm() {
+        byte[] first = pcm(20, 1);
+        byte[] raw = pcm(16, 3);
+        WavAssembler assembler = new WavAssembler(1 << 20);
+        feed(assembler, wav(1, first, false), 64);
+        feed(assembler, raw, 64);
+
+        byte[] result = assembler.toWav();
+        assertArrayEquals(concat(first, raw), Arrays.copyOfRange(result, 44, result.length));
+    }
+
+    @Test
+    void formatMismatchMarksIncomplete() {
+        WavAssembler assembler = new WavAssembler(1 << 20);
+        feed(assembler, wav(1, pcm(20, 1), false), 64);
+        feed(assembler, wav(2, pcm(20, 1), false), 64);
+
+        assertFalse(assembler.isComplete());
+        assertNull(assembler.toWav());
+    }
+
+    @Test
+    void exceedingMaxBytesMarksIncomplete() {
+        WavAssembler assembler = new WavAssembler(30);
+        feed(assembler, wav(1, pcm(20, 1), false), 64);
+        feed(assembler, wav(1, pcm(20, 1), false), 64);
+
+        assertNull(assembler.toWav());
+    }
+
+    @Test
+    void segmentShorterThanHeaderMarksIncomplete() {
+        WavAssembler assembler = new WavAssembler(1 << 20);
+        assembler.beginSegment();
+        assembler.append(new byte[]{'R', 'I', 'F', 'F'}, 0, 4);
+        assembler.endSegment();
+
+        assertNull(assembler.toWav());
+    }
+
+    private static void feed(WavAssembler assembler, byte[] data, int chunk) {
+        assembler.beginSegment();
+        for (int offset = 0; offset < data.length; offset += chunk) {
+            assembler.append(data, offset, Math.min(chunk, data.length - offset));
+        }
+        assembler.endSegment();
+    }
+
+    /**
+     * 生成流式 TTS 风格的 WAV：data 长度为占位值，可选在 fmt 之后带一个奇数长度的 LIST 块
+     */
+    private static byte[] wav(int channels, byte[] pcm, boolean withList) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes("RIFF".getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(le(-1));
+        out.writeBytes("WAVE".getBytes(StandardCharsets.US_ASCII));
+        ByteBuffer fmt = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        fmt.put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16)
+                .putShort((short) 1).putShort((short) channels).putInt(SAMPLE_RATE)
+                .putInt(SAMPLE_RATE * channels * 2).putShort((short) (channels * 2)).putShort((short) 16);
+        out.writeBytes(fmt.array());
+        if (withList) {
+            out.writeBytes("LIST".getBytes(StandardCharsets.US_ASCII));
+            out.writeBytes(le(3));
+            out.writeBytes(new byte[]{1, 2, 3, 0});
+        }
+        out.writeBytes("data".getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(le(-1));
+        out.writeBytes(pcm);
+        return out.toByteArray();
+    }
+
+    private static byte[] pcm(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static byte[] le(int value) {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ByteBuffer.wrap(bytes, offset, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    }
+
+    private static String ascii(byte[] bytes, int offset) {
+        return new String(bytes, offset, 4, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,162 @@
+package com.tanxian.cache;
+
+import com.tanxian.config.ChatMemoryNearCacheProperties;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class ChatMemoryNearCacheTest {
+
+    private static final String SESSION = "1_1";
+
+    private StringRedisTemplate redisTemplate;
+    private ChatMemoryNearCacheProperties properties;
+    private MessageListener invalidationListener;
+    private ChatMemoryNearCache cache;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        RedisMessageListenerContainer container = mock(RedisMessageListenerContainer.class);
+        properties = new ChatMemoryNearCacheProperties();
+        cache = new ChatMemoryNearCache();
+        ReflectionTestUtils.setField(cache, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(cache, "listenerContainer", container);
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "properties", properties);
+        cache.init();
+
+        ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(container).addMessageListener(listener.capture(), any(Topic.class));
+        invalidationListener = listener.getValue();
+    }
+
+    @Test
+    void fillsOnReadWhenSessionUnchanged() {
+        assertNull(cache.get(SESSION));
+        long version = cache.version(SESSION);
+        cache.putIfUnchanged(SESSION, window("你好"), version);
+
+        ChatMemoryWindow cached = cache.get(SESSION);
+        assertNotNull(cached);
+        assertEquals(window("你好").messages(), cached.messages());
+        assertEquals("摘要", cached.summary());
+    }
+
+    @Test
+    void skipsFillWhenSessionWrittenDuringRead() {
+        long version = cache.version(SESSION);
+        cache.invalidate(SESSION);
+        cache.putIfUnchanged(SESSION, window("旧窗口"), version);
+
+        assertNull(cache.get(SESSION));
+    }
+
+    @Test
+    void writesToOtherSessionsDoNotBlockFill() {
+        long version = cache.version(SESSION);
+        cache.invalidate("2_1");
+        cache.putIfUnchanged(SESSION, window("你好"), version);
+
+        assertNotNull(cache.get(SESSION));
+    }
+
+    @Test
+    void writeKeepsSummaryAndPublishesInvalidation() {
+        cache.putIfUnchanged(SESSION, window("你好"), cache.version(SESSION));
+        List<ChatMessage> updated = List.of(UserMessage.from("你好"), AiMessage.from("你好呀"));
+        cache.putAfterWrite(SESSION, updated);
+
+        ChatMemoryWindow cached = cache.get(SESSION);
+        assertEquals(updated, cached.messages());
+        assertEquals("摘要", cached.summary());
+        verify(redisTemplate).convertAndSend(eq("chat:memory:invalidate"), anyString());
+    }
+
+    @Test
+    void remoteInvalidationRemovesEntry() {
+        cache.putIfUnchanged(SESSION, window("你好"), cache.version(SESSION));
+        invalidationListener.onMessage(message("otherNode|" + SESSION), null);
+
+        assertNull(cache.get(SESSION));
+    }
+
+    @Test
+    void ignoresOwnInvalidation() {
+        cache.putIfUnchanged(SESSION, window("你好"), cache.version(SESSION));
+        String nodeId = (String) ReflectionTestUtils.getField(cache, "nodeId");
+        invalidationListener.onMessage(message(nodeId + "|" + SESSION), null);
+
+        assertNotNull(cache.get(SESSION));
+    }
+
+    @Test
+    void doesNotCacheWhileCompacting() {
+        cache.putIfUnchanged(SESSION, window("你好"), cache.version(SESSION));
+        cache.beginCompaction(SESSION);
+        assertNull(cache.get(SESSION));
+
+        cache.putIfUnchanged(SESSION, window("你好"), cache.version(SESSION));
+        assertNull(cache.get(SESSION));
+
+        cache.endCompaction(SESSION);
+        cache.putIfUnchanged(SESSION, window("你好"), cache.version(SESSION));
+        assertNotNull(cache.get(SESSION));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxEntries() {
+        properties.setMaxEntries(2);
+        cache.putIfUnchanged("a", window("a"), cache.version("a"));
+        cache.putIfUnchanged("b", window("b"), cache.version("b"));
+        cache.get("a");
+        cache.putIfUnchanged("c", window("c"), cache.version("c"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    void tracksEstimatedBytes() {
+        cache.putIfUnchanged(SESSION, window("你好"), cache.version(SESSION));
+        long bytes = cache.bytes();
+        cache.invalidate(SESSION);
+
+        assertEquals(0, cache.bytes());
+        assertTrue(bytes > 0);
+    }
+
+    private static ChatMemoryWindow window(String text) {
+        return new ChatMemoryWindow(List.of(UserMessage.from(text), AiMessage.from("回复")), "摘要");
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage("chat:memory:invalidate".getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+}
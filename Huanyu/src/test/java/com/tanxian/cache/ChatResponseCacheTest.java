@@ -0,0 +1,167 @@
+package com.tanxian.cache;
+
+import com.tanxian.config.ChatResponseCacheProperties;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatResponseCacheTest {
+
+    private static final String HU_TAO = "hutao";
+    private static final List<String> REPLY = List.of("你好呀，", "我是胡桃！");
+
+    private ChatResponseCacheProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private ChatResponseCache cache;
+    private String fresh;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ChatResponseCacheProperties();
+        properties.setEnabled(true);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new ChatResponseCache();
+        ReflectionTestUtils.setField(cache, "properties", properties);
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        cache.init();
+        fresh = cache.fingerprint(List.of());
+    }
+
+    @Test
+    void normalizeFoldsWidthCaseWhitespaceAndPunctuation() {
+        assertEquals("你好", ChatResponseCache.normalize("  你好！"));
+        assertEquals("你是谁", ChatResponseCache.normalize("你是谁？？"));
+        assertEquals("helloworld123", ChatResponseCache.normalize("ＨＥＬＬＯ，World １２３"));
+        assertEquals("", ChatResponseCache.normalize("。。。 ！"));
+    }
+
+    @Test
+    void isCacheableOnlyForShortPromptsWhenEnabled() {
+        properties.setMaxPromptChars(4);
+        assertTrue(cache.isCacheable("你好！"));
+        assertFalse(cache.isCacheable("今天天气怎么样"));
+        assertFalse(cache.isCacheable("？？"));
+        assertFalse(cache.isCacheable(null));
+        properties.setEnabled(false);
+        assertFalse(cache.isCacheable("你好"));
+    }
+
+    @Test
+    void exactHitMatchesNormalizedMessage() {
+        cache.put(HU_TAO, fresh, "你好！", REPLY);
+
+        assertEquals(REPLY, cache.get(HU_TAO, fresh, "你好"));
+        assertEquals(REPLY, cache.get(HU_TAO, fresh, " 你好。"));
+        assertEquals(2.0, meterRegistry.counter("chat.response.cache", "result", "hit").count());
+    }
+
+    @Test
+    void similarHitAtThresholdAndMissBelowIt() {
+        String cached = "你是谁呀";
+        String asked = "你是谁";
+        double score = similarity(cached, asked);
+        assertTrue(score > 0 && score < 1);
+        cache.put(HU_TAO, fresh, cached, REPLY);
+
+        properties.setSimilarityThreshold(score);
+        assertEquals(REPLY, cache.get(HU_TAO, fresh, asked));
+        assertEquals(1.0, meterRegistry.counter("chat.response.cache", "result", "similar").count());
+
+        properties.setSimilarityThreshold(Math.nextUp(score));
+        assertNull(cache.get(HU_TAO, fresh, asked));
+        assertEquals(1.0, meterRegistry.counter("chat.response.cache", "result", "miss").count());
+    }
+
+    @Test
+    void zeroThresholdDisablesSimilarMatching() {
+        properties.setSimilarityThreshold(0);
+        cache.put(HU_TAO, fresh, "你是谁呀", REPLY);
+
+        assertNull(cache.get(HU_TAO, fresh, "你是谁"));
+    }
+
+    @Test
+    void bucketsAreIsolatedByCharacterAndFingerprint() {
+        properties.setSimilarityThreshold(0.01);
+        cache.put(HU_TAO, fresh, "你好", REPLY);
+        String later = cache.fingerprint(List.of(UserMessage.from("你好"), AiMessage.from("你好呀")));
+
+        assertNull(cache.get("venti", fresh, "你好"));
+        assertNull(cache.get(HU_TAO, later, "你好"));
+        assertEquals(REPLY, cache.get(HU_TAO, fresh, "你好"));
+    }
+
+    @Test
+    void fingerprintCoversWholeConversationButNotSystemPrompt() {
+        List<ChatMessage> history = List.of(UserMessage.from("你好"), AiMessage.from("你好呀"));
+        String fingerprint = cache.fingerprint(history);
+
+        assertEquals(fresh, cache.fingerprint(List.of(SystemMessage.from("用户昵称：小明"))));
+        assertNotEquals(fresh, fingerprint);
+        assertEquals(fingerprint, cache.fingerprint(List.of(
+                SystemMessage.from("用户昵称：小红"), UserMessage.from("你好！"), AiMessage.from("你好呀。"))));
+        assertNotEquals(fingerprint, cache.fingerprint(List.of(AiMessage.from("你好呀"), UserMessage.from("你好"))));
+        assertNotEquals(fingerprint, cache.fingerprint(List.of(
+                UserMessage.from("早上好"), AiMessage.from("早"), UserMessage.from("你好"), AiMessage.from("你好呀"))));
+    }
+
+    @Test
+    void expiredEntriesAreNotReturned() throws InterruptedException {
+        properties.setTtl(Duration.ofMillis(50));
+        cache.put(HU_TAO, fresh, "你好", REPLY);
+        Thread.sleep(80);
+
+        assertNull(cache.get(HU_TAO, fresh, "你好"));
+        assertNull(cache.get(HU_TAO, fresh, "你好呀"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxEntries() {
+        properties.setMaxEntries(2);
+        properties.setSimilarityThreshold(0);
+        cache.put(HU_TAO, fresh, "你好", REPLY);
+        cache.put(HU_TAO, fresh, "你是谁", REPLY);
+        cache.get(HU_TAO, fresh, "你好");
+        cache.put(HU_TAO, fresh, "在吗", REPLY);
+
+        assertEquals(2, cache.size());
+        assertEquals(REPLY, cache.get(HU_TAO, fresh, "你好"));
+        assertNull(cache.get(HU_TAO, fresh, "你是谁"));
+        assertEquals(REPLY, cache.get(HU_TAO, fresh, "在吗"));
+        assertEquals(1.0, meterRegistry.counter("chat.response.cache.evictions").count());
+    }
+
+    @Test
+    void skipsEmptyOrOversizedReplies() {
+        properties.setMaxReplyChars(5);
+        cache.put(HU_TAO, fresh, "你好", List.of());
+        cache.put(HU_TAO, fresh, "你是谁", List.of("我是往生堂第七十七代堂主"));
+
+        assertEquals(0, cache.size());
+    }
+
+    private static double similarity(String a, String b) {
+        float[] x = ChatResponseCache.embed(ChatResponseCache.normalize(a));
+        float[] y = ChatResponseCache.embed(ChatResponseCache.normalize(b));
+        double sum = 0;
+        for (int i = 0; i < x.length; i++) {
+            sum += x[i] * y[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,122 @@
+package com.tanxian.chat;
+
+import com.tanxian.config.ChatCoalesceProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChatRequestCoalescerTest {
+
+    private ChatCoalesceProperties properties;
+    private ChatRequestCoalescer coalescer;
+    private Sinks.Many<String> upstream;
+    private AtomicInteger calls;
+    private Supplier<Flux<String>> call;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ChatCoalesceProperties();
+        coalescer = new ChatRequestCoalescer();
+        ReflectionTestUtils.setField(coalescer, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(coalescer, "properties", properties);
+        coalescer.init();
+
+        upstream = Sinks.many().unicast().onBackpressureBuffer();
+        calls = new AtomicInteger();
+        call = () -> {
+            calls.incrementAndGet();
+            return upstream.asFlux();
+        };
+    }
+
+    @Test
+    void concurrentRequestsShareOneUpstream() {
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        coalescer.coalesce("k", call).subscribe(first::add);
+        upstream.tryEmitNext("你");
+        // 后加入的请求从第一个分片开始完整接收
+        coalescer.coalesce("k", call).subscribe(second::add);
+        upstream.tryEmitNext("好");
+        upstream.tryEmitComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(List.of("你", "好"), first);
+        assertEquals(List.of("你", "好"), second);
+    }
+
+    @Test
+    void differentKeysDoNotShare() {
+        coalescer.coalesce("a", call).subscribe();
+        coalescer.coalesce("b", () -> {
+            calls.incrementAndGet();
+            return Flux.just("x");
+        }).subscribe();
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void startsNewUpstreamAfterCompletion() {
+        coalescer.coalesce("k", () -> {
+            calls.incrementAndGet();
+            return Flux.just("a");
+        }).blockLast();
+        coalescer.coalesce("k", () -> {
+            calls.incrementAndGet();
+            return Flux.just("b");
+        }).blockLast();
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void idempotentRequestReplaysCompletedResult() {
+        Supplier<Flux<String>> once = () -> {
+            calls.incrementAndGet();
+            return Flux.just("a", "b");
+        };
+        List<String> first = coalescer.coalesceIdempotent("idem", once).collectList().block();
+        List<String> retried = coalescer.coalesceIdempotent("idem", once).collectList().block();
+
+        assertEquals(1, calls.get());
+        assertEquals(first, retried);
+    }
+
+    @Test
+    void cancelsUpstreamWithoutGraceWhenAllSubscribersLeave() {
+        AtomicInteger cancelled = new AtomicInteger();
+        properties.setCancelGrace(Duration.ofMinutes(1));
+        Supplier<Flux<String>> voice = () -> {
+            calls.incrementAndGet();
+            return upstream.asFlux().doOnCancel(cancelled::incrementAndGet);
+        };
+        coalescer.coalesceWithoutGrace("voice", voice).subscribe().dispose();
+
+        assertEquals(1, cancelled.get());
+    }
+
+    @Test
+    void disabledCallsUpstreamEveryTime() {
+        properties.setEnabled(false);
+        Supplier<Flux<String>> each = () -> {
+            calls.incrementAndGet();
+            return Flux.just("a");
+        };
+        coalescer.coalesce("k", each).blockLast();
+        coalescer.coalesce("k", each).blockLast();
+
+        assertEquals(2, calls.get());
+    }
+}
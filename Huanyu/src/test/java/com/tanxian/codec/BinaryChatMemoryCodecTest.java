@@ -0,0 +1,95 @@
+package com.tanxian.codec;
+
+import com.tanxian.config.ChatMemoryProperties;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryChatMemoryCodecTest {
+
+    private ChatMemoryProperties properties;
+    private BinaryChatMemoryCodec codec;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ChatMemoryProperties();
+        codec = new BinaryChatMemoryCodec();
+        ReflectionTestUtils.setField(codec, "chatMemoryProperties", properties);
+    }
+
+    @Test
+    void roundTripsTextMessages() {
+        List<ChatMessage> messages = List.of(
+                UserMessage.from("你好，今天天气怎么样？"),
+                UserMessage.from("小明", "带名字的用户消息"),
+                AiMessage.from("今天晴，适合出门 ☀"),
+                AiMessage.from(""),
+                SystemMessage.from("你是一个乐于助人的助手"));
+        for (ChatMessage message : messages) {
+            byte[] encoded = codec.encode(message);
+            assertTrue(codec.canDecode(encoded));
+            assertEquals(message, codec.decode(encoded));
+        }
+    }
+
+    @Test
+    void compressesLargeMessagesAboveThreshold() {
+        properties.setCompressThreshold(64);
+        UserMessage message = UserMessage.from("重复的内容".repeat(200));
+
+        byte[] compressed = codec.encode(message);
+        properties.setCompressThreshold(0);
+        byte[] plain = codec.encode(message);
+
+        assertTrue(compressed.length < plain.length / 4);
+        assertEquals(message, codec.decode(compressed));
+        // 解码不依赖当前配置，关闭压缩后仍能读取之前压缩的数据
+        assertEquals(message, codec.decode(plain));
+    }
+
+    @Test
+    void keepsPlainBodyWhenCompressionDoesNotHelp() {
+        properties.setCompressThreshold(1);
+        AiMessage message = AiMessage.from("短");
+        properties.setCompressThreshold(0);
+        byte[] plain = codec.encode(message);
+        properties.setCompressThreshold(1);
+
+        assertArrayEquals(plain, codec.encode(message));
+    }
+
+    @Test
+    void repeatedCompressionReusesPooledDeflaters() {
+        properties.setCompressThreshold(16);
+        for (int i = 0; i < 100; i++) {
+            AiMessage message = AiMessage.from(("第" + i + "条回复，").repeat(20));
+            assertEquals(message, codec.decode(codec.encode(message)));
+        }
+    }
+
+    @Test
+    void doesNotClaimJsonData() {
+        assertFalse(codec.canDecode("{\"type\":\"USER\"}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(codec.canDecode(new byte[]{(byte) 0xC1}));
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] encoded = codec.encode(UserMessage.from("hi"));
+        encoded[1] = 99;
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(encoded));
+    }
+}
@@ -0,0 +1,47 @@
+package com.tanxian.llm;
+
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 记录路由交给上层的输出
+ */
+class RecordingHandler implements StreamingChatResponseHandler {
+
+    final List<String> tokens = new CopyOnWriteArrayList<>();
+    volatile ChatResponse response;
+    volatile Throwable error;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    @Override
+    public void onPartialResponse(String partialResponse) {
+        tokens.add(partialResponse);
+    }
+
+    @Override
+    public void onCompleteResponse(ChatResponse completeResponse) {
+        response = completeResponse;
+        done.countDown();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        this.error = error;
+        done.countDown();
+    }
+
+    void awaitDone() throws InterruptedException {
+        assertTrue(done.await(5, TimeUnit.SECONDS), "请求未在规定时间内结束");
+    }
+
+    boolean isDone() {
+        return done.getCount() == 0;
+    }
+}
@@ -0,0 +1,195 @@
+package com.tanxian.llm;
+
+import com.tanxian.config.LlmRoutingProperties;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static com.tanxian.llm.RoutingStreamingChatModelTest.assertInFlightBalanced;
+import static com.tanxian.llm.RoutingStreamingChatModelTest.endpoint;
+import static com.tanxian.llm.RoutingStreamingChatModelTest.preferEndpoint;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoutingStreamingChatModelHedgeTest {
+
+    private static final ChatRequest REQUEST = ChatRequest.builder().messages(UserMessage.from("你好")).build();
+
+    private LlmRoutingProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private StubStreamingChatModel slow;
+    private StubStreamingChatModel fast;
+
+    @BeforeEach
+    void setUp() {
+        properties = new LlmRoutingProperties();
+        properties.setIdleDecay(Duration.ZERO);
+        properties.setInitialTtft(Duration.ofMillis(50));
+        properties.setFirstTokenTimeout(Duration.ofSeconds(5));
+        LlmRoutingProperties.Hedge hedge = properties.getHedge();
+        hedge.setEnabled(true);
+        hedge.setMinDelay(Duration.ofMillis(50));
+        meterRegistry = new SimpleMeterRegistry();
+        // 慢端点收到请求后不输出，由测试决定何时输出；快端点收到请求立即输出
+        slow = new StubStreamingChatModel();
+        fast = StubStreamingChatModel.answering("快", "速");
+    }
+
+    @Test
+    void hedgeWinsAndOnlyWinnerReachesDownstream() throws InterruptedException {
+        RoutingStreamingChatModel router = router();
+        RecordingHandler handler = new RecordingHandler();
+        router.chat(REQUEST, handler);
+        handler.awaitDone();
+
+        assertEquals(List.of("快", "速"), handler.tokens);
+        assertNotNull(handler.response);
+        assertEquals(1.0, hedgeCount("started"));
+        assertEquals(1.0, hedgeCount("won"));
+        assertEquals(0.0, hedgeCount("budget_exhausted"));
+        // 落败的慢请求已被放弃并释放
+        assertInFlightBalanced(router);
+
+        StubStreamingChatModel.stream(slow.call(0), "慢");
+        assertEquals(List.of("快", "速"), handler.tokens);
+        assertInFlightBalanced(router);
+    }
+
+    @Test
+    void loserReceivingFirstTokenDuringClaimIsCountedOnce() throws InterruptedException {
+        // 对冲请求在持有路由锁时发出；让慢请求此时收到首 token 并阻塞在争夺胜出权上，
+        // 快请求随后胜出，放弃慢请求时它已不在等待阶段，只能由它自己按成功释放
+        fast.onCall(h -> {
+            StreamingChatResponseHandler slowAttempt = slow.call(0);
+            Thread loser = new Thread(() -> slowAttempt.onPartialResponse("慢"));
+            loser.start();
+            await(() -> loser.getState() == Thread.State.BLOCKED);
+            StubStreamingChatModel.stream(h, "快");
+        });
+        RoutingStreamingChatModel router = router();
+        RecordingHandler handler = new RecordingHandler();
+        router.chat(REQUEST, handler);
+        handler.awaitDone();
+        await(() -> endpoint(router, "slow").inFlight() == 0);
+
+        assertEquals(List.of("快"), handler.tokens);
+        assertEquals(1.0, hedgeCount("won"));
+        assertInFlightBalanced(router);
+
+        // 落败方后续的输出同样被忽略
+        StubStreamingChatModel.stream(slow.call(0), "慢");
+        assertEquals(List.of("快"), handler.tokens);
+        assertInFlightBalanced(router);
+    }
+
+    @Test
+    void originalWinsWhenFirstTokenArrivesBeforeHedgeDelay() throws InterruptedException {
+        slow.onCall(h -> StubStreamingChatModel.stream(h, "原"));
+        RoutingStreamingChatModel router = router();
+        RecordingHandler handler = new RecordingHandler();
+        router.chat(REQUEST, handler);
+        handler.awaitDone();
+        Thread.sleep(150);
+
+        assertEquals(List.of("原"), handler.tokens);
+        assertEquals(0, fast.callCount());
+        assertEquals(0.0, hedgeCount("started"));
+        assertInFlightBalanced(router);
+    }
+
+    @Test
+    void originalWinsAfterHedgeStartedAbandonsHedge() throws InterruptedException {
+        fast = new StubStreamingChatModel();
+        RoutingStreamingChatModel router = router();
+        RecordingHandler handler = new RecordingHandler();
+        router.chat(REQUEST, handler);
+        await(() -> fast.callCount() == 1);
+
+        StubStreamingChatModel.stream(slow.call(0), "原");
+        handler.awaitDone();
+        StubStreamingChatModel.stream(fast.call(0), "对冲");
+
+        assertEquals(List.of("原"), handler.tokens);
+        assertEquals(1.0, hedgeCount("started"));
+        assertEquals(0.0, hedgeCount("won"));
+        assertInFlightBalanced(router);
+    }
+
+    @Test
+    void noHedgeWhenBudgetExhausted() throws InterruptedException {
+        properties.getHedge().setBudgetBurst(0);
+        RoutingStreamingChatModel router = router();
+        RecordingHandler handler = new RecordingHandler();
+        router.chat(REQUEST, handler);
+        await(() -> hedgeCount("budget_exhausted") == 1.0);
+
+        StubStreamingChatModel.stream(slow.call(0), "原");
+        handler.awaitDone();
+
+        assertEquals(List.of("原"), handler.tokens);
+        assertEquals(0, fast.callCount());
+        assertEquals(0.0, hedgeCount("started"));
+        assertNull(handler.error);
+        assertInFlightBalanced(router);
+    }
+
+    @Test
+    void budgetLimitsHedgesAcrossRequests() throws InterruptedException {
+        properties.getHedge().setBudgetBurst(2);
+        properties.getHedge().setBudgetPercent(0);
+        RoutingStreamingChatModel router = router();
+        for (int i = 0; i < 4; i++) {
+            RecordingHandler handler = new RecordingHandler();
+            router.chat(REQUEST, handler);
+            int call = i;
+            await(() -> hedgeCount("started") + hedgeCount("budget_exhausted") == call + 1);
+            if (!handler.isDone()) {
+                StubStreamingChatModel.stream(slow.call(slow.callCount() - 1), "原");
+            }
+            handler.awaitDone();
+        }
+
+        assertEquals(2.0, hedgeCount("started"));
+        assertEquals(2.0, hedgeCount("won"));
+        assertEquals(2.0, hedgeCount("budget_exhausted"));
+        assertInFlightBalanced(router);
+    }
+
+    private RoutingStreamingChatModel router() {
+        Map<String, StreamingChatModel> models = new LinkedHashMap<>();
+        models.put("slow", slow);
+        models.put("fast", fast);
+        RoutingStreamingChatModel router = new RoutingStreamingChatModel(models, properties, meterRegistry);
+        preferEndpoint(router, "slow");
+        return router;
+    }
+
+    private double hedgeCount(String result) {
+        return meterRegistry.counter("chat.llm.hedge", "result", result).count();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待条件超时");
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
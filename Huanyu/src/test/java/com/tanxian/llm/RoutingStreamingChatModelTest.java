@@ -0,0 +1,259 @@
+package com.tanxian.llm;
+
+import com.tanxian.config.LlmRoutingProperties;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.exception.AuthenticationException;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.InternalServerException;
+import dev.langchain4j.exception.InvalidRequestException;
+import dev.langchain4j.exception.RateLimitException;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoutingStreamingChatModelTest {
+
+    private static final ChatRequest REQUEST = ChatRequest.builder().messages(UserMessage.from("你好")).build();
+
+    private LlmRoutingProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new LlmRoutingProperties();
+        // 关闭空闲衰减，端点代价只由首 token 延迟决定，便于固定首选端点
+        properties.setIdleDecay(Duration.ZERO);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void failsOverBeforeFirstToken() throws InterruptedException {
+        StubStreamingChatModel primary = StubStreamingChatModel.failing(new InternalServerException("502 Bad Gateway"));
+        StubStreamingChatModel backup = StubStreamingChatModel.answering("你", "好");
+        RoutingStreamingChatModel router = router(Map.of("primary", primary, "backup", backup));
+        preferEndpoint(router, "primary");
+
+        RecordingHandler handler = chat(router);
+
+        assertEquals(List.of("你", "好"), handler.tokens);
+        assertNotNull(handler.response);
+        assertNull(handler.error);
+        assertEquals(1, primary.callCount());
+        assertEquals(1, backup.callCount());
+        assertEquals(1.0, meterRegistry.counter("chat.llm.failover").count());
+        assertTrue(endpoint(router, "primary").errorRate() > 0);
+        assertInFlightBalanced(router);
+    }
+
+    @Test
+    void doesNotFailOverAfterStreamingStarted() throws InterruptedException {
+        InternalServerException error = new InternalServerException("stream reset");
+        StubStreamingChatModel primary = new StubStreamingChatModel();
+        primary.onCall(h -> {
+            h.onPartialResponse("你");
+            h.onError(error);
+        });
+        StubStreamingChatModel backup = StubStreamingChatModel.answering("不该出现");
+        RoutingStreamingChatModel router = router(Map.of("primary", primary, "backup", backup));
+        preferEndpoint(router, "primary");
+
+        RecordingHandler handler = chat(router);
+
+        assertEquals(List.of("你"), handler.tokens);
+        assertSame(error, handler.error);
+        assertEquals(0, backup.callCount());
+        assertEquals(0.0, meterRegistry.counter("chat.llm.failover").count());
+        assertInFlightBalanced(router);
+    }
+
+    @Test
+    void requestErrorsAreReportedWithoutFailoverOrBreaker() throws InterruptedException {
+        properties.setFailureThreshold(2);
+        InvalidRequestException moderated = new InvalidRequestException("400 内容审核未通过");
+        StubStreamingChatModel model = StubStreamingChatModel.failing(moderated);
+        StubStreamingChatModel other = StubStreamingChatModel.answering("不该出现");
+        RoutingStreamingChatModel router = router(Map.of("default", model, "other", other));
+        preferEndpoint(router, "default");
+
+        for (int i = 0; i < 5; i++) {
+            assertSame(moderated, chat(router).error);
+        }
+
+        LlmEndpoint endpoint = endpoint(router, "default");
+        assertEquals(5, model.callCount());
+        assertEquals(0, other.callCount());
+        assertEquals(0, endpoint.stateCode());
+        assertEquals(0.0, endpoint.errorRate());
+        assertEquals(0.0, meterRegistry.counter("chat.llm.failover").count());
+        assertInFlightBalanced(router);
+
+        model.onCall(h -> StubStreamingChatModel.stream(h, "好"));
+        assertEquals(List.of("好"), chat(router).tokens);
+    }
+
+    @Test
+    void synchronousRequestErrorIsReportedAndReleasesEndpoint() throws InterruptedException {
+        StubStreamingChatModel model = new StubStreamingChatModel();
+        model.onCall(h -> {
+            throw new AuthenticationException("401 invalid api key");
+        });
+        RoutingStreamingChatModel router = router(Map.of("default", model));
+
+        RecordingHandler handler = chat(router);
+
+        assertInstanceOf(AuthenticationException.class, handler.error);
+        assertEquals(1, model.callCount());
+        assertEquals(0, endpoint(router, "default").stateCode());
+        assertInFlightBalanced(router);
+    }
+
+    @Test
+    void breakerOpensThenProbesHalfOpenAndCloses() throws InterruptedException {
+        properties.setFailureThreshold(2);
+        properties.setMaxAttempts(1);
+        properties.setOpenDuration(Duration.ofMillis(300));
+        StubStreamingChatModel model = StubStreamingChatModel.failing(new InternalServerException("503"));
+        RoutingStreamingChatModel router = router(Map.of("default", model));
+        LlmEndpoint endpoint = endpoint(router, "default");
+
+        chat(router);
+        assertEquals(0, endpoint.stateCode());
+        chat(router);
+        assertEquals(2, endpoint.stateCode());
+
+        // 打开期间直接拒绝，不调用端点
+        assertInstanceOf(IllegalStateException.class, chat(router).error);
+        assertEquals(2, model.callCount());
+
+        Thread.sleep(350);
+        model.onCall(h -> {
+        });
+        RecordingHandler probe = new RecordingHandler();
+        router.chat(REQUEST, probe);
+        assertEquals(3, model.callCount());
+        assertEquals(1, endpoint.stateCode());
+        assertEquals(1, endpoint.inFlight());
+
+        // 半开状态只放行一个探测请求
+        assertInstanceOf(IllegalStateException.class, chat(router).error);
+        assertEquals(3, model.callCount());
+
+        StubStreamingChatModel.stream(model.call(2), "恢复");
+        probe.awaitDone();
+        assertEquals(List.of("恢复"), probe.tokens);
+        assertEquals(0, endpoint.stateCode());
+        assertInFlightBalanced(router);
+    }
+
+    @Test
+    void failedProbeReopensBreaker() throws InterruptedException {
+        properties.setFailureThreshold(1);
+        properties.setMaxAttempts(1);
+        properties.setOpenDuration(Duration.ofMillis(200));
+        StubStreamingChatModel model = StubStreamingChatModel.failing(new RateLimitException("429"));
+        RoutingStreamingChatModel router = router(Map.of("default", model));
+        LlmEndpoint endpoint = endpoint(router, "default");
+
+        chat(router);
+        assertEquals(2, endpoint.stateCode());
+        Thread.sleep(250);
+        chat(router);
+
+        assertEquals(2, model.callCount());
+        assertEquals(2, endpoint.stateCode());
+        assertInFlightBalanced(router);
+    }
+
+    @Test
+    void firstTokenTimeoutFailsAttemptAndReleasesEndpoint() throws InterruptedException {
+        properties.setMaxAttempts(1);
+        properties.setFirstTokenTimeout(Duration.ofMillis(100));
+        StubStreamingChatModel model = new StubStreamingChatModel();
+        RoutingStreamingChatModel router = router(Map.of("default", model));
+
+        RecordingHandler handler = chat(router);
+
+        assertInstanceOf(TimeoutException.class, handler.error);
+        assertInFlightBalanced(router);
+        // 超时后迟到的输出被忽略，也不会重复释放
+        StubStreamingChatModel.stream(model.call(0), "迟到");
+        assertTrue(handler.tokens.isEmpty());
+        assertInFlightBalanced(router);
+    }
+
+    @Test
+    void classifiesEndpointFailures() {
+        assertTrue(RoutingStreamingChatModel.isEndpointFailure(new TimeoutException()));
+        assertTrue(RoutingStreamingChatModel.isEndpointFailure(new InternalServerException("500")));
+        assertTrue(RoutingStreamingChatModel.isEndpointFailure(new RateLimitException("429")));
+        assertTrue(RoutingStreamingChatModel.isEndpointFailure(new HttpException(503, "unavailable")));
+        assertTrue(RoutingStreamingChatModel.isEndpointFailure(new HttpException(429, "too many requests")));
+        assertTrue(RoutingStreamingChatModel.isEndpointFailure(new RuntimeException(new ConnectException("refused"))));
+        assertFalse(RoutingStreamingChatModel.isEndpointFailure(new HttpException(400, "bad request")));
+        assertFalse(RoutingStreamingChatModel.isEndpointFailure(new InvalidRequestException("400")));
+        assertFalse(RoutingStreamingChatModel.isEndpointFailure(new AuthenticationException("401")));
+        assertFalse(RoutingStreamingChatModel.isEndpointFailure(new IllegalArgumentException("bad")));
+    }
+
+    private RoutingStreamingChatModel router(Map<String, StreamingChatModel> models) {
+        return new RoutingStreamingChatModel(new LinkedHashMap<>(models), properties, meterRegistry);
+    }
+
+    private static RecordingHandler chat(RoutingStreamingChatModel router) throws InterruptedException {
+        RecordingHandler handler = new RecordingHandler();
+        router.chat(REQUEST, handler);
+        handler.awaitDone();
+        return handler;
+    }
+
+    /**
+     * 抬高其他端点的首 token 延迟，使两两比较时总是选中指定端点
+     */
+    static void preferEndpoint(RoutingStreamingChatModel router, String name) {
+        for (LlmEndpoint endpoint : endpoints(router)) {
+            if (!endpoint.getName().equals(name)) {
+                for (int i = 0; i < 20; i++) {
+                    endpoint.recordFirstToken(60_000);
+                }
+            }
+        }
+    }
+
+    static LlmEndpoint endpoint(RoutingStreamingChatModel router, String name) {
+        for (LlmEndpoint endpoint : endpoints(router)) {
+            if (endpoint.getName().equals(name)) {
+                return endpoint;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    static void assertInFlightBalanced(RoutingStreamingChatModel router) {
+        for (LlmEndpoint endpoint : endpoints(router)) {
+            assertEquals(0, endpoint.inFlight(), "端点进行中请求数未归零: " + endpoint);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<LlmEndpoint> endpoints(RoutingStreamingChatModel router) {
+        return (List<LlmEndpoint>) ReflectionTestUtils.getField(router, "endpoints");
+    }
+}
@@ -0,0 +1,66 @@
+package com.tanxian.llm;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 测试用的端点：记录每次调用的回调，由测试决定何时输出；也可以设置收到请求时立即执行的动作
+ */
+class StubStreamingChatModel implements StreamingChatModel {
+
+    private final List<StreamingChatResponseHandler> calls = new CopyOnWriteArrayList<>();
+    private volatile Consumer<StreamingChatResponseHandler> onCall = handler -> {
+    };
+
+    /**
+     * 收到请求后立即输出给定的分片并完成
+     */
+    static StubStreamingChatModel answering(String... tokens) {
+        StubStreamingChatModel model = new StubStreamingChatModel();
+        model.onCall(handler -> stream(handler, tokens));
+        return model;
+    }
+
+    /**
+     * 收到请求后立即以给定的错误结束
+     */
+    static StubStreamingChatModel failing(RuntimeException error) {
+        StubStreamingChatModel model = new StubStreamingChatModel();
+        model.onCall(handler -> handler.onError(error));
+        return model;
+    }
+
+    static void stream(StreamingChatResponseHandler handler, String... tokens) {
+        StringBuilder text = new StringBuilder();
+        for (String token : tokens) {
+            handler.onPartialResponse(token);
+            text.append(token);
+        }
+        handler.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from(text.toString())).build());
+    }
+
+    void onCall(Consumer<StreamingChatResponseHandler> onCall) {
+        this.onCall = onCall;
+    }
+
+    int callCount() {
+        return calls.size();
+    }
+
+    StreamingChatResponseHandler call(int index) {
+        return calls.get(index);
+    }
+
+    @Override
+    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        calls.add(handler);
+        onCall.accept(handler);
+    }
+}
@@ -0,0 +1,194 @@
+package com.tanxian.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanxian.config.ChatPersistenceProperties;
+import com.tanxian.entity.ChatMessage;
+import com.tanxian.mapper.ChatMessageMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class ChatMessageWriteBehindServiceImplTest {
+
+    private static final String SESSION = "1_1";
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private ChatMessageMapper mapper;
+    private SimpleMeterRegistry meterRegistry;
+    private ChatMessageWriteBehindServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        mapper = mock(ChatMessageMapper.class);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.destroy();
+        }
+    }
+
+    @Test
+    void replaysJournalAndTruncatesTornTail() throws IOException {
+        byte[] first = line(message(1));
+        byte[] second = line(message(2));
+        byte[] torn = "{\"sessionId\":\"1_1\",\"se".getBytes(StandardCharsets.UTF_8);
+        Files.write(journal(), concat(first, second, torn));
+
+        start();
+
+        assertEquals(List.of(1L, 2L), seqs(service.pendingMessages(SESSION)));
+        assertEquals(first.length + second.length, Files.size(journal()));
+    }
+
+    @Test
+    void replaysOnlyEntriesAfterCheckpoint() throws IOException {
+        byte[] first = line(message(1));
+        byte[] second = line(message(2));
+        Files.write(journal(), concat(first, second));
+        Files.writeString(dir.resolve("chat-messages.checkpoint"), Long.toString(first.length));
+
+        start();
+
+        assertEquals(List.of(2L), seqs(service.pendingMessages(SESSION)));
+    }
+
+    @Test
+    void flushAdvancesCheckpointAndDrainsQueue() throws IOException {
+        start();
+        service.enqueue(List.of(message(1), message(2)));
+        service.destroy();
+        service = null;
+
+        ArgumentCaptor<List<ChatMessage>> rows = captor();
+        verify(mapper).insertBatch(rows.capture());
+        assertEquals(List.of(1L, 2L), seqs(rows.getValue()));
+        assertEquals(Long.toString(Files.size(journal())),
+                Files.readString(dir.resolve("chat-messages.checkpoint")));
+    }
+
+    @Test
+    void transientFailureKeepsMessagesQueued() throws IOException {
+        doAnswer(invocation -> {
+            throw new QueryTimeoutException("timeout");
+        }).when(mapper).insertBatch(anyList());
+        start();
+        service.enqueue(List.of(message(1)));
+        ReflectionTestUtils.invokeMethod(service, "flushSafely");
+
+        assertEquals(List.of(1L), seqs(service.pendingMessages(SESSION)));
+        assertTrue(Files.notExists(dir.resolve("chat-messages.checkpoint")));
+    }
+
+    @Test
+    void poisonMessageGoesToDeadLetter() throws IOException {
+        doAnswer(invocation -> {
+            List<ChatMessage> rows = invocation.getArgument(0);
+            if (rows.stream().anyMatch(row -> row.getSeq() == 2L)) {
+                throw new DataIntegrityViolationException("content too long");
+            }
+            return rows.size();
+        }).when(mapper).insertBatch(anyList());
+        start();
+        service.enqueue(List.of(message(1), message(2), message(3)));
+        ReflectionTestUtils.invokeMethod(service, "flushSafely");
+
+        assertTrue(service.pendingMessages(SESSION).isEmpty());
+        List<String> dead = Files.readAllLines(dir.resolve("chat-messages.dead"));
+        assertEquals(1, dead.size());
+        assertEquals(2L, objectMapper.readTree(dead.get(0)).get("message").get("seq").asLong());
+        assertEquals(1.0, meterRegistry.counter("chat.persistence.dead.letter").count());
+        verify(mapper, atLeastOnce()).insertBatch(List.of(message(3)));
+    }
+
+    @Test
+    void rejectsMessagesWithoutSeq() throws IOException {
+        start();
+        ChatMessage message = message(1);
+        message.setSeq(null);
+
+        assertThrows(IllegalArgumentException.class, () -> service.enqueue(List.of(message)));
+        verify(mapper, never()).insertBatch(anyList());
+    }
+
+    private void start() throws IOException {
+        ChatPersistenceProperties properties = new ChatPersistenceProperties();
+        properties.setJournalDir(dir.toString());
+        // 测试中手动触发写入，避免后台周期干扰
+        properties.setFlushInterval(Duration.ofHours(1));
+        service = new ChatMessageWriteBehindServiceImpl();
+        ReflectionTestUtils.setField(service, "chatMessageMapper", mapper);
+        ReflectionTestUtils.setField(service, "properties", properties);
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        service.init();
+    }
+
+    private Path journal() {
+        return dir.resolve("chat-messages.journal");
+    }
+
+    private byte[] line(ChatMessage message) throws IOException {
+        return (objectMapper.writeValueAsString(message) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ChatMessage message(long seq) {
+        return new ChatMessage(null, SESSION, seq, "USER", "消息" + seq, LocalDateTime.of(2024, 1, 1, 0, 0));
+    }
+
+    private static List<Long> seqs(List<ChatMessage> messages) {
+        List<Long> seqs = new ArrayList<>();
+        for (ChatMessage message : messages) {
+            seqs.add(message.getSeq());
+        }
+        return seqs;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<ChatMessage>> captor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+}